@@ -19,4 +19,63 @@ public interface Activateable {
 	 * @return derivative on position x
 	 */
 	double ddx(double x);
+	
+	/**
+	 * derivative of the activation function, if the activation level f(x) is already known.
+	 * Functions like sigmoid or tangens hyperbolicus can calculate the derivative from the
+	 * activation level without calculating f(x) again.
+	 * @param x sum of all incomming connection values
+	 * @param a activation level at position x
+	 * @return derivative on position x
+	 */
+	default double ddx(double x, double a) {
+		return ddx(x);
+	}
+	
+	/**
+	 * Activation function for a whole layer. Implementations can override it with a loop
+	 * the JIT compiler is able to vectorize.
+	 * @param x sums of all incomming connection values
+	 * @param a output buffer for the activation levels
+	 * @param length number of values
+	 */
+	default void f(double[] x, double[] a, int length) {
+		for (int i = 0; i < length; i++) {
+			a[i] = f(x[i]);
+		}
+	}
+	
+	/**
+	 * derivative of the activation function for a whole layer, based on the already known
+	 * activation levels (see ddx(double, double))
+	 * @param x sums of all incomming connection values
+	 * @param a activation levels
+	 * @param out output buffer for the derivatives
+	 * @param length number of values
+	 */
+	default void ddx(double[] x, double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = ddx(x[i], a[i]);
+		}
+	}
+	
+	/**
+	 * Final step for the activation levels of a whole layer, after f(double) was calculated for
+	 * every neuron. Nothing for functions, which only depend on the own neuron. Functions like
+	 * softmax use it for calculating the values, which depend on all neurons of the layer.
+	 * @param a activation levels of the layer (results of f(double)), which are changed in place
+	 * @param off position of the first activation level
+	 * @param length number of neurons of the layer
+	 */
+	default void normalize(double[] a, int off, int length) {
+	}
+	
+	/**
+	 * Final step for single precision activation levels of a whole layer (see normalize for double values)
+	 * @param a activation levels of the layer (results of f(double)), which are changed in place
+	 * @param off position of the first activation level
+	 * @param length number of neurons of the layer
+	 */
+	default void normalize(float[] a, int off, int length) {
+	}
 }
@@ -0,0 +1,26 @@
+package bs7n.activation;
+
+/**
+ * Fast approximation of the tangens hyperbolicus by a lookup table (see LookupActivation) on
+ * [-10, 10] with 128 points per unit. The maximum absolute error against TangensHyp is below 6E-6,
+ * the derivative is calculated exactly from the (approximated) activation level.
+ */
+public class FastTangensHyp extends LookupActivation {
+
+	/**
+	 * Constructor building the table
+	 */
+	public FastTangensHyp() {
+		super(10, 128);
+	}
+
+	@Override
+	protected double exact(double x) {
+		return Math.tanh(x);
+	}
+
+	@Override
+	public double ddx(double x, double a) {
+		return 1 - a * a;
+	}
+}
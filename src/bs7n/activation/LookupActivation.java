@@ -0,0 +1,65 @@
+package bs7n.activation;
+
+/**
+ * Base class for fast approximations of activation functions. The function is sampled once
+ * in a table with equidistant points on [-range, range]; between two points the value is
+ * linearly interpolated, outside of the range the value of the nearest border is used.
+ * The derivative is calculated from the activation level (see ddx(double, double)).
+ */
+public abstract class LookupActivation implements Activateable {
+	/** lower and upper border of the table */
+	private final double range;
+
+	/** number of table points per unit of x */
+	private final double scale;
+
+	/** function values at -range + i / scale */
+	private final double[] table;
+
+	/**
+	 * Constructor sampling the exact function
+	 * @param range the table covers [-range, range]
+	 * @param pointsPerUnit number of table points per unit of x
+	 */
+	protected LookupActivation(double range, int pointsPerUnit) {
+		this.range = range;
+		this.scale = pointsPerUnit;
+		table = new double[(int) (2 * range * pointsPerUnit) + 2];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = exact(-range + i / scale);
+		}
+	}
+
+	/**
+	 * Exact function used for filling the table
+	 * @param x sum of all incomming connection values
+	 * @return exact activation level
+	 */
+	protected abstract double exact(double x);
+
+	@Override
+	public double f(double x) {
+		double pos = (x + range) * scale;
+		if (pos <= 0) {
+			return table[0];
+		}
+		if (pos >= table.length - 2) {
+			return table[table.length - 2];
+		}
+		int i = (int) pos;
+		double t = pos - i;
+		return table[i] + t * (table[i + 1] - table[i]);
+	}
+
+	@Override
+	public void f(double[] x, double[] a, int length) {
+		for (int i = 0; i < length; i++) {
+			a[i] = f(x[i]);
+		}
+	}
+
+	@Override
+	public double ddx(double x) {
+		return ddx(x, f(x));
+	}
+}
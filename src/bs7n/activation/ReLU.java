@@ -19,6 +19,13 @@ public class ReLU implements Activateable {
 		}
 		return 1;
 	}
+	
+	@Override
+	public void f(double[] x, double[] a, int length) {
+		for (int i = 0; i < length; i++) {
+			a[i] = Math.max(0, x[i]);
+		}
+	}
 
 }		
 
@@ -9,11 +9,24 @@ public class Sigmoid implements Activateable {
 
 	@Override
 	public double f(double x) {
-		return (1/(1+Math.pow(Math.E, -x)));
+		return (1/(1+Math.exp(-x)));
 	}
 	
 	@Override
 	public double ddx(double x) {
-		return f(x) * (1 - f(x));
+		double a = f(x);
+		return a * (1 - a);
+	}
+	
+	@Override
+	public double ddx(double x, double a) {
+		return a * (1 - a);
+	}
+	
+	@Override
+	public void ddx(double[] x, double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = a[i] * (1 - a[i]);
+		}
 	}
 } 		
@@ -0,0 +1,101 @@
+package bs7n.activation;
+
+/**
+ * Softmax function for the output layer of a classification. The activation levels of the layer
+ * are exp(x) / (sum of exp(x) of all neurons), so they are positive and their sum is 1 (a
+ * probability per class).
+ *
+ * The function is meant for the cross entropy error -sum(ref * ln(a)). Its derivative with respect
+ * to the sum x of a neuron is a - ref, so the error "ref - a" of the output neurons already is
+ * the complete adaption (fused softmax and cross entropy). That's why ddx is 1.
+ *
+ * A single neuron can not calculate the softmax: f(double) returns the sum x itself and normalize
+ * calculates the softmax of the whole layer. The largest x is subtracted before exp, so there is no
+ * overflow for large sums.
+ */
+public class Softmax implements Activateable {
+
+	@Override
+	public double f(double x) {
+		return x;
+	}
+
+	@Override
+	public double ddx(double x) {
+		return 1;
+	}
+
+	@Override
+	public double ddx(double x, double a) {
+		return 1;
+	}
+
+	@Override
+	public void f(double[] x, double[] a, int length) {
+		System.arraycopy(x, 0, a, 0, length);
+		normalize(a, 0, length);
+	}
+
+	@Override
+	public void normalize(double[] a, int off, int length) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = off; i < off + length; i++) {
+			max = Math.max(max, a[i]);
+		}
+		double sum = 0;
+		for (int i = off; i < off + length; i++) {
+			double e = Math.exp(a[i] - max);
+			a[i] = e;
+			sum += e;
+		}
+		double factor = 1 / sum;
+		for (int i = off; i < off + length; i++) {
+			a[i] *= factor;
+		}
+	}
+
+	@Override
+	public void normalize(float[] a, int off, int length) {
+		float max = Float.NEGATIVE_INFINITY;
+		for (int i = off; i < off + length; i++) {
+			max = Math.max(max, a[i]);
+		}
+		double sum = 0;
+		for (int i = off; i < off + length; i++) {
+			float e = (float) Math.exp(a[i] - max);
+			a[i] = e;
+			sum += e;
+		}
+		float factor = (float) (1 / sum);
+		for (int i = off; i < off + length; i++) {
+			a[i] *= factor;
+		}
+	}
+
+	/**
+	 * Cross entropy error of one sample, calculated from the sums x with log-sum-exp, so it is exact
+	 * even if an activation level is rounded to 0
+	 * @param x sums of all incomming connection values of the output layer
+	 * @param references reference values (their sum must be 1, e.g. a 1 at the position of the class)
+	 * @param length number of neurons
+	 * @return -sum(ref * ln(softmax(x)))
+	 */
+	public static double crossEntropy(double[] x, double[] references, int length) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			max = Math.max(max, x[i]);
+		}
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.exp(x[i] - max);
+		}
+		double logSumExp = max + Math.log(sum);
+		double error = 0;
+		for (int i = 0; i < length; i++) {
+			if (references[i] != 0) {
+				error += references[i] * (logSumExp - x[i]);
+			}
+		}
+		return error;
+	}
+}
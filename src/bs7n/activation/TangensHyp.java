@@ -9,13 +9,25 @@ public class TangensHyp implements Activateable {
 
 	@Override
 	public double f(double x) {
-		return (1-2/(1+Math.pow(Math.E, 2*x)));
+		return (1-2/(1+Math.exp(2*x)));
 	}
 	
 	@Override
 	public double ddx(double x) {
-		return 1 - Math.pow(f(x), 2);
+		double a = f(x);
+		return 1 - a * a;
+	}
+	
+	@Override
+	public double ddx(double x, double a) {
+		return 1 - a * a;
+	}
+	
+	@Override
+	public void ddx(double[] x, double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = 1 - a[i] * a[i];
+		}
 	}
 
-} 		
-
+}
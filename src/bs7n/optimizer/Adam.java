@@ -0,0 +1,58 @@
+package bs7n.optimizer;
+
+/**
+ * Adam: running averages of the adaptions (first moment) and of the squared adaptions (second
+ * moment), both corrected for their start at 0. The step of every weight is the first moment
+ * divided by the square root of the second moment.
+ * The first moments are the first state, the second moments the second state.
+ */
+public class Adam implements Optimizer {
+	/** damping of the first moment */
+	private double beta1;
+
+	/** damping of the second moment */
+	private double beta2;
+
+	/** small value against a division by 0 */
+	private double epsilon;
+
+	/**
+	 * Constructor with the usual values beta1 = 0.9, beta2 = 0.999, epsilon = 1e-8
+	 */
+	public Adam() {
+		this(0.9, 0.999, 1e-8);
+	}
+
+	/**
+	 * Constructor
+	 * @param beta1 Damping of the first moment
+	 * @param beta2 Damping of the second moment
+	 * @param epsilon Small value against a division by 0
+	 */
+	public Adam(double beta1, double beta2, double epsilon) {
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public int getNoOfStates() {
+		return 2;
+	}
+
+	@Override
+	public void update(double[] weights, double[] momentum, double[] states, double[] adaptions, int length,
+			double learnRate, int noOfSamples, long step, boolean isBias) {
+		// the correction of both moments is combined into the step width
+		double stepWidth = learnRate * Math.sqrt(1 - Math.pow(beta2, step)) / (1 - Math.pow(beta1, step));
+		double scale = 1.0 / noOfSamples;
+		for (int i = 0; i < length; i++) {
+			double g = adaptions[i] * scale;
+			double m = beta1 * states[i] + (1 - beta1) * g;
+			double v = beta2 * states[length + i] + (1 - beta2) * g * g;
+			states[i] = m;
+			states[length + i] = v;
+			weights[i] += stepWidth * m / (Math.sqrt(v) + epsilon);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package bs7n.optimizer;
+
+/**
+ * Adam with decoupled weight decay: before the Adam step every weight (not the bias weights) is
+ * reduced by learnRate * weightDecay * weight. Other than an additional error term, the decay does
+ * not pass the division by the second moment, so all weights are reduced by the same part.
+ */
+public class AdamW extends Adam {
+	/** part of the weights, which is removed per learn step width */
+	private double weightDecay;
+
+	/**
+	 * Constructor with the usual values of Adam (see Adam())
+	 * @param weightDecay Part of the weights, which is removed per learn step width, e.g. 0.01
+	 */
+	public AdamW(double weightDecay) {
+		this.weightDecay = weightDecay;
+	}
+
+	/**
+	 * Constructor
+	 * @param beta1 Damping of the first moment
+	 * @param beta2 Damping of the second moment
+	 * @param epsilon Small value against a division by 0
+	 * @param weightDecay Part of the weights, which is removed per learn step width
+	 */
+	public AdamW(double beta1, double beta2, double epsilon, double weightDecay) {
+		super(beta1, beta2, epsilon);
+		this.weightDecay = weightDecay;
+	}
+
+	@Override
+	public void update(double[] weights, double[] momentum, double[] states, double[] adaptions, int length,
+			double learnRate, int noOfSamples, long step, boolean isBias) {
+		if (!isBias) {
+			double keep = 1 - learnRate * weightDecay;
+			for (int i = 0; i < length; i++) {
+				weights[i] *= keep;
+			}
+		}
+		super.update(weights, momentum, states, adaptions, length, learnRate, noOfSamples, step, isBias);
+	}
+}
@@ -0,0 +1,35 @@
+package bs7n.optimizer;
+
+/**
+ * Classical averaged adaption with momentum (heavy ball):
+ * velocity = mu * velocity + delta, weight += velocity
+ * The velocity is held in the momentum of the weights.
+ */
+public class Momentum implements Optimizer {
+	/** momentum factor */
+	private double mu;
+
+	/**
+	 * Constructor
+	 * @param mu Momentum factor, e.g. 0.9
+	 */
+	public Momentum(double mu) {
+		this.mu = mu;
+	}
+
+	@Override
+	public int getNoOfStates() {
+		return 0;
+	}
+
+	@Override
+	public void update(double[] weights, double[] momentum, double[] states, double[] adaptions, int length,
+			double learnRate, int noOfSamples, long step, boolean isBias) {
+		double factor = learnRate / noOfSamples;
+		for (int i = 0; i < length; i++) {
+			double v = mu * momentum[i] + factor * adaptions[i];
+			momentum[i] = v;
+			weights[i] += v;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package bs7n.optimizer;
+
+/**
+ * Nesterov momentum: the adaption is applied at the position, where the momentum will lead to.
+ * With the velocity v = mu * v + delta the step is weight += mu * v + delta. The rule of
+ * Connection.moveWeight is this rule, if its momentum holds mu * v:
+ * momentum = (momentum + delta) * mu, weight += delta + momentum
+ * It is calculated in this form, so it is the rule of the network without an explicit optimizer.
+ */
+public class Nesterov implements Optimizer {
+	/** momentum factor (damping of Connection) */
+	private double mu;
+
+	/**
+	 * Constructor
+	 * @param mu Momentum factor, e.g. 0.9 as in Connection
+	 */
+	public Nesterov(double mu) {
+		this.mu = mu;
+	}
+
+	@Override
+	public int getNoOfStates() {
+		return 0;
+	}
+
+	@Override
+	public void update(double[] weights, double[] momentum, double[] states, double[] adaptions, int length,
+			double learnRate, int noOfSamples, long step, boolean isBias) {
+		double factor = learnRate / noOfSamples;
+		for (int i = 0; i < length; i++) {
+			double d = factor * adaptions[i];
+			double m = (momentum[i] + d) * mu;
+			momentum[i] = m;
+			weights[i] += d + m;
+		}
+	}
+}
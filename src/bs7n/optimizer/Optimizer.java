@@ -0,0 +1,35 @@
+package bs7n.optimizer;
+
+/**
+ * Interface for all rules, which adapt the weights with the accumulated adaptions of a mini-batch
+ * (see FlatNetwork.applyGradient). The state of an optimizer (e.g. the running averages of Adam) is
+ * not held by the optimizer, but by the layers in contiguous arrays next to the weights, so one
+ * optimizer can be used for all layers and networks.
+ *
+ * The adaptions are the values of the delta learn rule (error * derivative * source activation)
+ * summed over all samples of the batch. They point into the direction of a smaller error, so they
+ * are added to the weights (and not subtracted like a gradient).
+ */
+public interface Optimizer {
+	/**
+	 * Number of state values per weight (besides the momentum)
+	 * @return number of state values
+	 */
+	int getNoOfStates();
+
+	/**
+	 * Adapts a row of weights
+	 * @param weights Weights to be changed
+	 * @param momentum Momentum of the weights (the same as in Connection, it can be used or not)
+	 * @param states State values: the first state of all weights, then the second state of all weights and
+	 * so on (length * getNoOfStates values, null if there is no state)
+	 * @param adaptions Accumulated adaptions of all samples
+	 * @param length Number of weights
+	 * @param learnRate Learn step width
+	 * @param noOfSamples Number of accumulated samples
+	 * @param step Number of this adaption, starting with 1
+	 * @param isBias true, if the weights are bias weights
+	 */
+	void update(double[] weights, double[] momentum, double[] states, double[] adaptions, int length, double learnRate,
+			int noOfSamples, long step, boolean isBias);
+}
@@ -0,0 +1,41 @@
+package bs7n.optimizer;
+
+/**
+ * RMSProp: every weight gets its own step width, which is divided by the running average of the
+ * squared adaptions. Weights with small adaptions (e.g. of rare input pixels) learn faster.
+ * mean = rho * mean + (1 - rho) * g * g, weight += learnRate * g / (sqrt(mean) + epsilon)
+ */
+public class RMSProp implements Optimizer {
+	/** damping of the running average */
+	private double rho;
+
+	/** small value against a division by 0 */
+	private double epsilon;
+
+	/**
+	 * Constructor
+	 * @param rho Damping of the running average, e.g. 0.9
+	 * @param epsilon Small value against a division by 0, e.g. 1e-8
+	 */
+	public RMSProp(double rho, double epsilon) {
+		this.rho = rho;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public int getNoOfStates() {
+		return 1;
+	}
+
+	@Override
+	public void update(double[] weights, double[] momentum, double[] states, double[] adaptions, int length,
+			double learnRate, int noOfSamples, long step, boolean isBias) {
+		double scale = 1.0 / noOfSamples;
+		for (int i = 0; i < length; i++) {
+			double g = adaptions[i] * scale;
+			double mean = rho * states[i] + (1 - rho) * g * g;
+			states[i] = mean;
+			weights[i] += learnRate * g / (Math.sqrt(mean) + epsilon);
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package bs7nn;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates a network in a background thread while it is trained. validate copies the current
+ * weights into a snapshot network (a plain array copy, see FlatNetwork.copyWeightsTo), so the
+ * training can continue directly with the live weights. The snapshot is tested with an Evaluator
+ * and the result is delivered to a ValidationListener.
+ *
+ * The weights of the best snapshot are kept (best-model retention) and can be written back into
+ * the network with restoreBest. If the accuracy does not improve for "patience" validations, a
+ * stop is requested (early stopping), which the training loop can check with isStopRequested.
+ *
+ * validate must be called by the training thread between two weight adaptions, so the snapshot is
+ * consistent.
+ */
+public class AsyncValidator {
+	/** number of snapshot networks: one can be tested while the next one waits */
+	private static final int NO_OF_SNAPSHOTS = 2;
+
+	/** the trained network */
+	private FlatNetwork network;
+
+	/** validation samples */
+	private SampleSource source;
+
+	/** number of validations without improvement until a stop is requested */
+	private int patience;
+
+	/** receiver of the results or null */
+	private ValidationListener listener;
+
+	/** tests the snapshots */
+	private Evaluator evaluator;
+
+	/** thread of the validations */
+	private ExecutorService executor;
+
+	/** snapshot networks, which are not in use */
+	private ArrayBlockingQueue<FlatNetwork> freeSnapshots;
+
+	/** weights of the best snapshot */
+	private FlatNetwork best;
+
+	/** accuracy and step of the best snapshot (-1, if there was no validation) */
+	private volatile double bestAccuracy = -1;
+	private volatile int bestStep = -1;
+
+	/** number of validations since the last improvement */
+	private int noOfWorse;
+
+	/** step of the last finished validation (-1, if there was no validation) */
+	private volatile int lastStep = -1;
+
+	/** true, if the accuracy did not improve for "patience" validations */
+	private volatile boolean stopRequested;
+
+	/**
+	 * Constructor
+	 * @param network Network which will be trained
+	 * @param source Validation samples
+	 * @param noOfThreads Number of threads of each validation
+	 * @param patience Number of validations without improvement until a stop is requested
+	 * @param listener Receiver of the results or null
+	 * @throws InconsistentValueException If the number of threads is smaller than 1
+	 */
+	public AsyncValidator(FlatNetwork network, SampleSource source, int noOfThreads, int patience,
+			ValidationListener listener) throws InconsistentValueException {
+		this.network = network;
+		this.source = source;
+		this.patience = patience;
+		this.listener = listener;
+		evaluator = new Evaluator(network, noOfThreads);
+		freeSnapshots = new ArrayBlockingQueue<>(NO_OF_SNAPSHOTS);
+		for (int i = 0; i < NO_OF_SNAPSHOTS; i++) {
+			freeSnapshots.add(network.copy());
+		}
+		best = network.copy();
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "AsyncValidator");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Takes a snapshot of the current weights and starts its validation in the background. If the
+	 * validations are slower than the training and both snapshots are in use, no snapshot is taken.
+	 * @param step Step number for the listener (e.g. the epoch)
+	 * @return true, if the validation was started
+	 * @throws InconsistentValueException Not expected, the snapshots have the structure of the network
+	 */
+	public boolean validate(int step) throws InconsistentValueException {
+		FlatNetwork snapshot = freeSnapshots.poll();
+		if (snapshot == null) {
+			return false;
+		}
+		network.copyWeightsTo(snapshot);
+		executor.execute(() -> {
+			try {
+				check(step, snapshot, evaluator.evaluate(snapshot, source));
+			} catch (InconsistentValueException e) {
+				// not possible, all snapshots are copies of the network of the evaluator
+			} finally {
+				freeSnapshots.add(snapshot);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Processes the result of a validation (called by the validation thread)
+	 * @param step Step number
+	 * @param snapshot Tested weights
+	 * @param result Result of the validation
+	 */
+	private void check(int step, FlatNetwork snapshot, Evaluator.Result result) {
+		boolean isBest = result.getAccuracy() > bestAccuracy;
+		// the state must not change while it is copied into a checkpoint (see getState)
+		synchronized (this) {
+			if (isBest) {
+				try {
+					snapshot.copyWeightsTo(best);
+				} catch (InconsistentValueException e) {
+					// not possible, all snapshots are copies of the same network
+				}
+				bestAccuracy = result.getAccuracy();
+				bestStep = step;
+				noOfWorse = 0;
+			} else if (++noOfWorse >= patience) {
+				stopRequested = true;
+			}
+			lastStep = step;
+		}
+		if (listener != null) {
+			listener.validated(step, result, isBest);
+		}
+	}
+
+	/**
+	 * Waits until all started validations are finished
+	 * @throws InconsistentValueException If the thread was interrupted
+	 */
+	public void waitForValidations() throws InconsistentValueException {
+		// a task behind all started validations
+		try {
+			executor.submit(() -> null).get();
+		} catch (Exception e) {
+			throw new InconsistentValueException(e.toString(), "finished validation", "validation thread",
+					"AsyncValidator.waitForValidations");
+		}
+	}
+
+	/**
+	 * Writes the weights of the best snapshot into the network. The training must not run.
+	 * @throws InconsistentValueException If the thread was interrupted while waiting for the validations
+	 */
+	public void restoreBest() throws InconsistentValueException {
+		waitForValidations();
+		if (bestStep >= 0) {
+			best.copyWeightsTo(network);
+		}
+	}
+
+	/**
+	 * Stops the validation thread after the started validations. The validator can not be used afterwards.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		evaluator.shutdown();
+	}
+
+	/**
+	 * Copies the state of the finished validations, e.g. for a Checkpoint. It can be called while
+	 * validations run.
+	 * @param bestTarget Network receiving the weights of the best snapshot
+	 * @return best accuracy, best step, number of validations without improvement and the step of
+	 * the last finished validation
+	 * @throws InconsistentValueException If the target has another structure
+	 */
+	public synchronized double[] getState(FlatNetwork bestTarget) throws InconsistentValueException {
+		best.copyWeightsTo(bestTarget);
+		return new double[] { bestAccuracy, bestStep, noOfWorse, lastStep };
+	}
+
+	/**
+	 * Takes over the state of former validations, e.g. for resuming a training from a Checkpoint.
+	 * No validation must run.
+	 * @param bestSource Weights of the best snapshot
+	 * @param state Values of getState
+	 * @throws InconsistentValueException If the network has another structure or the state has
+	 * not 4 values
+	 */
+	public synchronized void setState(FlatNetwork bestSource, double[] state) throws InconsistentValueException {
+		if (state.length != 4) {
+			throw new InconsistentValueException(String.valueOf(state.length), "4", "no of values",
+					"AsyncValidator.setState");
+		}
+		bestSource.copyWeightsTo(best);
+		bestAccuracy = state[0];
+		bestStep = (int) state[1];
+		noOfWorse = (int) state[2];
+		lastStep = (int) state[3];
+		stopRequested = noOfWorse >= patience;
+	}
+
+	/**
+	 * Getter of the step of the last finished validation
+	 * @return step number or -1, if there was no validation
+	 */
+	public int getLastStep() {
+		return lastStep;
+	}
+
+	/**
+	 * true, if the accuracy did not improve for "patience" validations
+	 * @return true, if the training should stop
+	 */
+	public boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	/**
+	 * Getter of the best accuracy so far
+	 * @return accuracy or -1, if there was no validation
+	 */
+	public double getBestAccuracy() {
+		return bestAccuracy;
+	}
+
+	/**
+	 * Getter of the step of the best snapshot
+	 * @return step number or -1, if there was no validation
+	 */
+	public int getBestStep() {
+		return bestStep;
+	}
+
+	/**
+	 * Getter of the weights of the best snapshot. The network must not be changed while the validations run.
+	 * @return network with the best weights
+	 */
+	public FlatNetwork getBest() {
+		return best;
+	}
+}
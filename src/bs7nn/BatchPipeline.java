@@ -0,0 +1,359 @@
+package bs7nn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepares mini-batches in background threads, so the training thread does not have to wait for
+ * the data. Every epoch uses its own random order of the samples, which only depends on the seed
+ * and the number of the epoch, so a training run can be reproduced.
+ *
+ * The batches are numbered over all epochs. Worker w prepares the batches w, w + noOfWorkers,
+ * w + 2 * noOfWorkers ... (counted from the first batch) into its own two buffers (double buffering): while the trainer works
+ * with one buffer, the worker fills the other one. The trainer takes the batches in their order
+ * from the workers and gives each buffer back with release after using it:
+ *
+ * while (...) {
+ *     BatchPipeline.Batch batch = pipeline.next();
+ *     trainer.trainBatch(batch.getInputs(), batch.getReferences(), beta);
+ *     pipeline.release(batch);
+ * }
+ */
+public class BatchPipeline {
+	/** number of buffers per worker */
+	private static final int NO_OF_BUFFERS = 2;
+
+	/** time between two checks of a failed worker, while the trainer waits for a batch */
+	private static final long WAIT_MILLIS = 100;
+
+	/** source of the samples */
+	private SampleSource source;
+
+	/** number of samples per batch (the last batch of an epoch can be smaller) */
+	private int batchSize;
+
+	/** seed of the sample order */
+	private long seed;
+
+	/** number of worker threads */
+	private int noOfWorkers;
+
+	/** number of batches per epoch */
+	private int batchesPerEpoch;
+
+	/** filled batches of each worker in their order */
+	private List<ArrayBlockingQueue<Batch>> filled;
+
+	/** free buffers of each worker */
+	private List<ArrayBlockingQueue<Batch>> free;
+
+	/** the worker threads */
+	private ExecutorService executor;
+
+	/** number of the first batch (greater than 0, if a training is resumed) */
+	private long firstBatch;
+
+	/** number of the next batch for the trainer */
+	private long nextBatch;
+
+	/** error, which stopped a worker outside of a batch, or null */
+	private volatile Throwable failure;
+
+	/** time the trainer waited for batches in nanoseconds */
+	private long waitNanos;
+
+	/**
+	 * Buffers of one mini-batch. The arrays are reused for later batches after release.
+	 */
+	public static class Batch {
+		/** worker owning the buffers */
+		private int worker;
+
+		/** buffers with batchSize rows */
+		private double[][] allInputs;
+		private double[][] allReferences;
+
+		/** buffers with exactly size rows (same rows as allInputs / allReferences) */
+		private double[][] inputs;
+		private double[][] references;
+
+		/** number of the epoch */
+		private int epoch;
+
+		/** error of the worker or null */
+		private Throwable error;
+
+		Batch(int worker, int batchSize, int noOfInputs, int noOfOutputs) {
+			this.worker = worker;
+			allInputs = new double[batchSize][noOfInputs];
+			allReferences = new double[batchSize][noOfOutputs];
+		}
+
+		/**
+		 * Input values of the samples
+		 * @return one row per sample
+		 */
+		public double[][] getInputs() {
+			return inputs;
+		}
+
+		/**
+		 * Reference values of the samples
+		 * @return one row per sample
+		 */
+		public double[][] getReferences() {
+			return references;
+		}
+
+		/**
+		 * Number of samples of the batch
+		 * @return number of samples
+		 */
+		public int getSize() {
+			return inputs.length;
+		}
+
+		/**
+		 * Number of the epoch (starting with 0)
+		 * @return epoch
+		 */
+		public int getEpoch() {
+			return epoch;
+		}
+	}
+
+	/**
+	 * Creates the buffers and starts the worker threads
+	 * @param source Source of the samples (must allow calls from several threads)
+	 * @param noOfInputs Number of input values per sample
+	 * @param noOfOutputs Number of reference values per sample
+	 * @param batchSize Number of samples per batch
+	 * @param seed Seed of the sample order
+	 * @param noOfWorkers Number of worker threads
+	 * @throws InconsistentValueException If batch size or number of workers is smaller than 1
+	 */
+	public BatchPipeline(SampleSource source, int noOfInputs, int noOfOutputs, int batchSize, long seed,
+			int noOfWorkers) throws InconsistentValueException {
+		this(source, noOfInputs, noOfOutputs, batchSize, seed, noOfWorkers, 0);
+	}
+
+	/**
+	 * Creates the buffers and starts the worker threads with a later batch, e.g. for resuming a
+	 * training (see Checkpoint). With the same seed the batches are the same as in the run, which
+	 * started with batch 0.
+	 * @param source Source of the samples (must allow calls from several threads)
+	 * @param noOfInputs Number of input values per sample
+	 * @param noOfOutputs Number of reference values per sample
+	 * @param batchSize Number of samples per batch
+	 * @param seed Seed of the sample order
+	 * @param noOfWorkers Number of worker threads
+	 * @param firstBatch Number of the first batch, counted over all epochs
+	 * @throws InconsistentValueException If batch size or number of workers is smaller than 1 or the
+	 * first batch is negative
+	 */
+	public BatchPipeline(SampleSource source, int noOfInputs, int noOfOutputs, int batchSize, long seed,
+			int noOfWorkers, long firstBatch) throws InconsistentValueException {
+		if (batchSize < 1) {
+			throw new InconsistentValueException(String.valueOf(batchSize), ">= 1", "batchSize", "BatchPipeline");
+		}
+		if (noOfWorkers < 1) {
+			throw new InconsistentValueException(String.valueOf(noOfWorkers), ">= 1", "noOfWorkers", "BatchPipeline");
+		}
+		if (firstBatch < 0) {
+			throw new InconsistentValueException(String.valueOf(firstBatch), ">= 0", "firstBatch", "BatchPipeline");
+		}
+		this.source = source;
+		this.batchSize = batchSize;
+		this.seed = seed;
+		this.noOfWorkers = noOfWorkers;
+		this.firstBatch = firstBatch;
+		nextBatch = firstBatch;
+		batchesPerEpoch = (source.getNoOfSamples() + batchSize - 1) / batchSize;
+
+		filled = new ArrayList<>(noOfWorkers);
+		free = new ArrayList<>(noOfWorkers);
+		for (int w = 0; w < noOfWorkers; w++) {
+			filled.add(new ArrayBlockingQueue<>(NO_OF_BUFFERS));
+			free.add(new ArrayBlockingQueue<>(NO_OF_BUFFERS));
+			for (int b = 0; b < NO_OF_BUFFERS; b++) {
+				free.get(w).add(new Batch(w, batchSize, noOfInputs, noOfOutputs));
+			}
+		}
+
+		executor = Executors.newFixedThreadPool(noOfWorkers, r -> {
+			Thread t = new Thread(r, "BatchPipeline worker");
+			t.setDaemon(true);
+			return t;
+		});
+		if (batchesPerEpoch > 0) {
+			for (int w = 0; w < noOfWorkers; w++) {
+				int worker = w;
+				executor.execute(() -> work(worker));
+			}
+		}
+	}
+
+	/**
+	 * Loop of one worker thread: fills its batches until the pipeline is closed
+	 * @param worker Number of the worker
+	 */
+	private void work(int worker) {
+		int[] order = null;
+		int orderEpoch = -1;
+		try {
+			for (long k = firstBatch + worker;; k += noOfWorkers) {
+				Batch batch = free.get(worker).take();
+				int epoch = (int) (k / batchesPerEpoch);
+				batch.error = null;
+				try {
+					// every worker calculates the order of the epoch itself, so no data is shared
+					if (epoch != orderEpoch) {
+						order = getOrder(epoch, order);
+						orderEpoch = epoch;
+					}
+					fill(batch, order, (int) (k % batchesPerEpoch), epoch);
+				} catch (Throwable e) {
+					// also errors like OutOfMemoryError are passed to the trainer instead of ending the thread
+					batch.error = e;
+				}
+				filled.get(worker).put(batch);
+			}
+		} catch (InterruptedException e) {
+			// the pipeline was closed
+		} catch (Throwable e) {
+			// the trainer must not wait forever for the batches of this worker
+			failure = e;
+		}
+	}
+
+	/**
+	 * Random order of all samples of one epoch (Fisher-Yates shuffle). It only depends on the
+	 * seed and the epoch.
+	 * @param epoch Number of the epoch
+	 * @param order Buffer of the last order or null
+	 * @return positions of the samples in their order
+	 */
+	private int[] getOrder(int epoch, int[] order) {
+		int noOfSamples = source.getNoOfSamples();
+		if (order == null) {
+			order = new int[noOfSamples];
+		}
+		for (int i = 0; i < noOfSamples; i++) {
+			order[i] = i;
+		}
+		Random rnd = new Random(seed + 0x9E3779B97F4A7C15L * (epoch + 1));
+		for (int i = noOfSamples - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		return order;
+	}
+
+	/**
+	 * Writes the samples of one batch into its buffers
+	 * @param batch Buffers to fill
+	 * @param order Order of the samples of the epoch
+	 * @param b Number of the batch within the epoch
+	 * @param epoch Number of the epoch
+	 */
+	private void fill(Batch batch, int[] order, int b, int epoch) {
+		int start = b * batchSize;
+		int size = Math.min(batchSize, order.length - start);
+		for (int i = 0; i < size; i++) {
+			source.getSample(order[start + i], batch.allInputs[i], batch.allReferences[i]);
+		}
+		// the last batch of an epoch can be smaller
+		if (size == batchSize) {
+			batch.inputs = batch.allInputs;
+			batch.references = batch.allReferences;
+		} else {
+			batch.inputs = Arrays.copyOf(batch.allInputs, size);
+			batch.references = Arrays.copyOf(batch.allReferences, size);
+		}
+		batch.epoch = epoch;
+	}
+
+	/**
+	 * Takes the next batch. It waits, if the batch is not prepared yet.
+	 * @return next batch, which must be given back with release after using it
+	 * @throws InconsistentValueException If the worker failed or the thread was interrupted
+	 */
+	public Batch next() throws InconsistentValueException {
+		if (batchesPerEpoch == 0) {
+			throw new InconsistentValueException("0", ">= 1", "number of samples", "BatchPipeline.next");
+		}
+		Batch batch;
+		long start = System.nanoTime();
+		try {
+			ArrayBlockingQueue<Batch> queue = filled.get((int) ((nextBatch - firstBatch) % noOfWorkers));
+			batch = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			while (batch == null) {
+				if (failure != null) {
+					throw new InconsistentValueException(failure.toString(), "running worker", "worker",
+							"BatchPipeline.next");
+				}
+				batch = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InconsistentValueException(e.toString(), "prepared batch", "batch", "BatchPipeline.next");
+		}
+		waitNanos += System.nanoTime() - start;
+		nextBatch++;
+		if (batch.error != null) {
+			// the buffers go back to the worker, so it can prepare the following batches
+			Throwable error = batch.error;
+			release(batch);
+			throw new InconsistentValueException(error.toString(), "prepared batch", "batch",
+					"BatchPipeline.next");
+		}
+		return batch;
+	}
+
+	/**
+	 * Gives the buffers of a batch back to its worker
+	 * @param batch Batch taken with next
+	 */
+	public void release(Batch batch) {
+		free.get(batch.worker).add(batch);
+	}
+
+	/**
+	 * Stops the worker threads. The pipeline can not be used afterwards.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Number of batches per epoch
+	 * @return number of batches
+	 */
+	public int getBatchesPerEpoch() {
+		return batchesPerEpoch;
+	}
+
+	/**
+	 * Number of the batch, which next will return (counted over all epochs)
+	 * @return number of the next batch
+	 */
+	public long getNextBatch() {
+		return nextBatch;
+	}
+
+	/**
+	 * Time the trainer waited in next for prepared batches
+	 * @return waiting time in nanoseconds
+	 */
+	public long getWaitNanos() {
+		return waitNanos;
+	}
+}
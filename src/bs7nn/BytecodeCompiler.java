@@ -0,0 +1,559 @@
+package bs7nn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bs7n.activation.Activateable;
+import bs7n.activation.Identity;
+import bs7n.activation.ReLU;
+import bs7n.activation.Sigmoid;
+import bs7n.activation.TangensHyp;
+
+/**
+ * Translates the topology of a NeuronalNetwork into a class implementing CompiledNetwork. The
+ * method evaluate of the generated class has one straight line of instructions per connection
+ * (no loops, no lists, no objects per neuron), the activation levels of the hidden neurons are
+ * local variables. Identity, ReLU, Sigmoid and TangensHyp are written as arithmetic into the code,
+ * every other activation function is called through its own call site, so the JIT compiler sees
+ * only one implementation there. The calculation is the same as in WorkerNeuron.calcA, so the
+ * results are identical to NeuronalNetwork.setInputValues.
+ *
+ * The size of a method is limited to 64 KB of bytecode, so only small networks (some thousand
+ * connections) can be compiled.
+ */
+final class BytecodeCompiler {
+	/** largest size of the code of a method */
+	private static final int MAX_CODE_SIZE = 65535;
+
+	/** counter for unique class names */
+	private static final AtomicInteger NO_OF_CLASSES = new AtomicInteger();
+
+	/** name of the interface of the generated classes */
+	private static final String INTERFACE = "bs7nn/CompiledNetwork";
+
+	/** type of the field holding the activation functions */
+	private static final String ACTIVATIONS_TYPE = "[Lbs7n/activation/Activateable;";
+
+	// opcodes of the used instructions
+	private static final int ICONST_0 = 0x03;
+	private static final int DCONST_0 = 0x0e;
+	private static final int DCONST_1 = 0x0f;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int DLOAD = 0x18;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c;
+	private static final int ALOAD_3 = 0x2d;
+	private static final int DALOAD = 0x31;
+	private static final int AALOAD = 0x32;
+	private static final int DSTORE = 0x39;
+	private static final int DASTORE = 0x52;
+	private static final int DADD = 0x63;
+	private static final int DSUB = 0x67;
+	private static final int DMUL = 0x6b;
+	private static final int DDIV = 0x6f;
+	private static final int DNEG = 0x77;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int PUTFIELD = 0xb5;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int INVOKEINTERFACE = 0xb9;
+	private static final int WIDE = 0xc4;
+
+	/** constant pool of the generated class */
+	private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+
+	/** writer of the constant pool */
+	private DataOutputStream pool = new DataOutputStream(poolBytes);
+
+	/** positions of the constant pool entries, so every constant is written once */
+	private HashMap<String, Integer> poolEntries = new HashMap<>();
+
+	/** next free position in the constant pool */
+	private int noOfPoolEntries = 1;
+
+	/** code of the method evaluate */
+	private ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+	/** activation function of every worker neuron in the order of the weights */
+	private ArrayList<Activateable> activations = new ArrayList<>();
+
+	/**
+	 * Generates, loads and instantiates the class for a network
+	 * @param inputs Input neurons
+	 * @param hiddenLayers Hidden layers
+	 * @param outputs Output neurons
+	 * @return compiled network
+	 * @throws InconsistentValueException If the network is too large or a connection does not lead
+	 * from an input or an earlier layer
+	 */
+	static CompiledNetwork compile(ArrayList<InputNeuron> inputs, ArrayList<NeuronLayer> hiddenLayers,
+			ArrayList<WorkerNeuron> outputs) throws InconsistentValueException {
+		BytecodeCompiler compiler = new BytecodeCompiler();
+		String name = "bs7nn/GeneratedNetwork" + NO_OF_CLASSES.incrementAndGet();
+		byte[] classFile;
+		try {
+			classFile = compiler.createClass(name, inputs, hiddenLayers, outputs);
+		} catch (IOException e) {
+			// not expected, all data is written into memory
+			throw new InconsistentValueException(e.getMessage(), "no IOException", "class file",
+					"NeuronalNetwork.compileBytecode");
+		}
+		try {
+			Class<?> c = MethodHandles.lookup().defineClass(classFile);
+			return (CompiledNetwork) c.getDeclaredConstructor(Activateable[].class)
+					.newInstance((Object) compiler.activations.toArray(new Activateable[0]));
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new InconsistentValueException(e.toString(), "valid class", "generated class",
+					"NeuronalNetwork.compileBytecode");
+		}
+	}
+
+	/**
+	 * Creates the class file
+	 * @param name Internal name of the class
+	 * @param inputs Input neurons
+	 * @param hiddenLayers Hidden layers
+	 * @param outputs Output neurons
+	 * @return content of the class file
+	 * @throws IOException Not expected
+	 * @throws InconsistentValueException If the network is too large or a connection does not lead
+	 * from an input or an earlier layer
+	 */
+	private byte[] createClass(String name, ArrayList<InputNeuron> inputs, ArrayList<NeuronLayer> hiddenLayers,
+			ArrayList<WorkerNeuron> outputs) throws IOException, InconsistentValueException {
+		int noOfLocals = writeEvaluate(name, inputs, hiddenLayers, outputs);
+		if (code.size() > MAX_CODE_SIZE) {
+			throw new InconsistentValueException(String.valueOf(code.size()), "<= " + MAX_CODE_SIZE,
+					"bytecode size", "NeuronalNetwork.compileBytecode");
+		}
+
+		// constructor: stores the activation functions
+		ByteArrayOutputStream init = new ByteArrayOutputStream();
+		init.write(ALOAD_0);
+		writeU1U2(init, INVOKESPECIAL, methodRef("java/lang/Object", "<init>", "()V", false));
+		init.write(ALOAD_0);
+		init.write(ALOAD_1);
+		writeU1U2(init, PUTFIELD, fieldRef(name, "activations", ACTIVATIONS_TYPE));
+		init.write(RETURN);
+
+		int thisClass = classRef(name);
+		int superClass = classRef("java/lang/Object");
+		int interfaceClass = classRef(INTERFACE);
+		int fieldName = utf8("activations");
+		int fieldType = utf8(ACTIVATIONS_TYPE);
+		int initName = utf8("<init>");
+		int initType = utf8("(" + ACTIVATIONS_TYPE + ")V");
+		int evaluateName = utf8("evaluate");
+		int evaluateType = utf8("([D[D[D)V");
+		int codeName = utf8("Code");
+		pool.flush();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		// version of Java 8, so no stack map frames are needed (there are no jumps anyway)
+		out.writeShort(0);
+		out.writeShort(52);
+		out.writeShort(noOfPoolEntries);
+		poolBytes.writeTo(out);
+		// public final super
+		out.writeShort(0x0031);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(interfaceClass);
+
+		// private final Activateable[] activations
+		out.writeShort(1);
+		out.writeShort(0x0012);
+		out.writeShort(fieldName);
+		out.writeShort(fieldType);
+		out.writeShort(0);
+
+		out.writeShort(2);
+		writeMethod(out, initName, initType, codeName, 2, 2, init.toByteArray());
+		writeMethod(out, evaluateName, evaluateType, codeName, 20, noOfLocals, code.toByteArray());
+		// no class attributes
+		out.writeShort(0);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the code of the method evaluate(double[] weights, double[] inputValues, double[] outputValues)
+	 * @param name Internal name of the class
+	 * @param inputs Input neurons
+	 * @param hiddenLayers Hidden layers
+	 * @param outputs Output neurons
+	 * @return number of local variables
+	 * @throws InconsistentValueException If a connection does not lead from an input or an earlier layer
+	 */
+	private int writeEvaluate(String name, ArrayList<InputNeuron> inputs, ArrayList<NeuronLayer> hiddenLayers,
+			ArrayList<WorkerNeuron> outputs) throws InconsistentValueException {
+		IdentityHashMap<Neuron, Integer> inputPositions = new IdentityHashMap<>();
+		for (int i = 0; i < inputs.size(); i++) {
+			inputPositions.put(inputs.get(i), i);
+		}
+		// slot 0: this, 1: weights, 2: inputValues, 3: outputValues, from 4: one double per hidden neuron
+		IdentityHashMap<Neuron, Integer> hiddenSlots = new IdentityHashMap<>();
+		int nextSlot = 4;
+		int weightPos = 0;
+
+		for (NeuronLayer l : hiddenLayers) {
+			for (WorkerNeuron wn : l.getNeuronList()) {
+				writeActivationStart(name, wn);
+				weightPos = writeSum(wn, weightPos, inputPositions, hiddenSlots);
+				writeActivationEnd(wn);
+				writeLocal(DSTORE, nextSlot);
+				hiddenSlots.put(wn, nextSlot);
+				nextSlot += 2;
+			}
+		}
+
+		for (int n = 0; n < outputs.size(); n++) {
+			WorkerNeuron wn = outputs.get(n);
+			code.write(ALOAD_3);
+			writeInt(n);
+			writeActivationStart(name, wn);
+			weightPos = writeSum(wn, weightPos, inputPositions, hiddenSlots);
+			writeActivationEnd(wn);
+			code.write(DASTORE);
+		}
+
+		// functions of the whole output layer (softmax), like in NeuronalNetwork.setInputValues
+		if (!outputs.isEmpty() && !isInline(outputs.get(0).getActivation())) {
+			code.write(ALOAD_0);
+			writeU1U2(code, GETFIELD, fieldRef(name, "activations", ACTIVATIONS_TYPE));
+			writeInt(activations.size() - outputs.size());
+			code.write(AALOAD);
+			code.write(ALOAD_3);
+			code.write(ICONST_0);
+			writeInt(outputs.size());
+			writeU1U2(code, INVOKEINTERFACE, methodRef("bs7n/activation/Activateable", "normalize", "([DII)V", true));
+			code.write(4);
+			code.write(0);
+		}
+		code.write(RETURN);
+		return nextSlot;
+	}
+
+	/**
+	 * Writes the sum of all incomming connection signals in the same order as WorkerNeuron.calcX
+	 * @param wn Worker neuron
+	 * @param weightPos Position of the first weight of the neuron
+	 * @param inputPositions Positions of the input neurons
+	 * @param hiddenSlots Local variables of the hidden neurons, which are already calculated
+	 * @return position of the first weight of the next neuron
+	 * @throws InconsistentValueException If a connection does not lead from an input or an earlier layer
+	 */
+	private int writeSum(WorkerNeuron wn, int weightPos, IdentityHashMap<Neuron, Integer> inputPositions,
+			IdentityHashMap<Neuron, Integer> hiddenSlots) throws InconsistentValueException {
+		code.write(DCONST_0);
+		for (Connection c : wn.getConnections()) {
+			Neuron source = c.getSource();
+			code.write(ALOAD_1);
+			writeInt(weightPos++);
+			code.write(DALOAD);
+			if (inputPositions.containsKey(source)) {
+				code.write(ALOAD_2);
+				writeInt(inputPositions.get(source));
+				code.write(DALOAD);
+			} else if (hiddenSlots.containsKey(source)) {
+				writeLocal(DLOAD, hiddenSlots.get(source));
+			} else if (source instanceof InputNeuron) {
+				// bias neuron with a constant activation level
+				writeDouble(source.getA());
+			} else {
+				throw new InconsistentValueException(source.getClass().getSimpleName(), "input or earlier layer",
+						"source of connection", "NeuronalNetwork.compileBytecode");
+			}
+			code.write(DMUL);
+			code.write(DADD);
+		}
+		return weightPos;
+	}
+
+	/**
+	 * Writes the part of the activation function before the sum
+	 * @param name Internal name of the class
+	 * @param wn Worker neuron
+	 */
+	private void writeActivationStart(String name, WorkerNeuron wn) {
+		Activateable activate = wn.getActivation();
+		activations.add(activate);
+		Class<?> c = activate.getClass();
+		if (c == ReLU.class) {
+			// Math.max(0, x)
+			code.write(DCONST_0);
+		} else if (c == Sigmoid.class) {
+			// 1/(1+Math.exp(-x))
+			code.write(DCONST_1);
+			code.write(DCONST_1);
+		} else if (c == TangensHyp.class) {
+			// 1-2/(1+Math.exp(2*x))
+			code.write(DCONST_1);
+			writeDouble(2);
+			code.write(DCONST_1);
+			writeDouble(2);
+		} else if (c != Identity.class) {
+			// activations[pos].f(x)
+			code.write(ALOAD_0);
+			writeU1U2(code, GETFIELD, fieldRef(name, "activations", ACTIVATIONS_TYPE));
+			writeInt(activations.size() - 1);
+			code.write(AALOAD);
+		}
+	}
+
+	/**
+	 * Writes the part of the activation function after the sum
+	 * @param wn Worker neuron
+	 */
+	private void writeActivationEnd(WorkerNeuron wn) {
+		Class<?> c = wn.getActivation().getClass();
+		if (c == ReLU.class) {
+			writeU1U2(code, INVOKESTATIC, methodRef("java/lang/Math", "max", "(DD)D", false));
+		} else if (c == Sigmoid.class) {
+			code.write(DNEG);
+			writeU1U2(code, INVOKESTATIC, methodRef("java/lang/Math", "exp", "(D)D", false));
+			code.write(DADD);
+			code.write(DDIV);
+		} else if (c == TangensHyp.class) {
+			code.write(DMUL);
+			writeU1U2(code, INVOKESTATIC, methodRef("java/lang/Math", "exp", "(D)D", false));
+			code.write(DADD);
+			code.write(DDIV);
+			code.write(DSUB);
+		} else if (c != Identity.class) {
+			writeU1U2(code, INVOKEINTERFACE, methodRef("bs7n/activation/Activateable", "f", "(D)D", true));
+			// object and double argument
+			code.write(3);
+			code.write(0);
+		}
+	}
+
+	/**
+	 * Checks, if an activation function is written as arithmetic into the code
+	 * @param activate Activation function
+	 * @return true for Identity, ReLU, Sigmoid and TangensHyp
+	 */
+	private static boolean isInline(Activateable activate) {
+		Class<?> c = activate.getClass();
+		return c == Identity.class || c == ReLU.class || c == Sigmoid.class || c == TangensHyp.class;
+	}
+
+	/**
+	 * Writes an instruction with a local variable
+	 * @param opcode DLOAD or DSTORE
+	 * @param slot Position of the local variable
+	 */
+	private void writeLocal(int opcode, int slot) {
+		if (slot > 255) {
+			code.write(WIDE);
+			writeU1U2(code, opcode, slot);
+		} else {
+			code.write(opcode);
+			code.write(slot);
+		}
+	}
+
+	/**
+	 * Writes the shortest instruction for an int constant
+	 * @param value Constant
+	 */
+	private void writeInt(int value) {
+		if (value >= -1 && value <= 5) {
+			code.write(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.write(BIPUSH);
+			code.write(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			writeU1U2(code, SIPUSH, value);
+		} else {
+			writeU1U2(code, LDC_W, constant("I" + value, 3, value));
+		}
+	}
+
+	/**
+	 * Writes the shortest instruction for a double constant
+	 * @param value Constant
+	 */
+	private void writeDouble(double value) {
+		if (Double.doubleToRawLongBits(value) == 0) {
+			code.write(DCONST_0);
+		} else if (value == 1) {
+			code.write(DCONST_1);
+		} else {
+			writeU1U2(code, LDC2_W, constant("D" + Double.doubleToRawLongBits(value), 6, Double.doubleToRawLongBits(value)));
+		}
+	}
+
+	/**
+	 * Writes an instruction with a two byte argument
+	 * @param out Code
+	 * @param opcode Instruction
+	 * @param value Argument
+	 */
+	private static void writeU1U2(ByteArrayOutputStream out, int opcode, int value) {
+		out.write(opcode);
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	/**
+	 * Writes a method with a Code attribute
+	 * @param out Class file
+	 * @param name Constant pool position of the name
+	 * @param type Constant pool position of the descriptor
+	 * @param codeName Constant pool position of "Code"
+	 * @param maxStack Maximum size of the operand stack
+	 * @param maxLocals Number of local variable slots
+	 * @param code Instructions
+	 * @throws IOException Not expected
+	 */
+	private static void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack, int maxLocals,
+			byte[] code) throws IOException {
+		// public
+		out.writeShort(0x0001);
+		out.writeShort(name);
+		out.writeShort(type);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		// no exceptions, no attributes
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+
+	/**
+	 * Constant pool entry of a string
+	 * @param value String
+	 * @return position in the constant pool
+	 */
+	private int utf8(String value) {
+		Integer pos = poolEntries.get("U" + value);
+		if (pos != null) {
+			return pos;
+		}
+		try {
+			pool.writeByte(1);
+			pool.writeUTF(value);
+		} catch (IOException e) {
+			// not expected, all data is written into memory
+			throw new IllegalStateException(e);
+		}
+		poolEntries.put("U" + value, noOfPoolEntries);
+		return noOfPoolEntries++;
+	}
+
+	/**
+	 * Constant pool entry of a class
+	 * @param name Internal name of the class
+	 * @return position in the constant pool
+	 */
+	private int classRef(String name) {
+		return reference("C" + name, 7, utf8(name), -1);
+	}
+
+	/**
+	 * Constant pool entry of a field
+	 * @param owner Internal name of the class
+	 * @param name Name of the field
+	 * @param type Descriptor of the field
+	 * @return position in the constant pool
+	 */
+	private int fieldRef(String owner, String name, String type) {
+		return reference("F" + owner + "." + name, 9, classRef(owner), nameAndType(name, type));
+	}
+
+	/**
+	 * Constant pool entry of a method
+	 * @param owner Internal name of the class or interface
+	 * @param name Name of the method
+	 * @param type Descriptor of the method
+	 * @param isInterface true, if the owner is an interface
+	 * @return position in the constant pool
+	 */
+	private int methodRef(String owner, String name, String type, boolean isInterface) {
+		return reference("M" + owner + "." + name + type, isInterface ? 11 : 10, classRef(owner), nameAndType(name, type));
+	}
+
+	/**
+	 * Constant pool entry of a name and a descriptor
+	 * @param name Name
+	 * @param type Descriptor
+	 * @return position in the constant pool
+	 */
+	private int nameAndType(String name, String type) {
+		return reference("N" + name + ":" + type, 12, utf8(name), utf8(type));
+	}
+
+	/**
+	 * Constant pool entry, which refers to one or two other entries
+	 * @param key Unique key of the entry
+	 * @param tag Type of the entry
+	 * @param first First position
+	 * @param second Second position or -1
+	 * @return position in the constant pool
+	 */
+	private int reference(String key, int tag, int first, int second) {
+		Integer pos = poolEntries.get(key);
+		if (pos != null) {
+			return pos;
+		}
+		try {
+			pool.writeByte(tag);
+			pool.writeShort(first);
+			if (second >= 0) {
+				pool.writeShort(second);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		poolEntries.put(key, noOfPoolEntries);
+		return noOfPoolEntries++;
+	}
+
+	/**
+	 * Constant pool entry of a number
+	 * @param key Unique key of the entry
+	 * @param tag 3 for int, 6 for double
+	 * @param value Value (int) or bits of the value (double)
+	 * @return position in the constant pool
+	 */
+	private int constant(String key, int tag, long value) {
+		Integer pos = poolEntries.get(key);
+		if (pos != null) {
+			return pos;
+		}
+		try {
+			pool.writeByte(tag);
+			if (tag == 6) {
+				pool.writeLong(value);
+			} else {
+				pool.writeInt((int) value);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		poolEntries.put(key, noOfPoolEntries);
+		// a double takes two positions
+		int result = noOfPoolEntries;
+		noOfPoolEntries += tag == 6 ? 2 : 1;
+		return result;
+	}
+}
@@ -0,0 +1,450 @@
+package bs7nn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * State of a training, from which the training can be continued exactly as if it had not been
+ * interrupted: the weights, the momentum and the optimizer states of all weights (restoring only
+ * the weights would change the next adaptions), the epoch and step counters, the state of a random generator and
+ * further values of the training loop (e.g. the state of an AsyncValidator). Optionally it holds
+ * the weights of the best network so far.
+ *
+ * The file is written like a ModelFile (little endian, CRC32 checksum at the end), but with the
+ * momentum. It is written into a temporary file first, which then replaces the former checkpoint,
+ * so an interruption while writing does not destroy the former checkpoint.
+ * For writing in the background see CheckpointWriter.
+ */
+public class Checkpoint {
+	/** magic number: the characters "BS7C" */
+	public static final int MAGIC = 0x43375342;
+
+	/** version of the file format (version 1 had no optimizer states) */
+	public static final int VERSION = 2;
+
+	/** size of the buffer for reading and writing */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** weights and momentum of the trained network */
+	private FlatNetwork network;
+
+	/** weights of the best network or null */
+	private FlatNetwork best;
+
+	/** number of finished epochs */
+	private int epoch;
+
+	/** number of finished steps (e.g. batches) */
+	private long step;
+
+	/** serialized random generator or null */
+	private byte[] randomState;
+
+	/** further values of the training loop */
+	private double[] values = new double[0];
+
+	/** buffer for reading and writing (created on first use) */
+	private ByteBuffer buffer;
+
+	/**
+	 * Constructor for an empty checkpoint of a network structure
+	 * @param structure Network with the structure of the checkpoint
+	 * @param withBest true, if the checkpoint should hold the weights of a best network
+	 * @throws InconsistentValueException Not expected, the copies have the structure of the network
+	 */
+	public Checkpoint(FlatNetwork structure, boolean withBest) throws InconsistentValueException {
+		network = structure.copy();
+		network.initStates(structure.getNoOfStates());
+		best = withBest ? structure.copy() : null;
+	}
+
+	/**
+	 * Constructor for reading, the network is used directly
+	 * @param network Network, which receives the state of the file
+	 */
+	private Checkpoint(FlatNetwork network) {
+		this.network = network;
+	}
+
+	/**
+	 * Takes over the current state of a training. Call it between two weight adaptions.
+	 * @param source Trained network
+	 * @param epoch Number of finished epochs
+	 * @param step Number of finished steps
+	 * @param random Random generator of the training or null
+	 * @param values Further values of the training loop
+	 * @throws InconsistentValueException If the network has another structure
+	 */
+	public void take(FlatNetwork source, int epoch, long step, Random random, double... values)
+			throws InconsistentValueException {
+		source.copyStateTo(network);
+		this.epoch = epoch;
+		this.step = step;
+		this.values = values.clone();
+		randomState = null;
+		if (random != null) {
+			// java.util.Random is serializable, so its internal state can be stored without knowing it
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeObject(random);
+			} catch (IOException e) {
+				throw new InconsistentValueException(e.toString(), "serializable", "random", "Checkpoint.take");
+			}
+			randomState = bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Writes the weights and the momentum of the checkpoint into a network
+	 * @param target Network, which continues the training
+	 * @throws InconsistentValueException If the network has another structure
+	 */
+	public void restore(FlatNetwork target) throws InconsistentValueException {
+		network.copyStateTo(target);
+	}
+
+	/**
+	 * Writes the checkpoint into a file
+	 * @param path Path of the file (a former checkpoint is replaced)
+	 * @throws IOException If the file can not be written
+	 * @throws InconsistentValueException If an activation function is not part of the WorkerFactory
+	 */
+	public void write(String path) throws IOException, InconsistentValueException {
+		Path target = Paths.get(path);
+		Path temp = Paths.get(path + ".tmp");
+		FlatLayer[] layers = network.getLayers();
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer out = getBuffer();
+			out.clear();
+			CRC32 crc = new CRC32();
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(epoch);
+			out.putLong(step);
+			out.putInt(network.getNoOfInputs());
+			out.putInt(layers.length);
+			for (FlatLayer l : layers) {
+				out.putInt(l.getNoOfNeurons());
+				out.putInt(WorkerFactory.getType(l.getActivation()));
+				out.putInt(l.getBias() != null ? 1 : 0);
+			}
+			out.putInt(best != null ? 1 : 0);
+			out.putInt(randomState != null ? randomState.length : -1);
+			if (randomState != null) {
+				writeBytes(channel, out, crc, randomState);
+			}
+			ensure(channel, out, crc, 4);
+			out.putInt(values.length);
+			writeDoubles(channel, out, crc, values);
+			ensure(channel, out, crc, 12);
+			out.putInt(network.getNoOfStates());
+			out.putLong(network.getNoOfSteps());
+
+			for (FlatLayer l : layers) {
+				writeDoubles(channel, out, crc, l.getWeights());
+				writeDoubles(channel, out, crc, l.getMomentum());
+				if (l.getStates() != null) {
+					writeDoubles(channel, out, crc, l.getStates());
+				}
+				if (l.getBias() != null) {
+					writeDoubles(channel, out, crc, l.getBias());
+					writeDoubles(channel, out, crc, l.getBiasMomentum());
+					if (l.getBiasStates() != null) {
+						writeDoubles(channel, out, crc, l.getBiasStates());
+					}
+				}
+			}
+			if (best != null) {
+				for (FlatLayer l : best.getLayers()) {
+					writeDoubles(channel, out, crc, l.getWeights());
+					if (l.getBias() != null) {
+						writeDoubles(channel, out, crc, l.getBias());
+					}
+				}
+			}
+			flush(channel, out, crc);
+			out.putInt((int) crc.getValue());
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint from a file
+	 * @param path Path of the file
+	 * @return checkpoint
+	 * @throws IOException If the file can not be read, has a wrong format or a wrong checksum
+	 * @throws InconsistentValueException If the file contains an unknown activation type or softmax in a hidden layer
+	 */
+	public static Checkpoint read(String path) throws IOException, InconsistentValueException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			in.flip();
+			CRC32 crc = new CRC32();
+			fill(channel, in, crc, 16);
+			if (in.getInt() != MAGIC) {
+				throw new IOException(path + ": no checkpoint file");
+			}
+			int version = in.getInt();
+			if (version != VERSION && version != 1) {
+				throw new IOException(path + ": version " + version + ", expected " + VERSION);
+			}
+			int epoch = in.getInt();
+			fill(channel, in, crc, 16);
+			long step = in.getLong();
+			int noOfInputs = in.getInt();
+			int noOfLayers = in.getInt();
+			if (noOfLayers < 1 || noOfInputs < 1) {
+				throw new IOException(path + ": " + noOfLayers + " layers with " + noOfInputs + " inputs");
+			}
+			FlatLayer[] layers = new FlatLayer[noOfLayers];
+			for (int l = 0; l < noOfLayers; l++) {
+				fill(channel, in, crc, 12);
+				int noOfNeurons = in.getInt();
+				int type = in.getInt();
+				boolean withBias = in.getInt() != 0;
+				if (noOfNeurons < 1) {
+					throw new IOException(path + ": " + noOfNeurons + " neurons in layer " + l);
+				}
+				layers[l] = new FlatLayer(l == 0 ? noOfInputs : layers[l - 1].getNoOfNeurons(), noOfNeurons, withBias,
+						WorkerFactory.getKnownActivation(type));
+			}
+			Checkpoint cp = new Checkpoint(new FlatNetwork(layers));
+			fill(channel, in, crc, 8);
+			boolean withBest = in.getInt() != 0;
+			int randomLength = in.getInt();
+			cp.epoch = epoch;
+			cp.step = step;
+			if (randomLength >= 0) {
+				cp.randomState = new byte[randomLength];
+				readBytes(channel, in, crc, cp.randomState);
+			}
+			fill(channel, in, crc, 4);
+			cp.values = new double[in.getInt()];
+			readDoubles(channel, in, crc, cp.values);
+			if (version > 1) {
+				fill(channel, in, crc, 12);
+				int noOfStates = in.getInt();
+				if (noOfStates < 0) {
+					throw new IOException(path + ": " + noOfStates + " optimizer states");
+				}
+				cp.network.initStates(noOfStates);
+				cp.network.setNoOfSteps(in.getLong());
+			}
+
+			for (FlatLayer l : cp.network.getLayers()) {
+				readDoubles(channel, in, crc, l.getWeights());
+				readDoubles(channel, in, crc, l.getMomentum());
+				if (l.getStates() != null) {
+					readDoubles(channel, in, crc, l.getStates());
+				}
+				if (l.getBias() != null) {
+					readDoubles(channel, in, crc, l.getBias());
+					readDoubles(channel, in, crc, l.getBiasMomentum());
+					if (l.getBiasStates() != null) {
+						readDoubles(channel, in, crc, l.getBiasStates());
+					}
+				}
+			}
+			if (withBest) {
+				cp.best = cp.network.copy();
+				for (FlatLayer l : cp.best.getLayers()) {
+					readDoubles(channel, in, crc, l.getWeights());
+					if (l.getBias() != null) {
+						readDoubles(channel, in, crc, l.getBias());
+					}
+				}
+			}
+
+			// the checksum itself is not part of the checksum
+			crc.update(in.duplicate().flip());
+			in.compact().flip();
+			int expected = (int) crc.getValue();
+			fill(channel, in, crc, 4);
+			if (in.getInt() != expected) {
+				throw new IOException(path + ": wrong checksum");
+			}
+			return cp;
+		}
+	}
+
+	/**
+	 * Buffer for writing (created on first use, so checkpoints, which are only read, do not need it)
+	 * @return buffer in little endian order
+	 */
+	private ByteBuffer getBuffer() {
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Writes the content of the buffer into the file, so it is empty afterwards
+	 */
+	private static void flush(FileChannel channel, ByteBuffer out, CRC32 crc) throws IOException {
+		out.flip();
+		crc.update(out.duplicate());
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Makes sure, that the buffer has space for a number of bytes
+	 */
+	private static void ensure(FileChannel channel, ByteBuffer out, CRC32 crc, int noOfBytes) throws IOException {
+		if (out.remaining() < noOfBytes) {
+			flush(channel, out, crc);
+		}
+	}
+
+	/**
+	 * Writes bytes through the buffer
+	 */
+	private static void writeBytes(FileChannel channel, ByteBuffer out, CRC32 crc, byte[] values) throws IOException {
+		int pos = 0;
+		while (pos < values.length) {
+			ensure(channel, out, crc, 1);
+			int n = Math.min(values.length - pos, out.remaining());
+			out.put(values, pos, n);
+			pos += n;
+		}
+	}
+
+	/**
+	 * Writes doubles through the buffer, each part as a whole
+	 */
+	private static void writeDoubles(FileChannel channel, ByteBuffer out, CRC32 crc, double[] values)
+			throws IOException {
+		int pos = 0;
+		while (pos < values.length) {
+			ensure(channel, out, crc, 8);
+			int n = Math.min(values.length - pos, out.remaining() / 8);
+			out.asDoubleBuffer().put(values, pos, n);
+			out.position(out.position() + 8 * n);
+			pos += n;
+		}
+	}
+
+	/**
+	 * Makes sure, that the buffer contains a number of bytes. The bytes, which were taken out of
+	 * the buffer (position 0 up to the current position), are added to the checksum before they are dropped.
+	 */
+	private static void fill(FileChannel channel, ByteBuffer in, CRC32 crc, int noOfBytes) throws IOException {
+		if (in.remaining() >= noOfBytes) {
+			return;
+		}
+		crc.update(in.duplicate().flip());
+		in.compact();
+		while (in.position() < noOfBytes) {
+			if (channel.read(in) < 0) {
+				throw new EOFException("checkpoint file is too short");
+			}
+		}
+		in.flip();
+	}
+
+	/**
+	 * Reads bytes through the buffer
+	 */
+	private static void readBytes(FileChannel channel, ByteBuffer in, CRC32 crc, byte[] values) throws IOException {
+		int pos = 0;
+		while (pos < values.length) {
+			fill(channel, in, crc, 1);
+			int n = Math.min(values.length - pos, in.remaining());
+			in.get(values, pos, n);
+			pos += n;
+		}
+	}
+
+	/**
+	 * Reads doubles through the buffer, each part as a whole
+	 */
+	private static void readDoubles(FileChannel channel, ByteBuffer in, CRC32 crc, double[] values) throws IOException {
+		int pos = 0;
+		while (pos < values.length) {
+			fill(channel, in, crc, 8);
+			int n = Math.min(values.length - pos, in.remaining() / 8);
+			in.asDoubleBuffer().get(values, pos, n);
+			in.position(in.position() + 8 * n);
+			pos += n;
+		}
+	}
+
+	/**
+	 * Random generator in the state of the checkpoint
+	 * @return new random generator or null, if the checkpoint has none
+	 * @throws IOException If the state can not be read
+	 */
+	public Random getRandom() throws IOException {
+		if (randomState == null) {
+			return null;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(randomState))) {
+			return (Random) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Getter of the network with the weights and the momentum
+	 * @return network
+	 */
+	public FlatNetwork getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Getter of the best network
+	 * @return network with the best weights or null, if the checkpoint has none
+	 */
+	public FlatNetwork getBest() {
+		return best;
+	}
+
+	/**
+	 * Getter of the number of finished epochs
+	 * @return epoch
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Getter of the number of finished steps
+	 * @return step
+	 */
+	public long getStep() {
+		return step;
+	}
+
+	/**
+	 * Getter of the further values of the training loop
+	 * @return values
+	 */
+	public double[] getValues() {
+		return values;
+	}
+}
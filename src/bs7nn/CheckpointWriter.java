@@ -0,0 +1,149 @@
+package bs7nn;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes checkpoints of a training in a background thread. write copies the state of the training
+ * into a snapshot (a plain array copy, see Checkpoint.take), so the training can continue directly,
+ * while the snapshot is written into the file. If the file is written slower than the checkpoints
+ * are taken and both snapshots are in use, no snapshot is taken.
+ *
+ * write must be called by the training thread between two weight adaptions, so the snapshot is
+ * consistent. An error of the background thread is thrown by the next call of write or waitForWrites.
+ */
+public class CheckpointWriter {
+	/** number of snapshots: one can be written while the next one waits */
+	private static final int NO_OF_SNAPSHOTS = 2;
+
+	/** path of the checkpoint file */
+	private String path;
+
+	/** thread of the writing */
+	private ExecutorService executor;
+
+	/** snapshots, which are not in use */
+	private ArrayBlockingQueue<Checkpoint> freeSnapshots;
+
+	/** error of the last writing or null */
+	private volatile IOException error;
+
+	/** number of written checkpoints */
+	private volatile int noOfWrites;
+
+	/**
+	 * Constructor
+	 * @param network Trained network
+	 * @param withBest true, if the checkpoints hold the best weights of an AsyncValidator
+	 * @param path Path of the checkpoint file
+	 * @throws InconsistentValueException Not expected, the snapshots are copies of the network
+	 */
+	public CheckpointWriter(FlatNetwork network, boolean withBest, String path) throws InconsistentValueException {
+		this.path = path;
+		freeSnapshots = new ArrayBlockingQueue<>(NO_OF_SNAPSHOTS);
+		for (int i = 0; i < NO_OF_SNAPSHOTS; i++) {
+			freeSnapshots.add(new Checkpoint(network, withBest));
+		}
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "CheckpointWriter");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Takes a snapshot of the training and writes it in the background
+	 * @param network Trained network
+	 * @param epoch Number of finished epochs
+	 * @param step Number of finished steps
+	 * @param random Random generator of the training or null
+	 * @param validator Validator, whose best weights and state are stored, or null
+	 * @return true, if the snapshot was taken
+	 * @throws IOException If the writing of a former checkpoint failed
+	 * @throws InconsistentValueException If the network has another structure
+	 */
+	public boolean write(FlatNetwork network, int epoch, long step, Random random, AsyncValidator validator)
+			throws IOException, InconsistentValueException {
+		throwError();
+		Checkpoint snapshot = freeSnapshots.poll();
+		if (snapshot == null) {
+			return false;
+		}
+		if (validator != null && snapshot.getBest() != null) {
+			snapshot.take(network, epoch, step, random, validator.getState(snapshot.getBest()));
+		} else {
+			snapshot.take(network, epoch, step, random);
+		}
+		executor.execute(() -> {
+			try {
+				snapshot.write(path);
+				noOfWrites++;
+			} catch (IOException e) {
+				error = e;
+			} catch (InconsistentValueException e) {
+				error = new IOException(e);
+			} finally {
+				freeSnapshots.add(snapshot);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Waits until all started checkpoints are written
+	 * @throws IOException If the writing failed or the thread was interrupted
+	 */
+	public void waitForWrites() throws IOException {
+		// a task behind all started checkpoints
+		try {
+			executor.submit(() -> null).get();
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		throwError();
+	}
+
+	/**
+	 * Throws the error of a former writing once
+	 * @throws IOException Error of the background thread
+	 */
+	private void throwError() throws IOException {
+		IOException e = error;
+		if (e != null) {
+			error = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops the thread after the started checkpoints. The writer can not be used afterwards.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Getter of the number of written checkpoints
+	 * @return number of checkpoints
+	 */
+	public int getNoOfWrites() {
+		return noOfWrites;
+	}
+
+	/**
+	 * Getter of the path of the checkpoint file
+	 * @return path
+	 */
+	public String getPath() {
+		return path;
+	}
+}
@@ -0,0 +1,17 @@
+package bs7nn;
+
+/**
+ * Forward propagation of a network, which was translated into bytecode (see
+ * NeuronalNetwork.compileBytecode). The topology is part of the generated code, the weights are
+ * passed with every call, so one compiled network can be used for any number of weight sets of
+ * the same topology (e.g. the parameter sets of an evolutionary optimization).
+ */
+public interface CompiledNetwork {
+	/**
+	 * Calculates the output values. The array sizes are not checked.
+	 * @param weights All weights in the order of NeuronalNetwork.getWeights
+	 * @param inputValues Vector of all input values
+	 * @param outputValues Output buffer for the activation levels of the output neurons
+	 */
+	void evaluate(double[] weights, double[] inputValues, double[] outputValues);
+}
@@ -61,6 +61,23 @@ public class Connection {
 	public void setWeight(double weight) {
 		this.weight = weight;
 	}
+
+	/**
+	 * Getter of the momentum
+	 * @return momentum
+	 */
+	public double getMomentum() {
+		return momentum;
+	}
+
+	/**
+	 * Setter of the momentum. This setter is needed for synchronizing the momentum
+	 * with a compiled network (see FlatNetwork).
+	 * @param momentum
+	 */
+	public void setMomentum(double momentum) {
+		this.momentum = momentum;
+	}
 	
 	/**
 	 * Weight adaption within the delta learn algorithm
@@ -0,0 +1,262 @@
+package bs7nn;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tests the classification quality of a FlatNetwork with all samples of a source on several
+ * threads. The samples are split into portions, each portion is calculated with its own
+ * inference context and buffers, which are reused for every evaluation. The class of a sample
+ * is the position of its highest reference value, the guess of the network is the position of
+ * the highest output value.
+ * The network must not be trained during an evaluation.
+ */
+public class Evaluator {
+	/** number of portions per thread, so fast threads can take over work of slow ones */
+	private static final int PORTIONS_PER_THREAD = 4;
+
+	/** network to be tested */
+	private FlatNetwork network;
+
+	/** number of threads */
+	private int noOfThreads;
+
+	/** worker pool */
+	private ForkJoinPool pool;
+
+	/** buffers of every portion */
+	private InferenceContext[] contexts;
+	private double[][] inputValues;
+	private double[][] references;
+
+	/** confusion matrix of every portion */
+	private int[][][] confusions;
+
+	/**
+	 * Result of one evaluation
+	 */
+	public static class Result {
+		/** number of samples per class (row) and guess (column) */
+		private int[][] confusion;
+
+		/** number of samples */
+		private int noOfSamples;
+
+		/** number of correct guesses */
+		private int noOfCorrect;
+
+		Result(int[][] confusion) {
+			this.confusion = confusion;
+			for (int c = 0; c < confusion.length; c++) {
+				for (int g = 0; g < confusion.length; g++) {
+					noOfSamples += confusion[c][g];
+				}
+				noOfCorrect += confusion[c][c];
+			}
+		}
+
+		/**
+		 * Part of the correct guesses of all samples
+		 * @return value between 0.0 and 1.0
+		 */
+		public double getAccuracy() {
+			return noOfSamples == 0 ? 0 : (double) noOfCorrect / noOfSamples;
+		}
+
+		/**
+		 * Part of the correct guesses of the samples of one class
+		 * @param c Class (position of the output neuron)
+		 * @return value between 0.0 and 1.0 (0.0, if there is no sample of the class)
+		 */
+		public double getAccuracy(int c) {
+			int noOfClassSamples = 0;
+			for (int g = 0; g < confusion.length; g++) {
+				noOfClassSamples += confusion[c][g];
+			}
+			return noOfClassSamples == 0 ? 0 : (double) confusion[c][c] / noOfClassSamples;
+		}
+
+		/**
+		 * Confusion matrix: element [c][g] is the number of samples of class c with the guess g
+		 * @return confusion matrix
+		 */
+		public int[][] getConfusion() {
+			return confusion;
+		}
+
+		/**
+		 * Getter of the number of samples
+		 * @return number of samples
+		 */
+		public int getNoOfSamples() {
+			return noOfSamples;
+		}
+
+		/**
+		 * Getter of the number of correct guesses
+		 * @return number of correct guesses
+		 */
+		public int getNoOfCorrect() {
+			return noOfCorrect;
+		}
+	}
+
+	/**
+	 * Constructor with the network and the number of threads
+	 * @param network Network to be tested
+	 * @param noOfThreads Number of threads
+	 * @throws InconsistentValueException If the number of threads is smaller than 1
+	 */
+	public Evaluator(FlatNetwork network, int noOfThreads) throws InconsistentValueException {
+		if (noOfThreads < 1) {
+			throw new InconsistentValueException(String.valueOf(noOfThreads), ">= 1", "noOfThreads", "Evaluator");
+		}
+		this.network = network;
+		this.noOfThreads = noOfThreads;
+		pool = new ForkJoinPool(noOfThreads);
+		int noOfPortions = noOfThreads * PORTIONS_PER_THREAD;
+		int noOfClasses = network.getNoOfOutputs();
+		contexts = new InferenceContext[noOfPortions];
+		inputValues = new double[noOfPortions][network.getNoOfInputs()];
+		references = new double[noOfPortions][noOfClasses];
+		confusions = new int[noOfPortions][noOfClasses][noOfClasses];
+		for (int p = 0; p < noOfPortions; p++) {
+			contexts[p] = new InferenceContext(network);
+		}
+	}
+
+	/**
+	 * Tests all samples of the source
+	 * @param source Test samples
+	 * @return accuracy, accuracy per class and confusion matrix
+	 */
+	public Result evaluate(SampleSource source) {
+		return run(network, source);
+	}
+
+	/**
+	 * Tests all samples of the source with another network of the same structure, e.g. a copy of
+	 * the network (see FlatNetwork.copy)
+	 * @param network Network to be tested
+	 * @param source Test samples
+	 * @return accuracy, accuracy per class and confusion matrix
+	 * @throws InconsistentValueException If the network has another number of layers or another
+	 * number of inputs or neurons in a layer than the network of the constructor
+	 */
+	public Result evaluate(FlatNetwork network, SampleSource source) throws InconsistentValueException {
+		// the buffers of the portions are sized for the network of the constructor
+		FlatLayer[] layers = this.network.getLayers();
+		FlatLayer[] otherLayers = network.getLayers();
+		if (otherLayers.length != layers.length) {
+			throw new InconsistentValueException(String.valueOf(otherLayers.length), String.valueOf(layers.length),
+					"no of layers", "Evaluator.evaluate");
+		}
+		for (int l = 0; l < layers.length; l++) {
+			if (otherLayers[l].getNoOfInputs() != layers[l].getNoOfInputs()
+					|| otherLayers[l].getNoOfNeurons() != layers[l].getNoOfNeurons()) {
+				throw new InconsistentValueException(otherLayers[l].getNoOfInputs() + "x" + otherLayers[l].getNoOfNeurons(),
+						layers[l].getNoOfInputs() + "x" + layers[l].getNoOfNeurons(), "size of layer " + l,
+						"Evaluator.evaluate");
+			}
+		}
+		return run(network, source);
+	}
+
+	/**
+	 * Tests all samples of the source with a network of the structure of the constructor network
+	 * @param network Network to be tested
+	 * @param source Test samples
+	 * @return accuracy, accuracy per class and confusion matrix
+	 */
+	private Result run(FlatNetwork network, SampleSource source) {
+		int noOfSamples = source.getNoOfSamples();
+		int noOfPortions = contexts.length;
+		RecursiveAction[] portions = new RecursiveAction[noOfPortions];
+		for (int p = 0; p < noOfPortions; p++) {
+			int part = p;
+			int start = (int) ((long) noOfSamples * p / noOfPortions);
+			int end = (int) ((long) noOfSamples * (p + 1) / noOfPortions);
+			portions[p] = new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					evaluatePortion(network, source, part, start, end);
+				}
+			};
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(portions);
+			}
+		});
+
+		// sum of the confusion matrices of all portions
+		int noOfClasses = network.getNoOfOutputs();
+		int[][] confusion = new int[noOfClasses][noOfClasses];
+		for (int[][] part : confusions) {
+			for (int c = 0; c < noOfClasses; c++) {
+				for (int g = 0; g < noOfClasses; g++) {
+					confusion[c][g] += part[c][g];
+				}
+			}
+		}
+		return new Result(confusion);
+	}
+
+	/**
+	 * Tests the samples of one portion into the confusion matrix of the portion
+	 * @param network Network to be tested
+	 * @param source Test samples
+	 * @param part Position of the portion
+	 * @param start First sample (inclusive)
+	 * @param end Last sample (exclusive)
+	 */
+	private void evaluatePortion(FlatNetwork network, SampleSource source, int part, int start, int end) {
+		int[][] confusion = confusions[part];
+		for (int[] row : confusion) {
+			Arrays.fill(row, 0);
+		}
+		double[] in = inputValues[part];
+		double[] ref = references[part];
+		for (int i = start; i < end; i++) {
+			source.getSample(i, in, ref);
+			network.forward(in, contexts[part]);
+			confusion[getHighestPos(ref)][getHighestPos(contexts[part].getOutputValues())]++;
+		}
+	}
+
+	/**
+	 * Position of the highest value (the first one, if there are several)
+	 * @param values Values
+	 * @return position
+	 */
+	public static int getHighestPos(double[] values) {
+		int pos = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] > values[pos]) {
+				pos = i;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Stops the worker threads. The evaluator can not be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Getter of the number of threads
+	 * @return number of threads
+	 */
+	public int getNoOfThreads() {
+		return noOfThreads;
+	}
+}
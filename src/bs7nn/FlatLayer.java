@@ -0,0 +1,650 @@
+package bs7nn;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import bs7n.activation.Activateable;
+import bs7n.optimizer.Optimizer;
+
+/**
+ * Compiled representation of one worker layer (hidden or output). All weights of the
+ * layer are stored in one contiguous array instead of single connection objects, so the
+ * forward pass and the delta learn rule can run over arrays.
+ * The weights are organized row-wise: all incomming weights of neuron 0, then all
+ * incomming weights of neuron 1 and so on.
+ */
+public class FlatLayer {
+	/** momentum damping - must be the same value as in the Connection class */
+	public static final double DAMPING = 0.9;
+
+	/** number of samples per block of forwardBatch, so their inputs stay in the cache */
+	private static final int SAMPLE_BLOCK = 64;
+
+	/** number of neurons per block of forwardBatch, so their weights stay in the cache */
+	private static final int NEURON_BLOCK = 8;
+
+	/** access to single weights for lock-free adaptions from several threads */
+	private static final VarHandle WEIGHT = MethodHandles.arrayElementVarHandle(double[].class);
+
+	/** number of neurons feeding this layer (without the bias neuron) */
+	private int noOfInputs;
+
+	/** number of neurons of this layer */
+	private int noOfNeurons;
+
+	/** weight matrix with noOfNeurons rows and noOfInputs columns */
+	private double[] weights;
+
+	/** bias weight of each neuron or null, if the layer has no bias */
+	private double[] bias;
+
+	/** momentum of each weight */
+	private double[] momentum;
+
+	/** momentum of each bias weight or null, if the layer has no bias */
+	private double[] biasMomentum;
+
+	/** state values of the optimizer (see Optimizer.update) or null, if the optimizer has no state */
+	private double[] states;
+
+	/** state values of the optimizer for the bias weights or null */
+	private double[] biasStates;
+
+	/** Activation function shared by all neurons of the layer */
+	private Activateable activate;
+
+	/** connections of the object graph in the same order as the weights (null if not compiled from a graph) */
+	private Connection[] weightConnections;
+
+	/** bias connections of the object graph in the same order as the bias weights (null if not existing) */
+	private Connection[] biasConnections;
+
+	/**
+	 * Constructor for a new layer without link to an object graph
+	 * @param noOfInputs Number of neurons feeding this layer
+	 * @param noOfNeurons Number of neurons of this layer
+	 * @param withBias True, if the neurons have a bias input
+	 * @param activate Activation function of all neurons of the layer
+	 */
+	public FlatLayer(int noOfInputs, int noOfNeurons, boolean withBias, Activateable activate) {
+		this.noOfInputs = noOfInputs;
+		this.noOfNeurons = noOfNeurons;
+		this.activate = activate;
+		weights = new double[noOfInputs * noOfNeurons];
+		momentum = new double[weights.length];
+		if (withBias) {
+			bias = new double[noOfNeurons];
+			biasMomentum = new double[noOfNeurons];
+		}
+	}
+
+	/**
+	 * Builds a flat layer out of the neurons of the object graph. Every worker neuron must be
+	 * connected to every source neuron exactly once (dense mesh) and all neurons must share
+	 * the same kind of activation function. Connections from neurons that are not part of the
+	 * sources are treated as bias connections.
+	 * @param sources Neurons of the previous layer
+	 * @param neurons Worker neurons of this layer
+	 * @return the compiled layer
+	 * @throws InconsistentValueException If the layer is not a dense mesh or the activation functions differ
+	 */
+	public static FlatLayer compile(ArrayList<? extends Neuron> sources, ArrayList<WorkerNeuron> neurons)
+			throws InconsistentValueException {
+		if (neurons.size() == 0) {
+			throw new InconsistentValueException("0", "> 0", "no of neurons", "FlatLayer.compile");
+		}
+
+		// position of every source neuron within the previous layer
+		IdentityHashMap<Neuron, Integer> sourcePos = new IdentityHashMap<>();
+		for (int i = 0; i < sources.size(); i++) {
+			sourcePos.put(sources.get(i), i);
+		}
+
+		Activateable activate = neurons.get(0).getActivation();
+		int noOfInputs = sources.size();
+		Connection[] weightConnections = new Connection[noOfInputs * neurons.size()];
+		Connection[] biasConnections = new Connection[neurons.size()];
+		int noOfBias = 0;
+
+		for (int n = 0; n < neurons.size(); n++) {
+			WorkerNeuron wn = neurons.get(n);
+			if (wn.getActivation().getClass() != activate.getClass()) {
+				throw new InconsistentValueException(wn.getActivation().getClass().getSimpleName(),
+						activate.getClass().getSimpleName(), "activation function", "FlatLayer.compile");
+			}
+			for (Connection c : wn.getConnections()) {
+				Integer pos = sourcePos.get(c.getSource());
+				if (pos == null) {
+					// a neuron from outside the previous layer can only be a bias neuron
+					if (biasConnections[n] != null) {
+						throw new InconsistentValueException("2", "1", "bias connections of neuron " + n,
+								"FlatLayer.compile");
+					}
+					biasConnections[n] = c;
+					noOfBias++;
+				} else {
+					int wPos = n * noOfInputs + pos;
+					if (weightConnections[wPos] != null) {
+						throw new InconsistentValueException("2", "1", "connections to source " + pos,
+								"FlatLayer.compile");
+					}
+					weightConnections[wPos] = c;
+				}
+			}
+		}
+
+		// a dense mesh needs every weight and either all or no bias
+		for (int i = 0; i < weightConnections.length; i++) {
+			if (weightConnections[i] == null) {
+				throw new InconsistentValueException("null", "connection", "weight " + i, "FlatLayer.compile");
+			}
+		}
+		if (noOfBias != 0 && noOfBias != neurons.size()) {
+			throw new InconsistentValueException(String.valueOf(noOfBias), "0 or " + neurons.size(), "no of bias",
+					"FlatLayer.compile");
+		}
+
+		FlatLayer layer = new FlatLayer(noOfInputs, neurons.size(), noOfBias > 0, activate);
+		layer.weightConnections = weightConnections;
+		if (noOfBias > 0) {
+			layer.biasConnections = biasConnections;
+		}
+		layer.readWeights();
+		return layer;
+	}
+
+	/**
+	 * Takes over weights and momentum from the connections of the object graph
+	 */
+	public void readWeights() {
+		if (weightConnections == null) {
+			return;
+		}
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = weightConnections[i].getWeight();
+			momentum[i] = weightConnections[i].getMomentum();
+		}
+		if (bias != null) {
+			for (int n = 0; n < noOfNeurons; n++) {
+				bias[n] = biasConnections[n].getWeight();
+				biasMomentum[n] = biasConnections[n].getMomentum();
+			}
+		}
+	}
+
+	/**
+	 * Writes weights and momentum back to the connections of the object graph
+	 */
+	public void writeWeights() {
+		if (weightConnections == null) {
+			return;
+		}
+		for (int i = 0; i < weights.length; i++) {
+			weightConnections[i].setWeight(weights[i]);
+			weightConnections[i].setMomentum(momentum[i]);
+		}
+		if (bias != null) {
+			for (int n = 0; n < noOfNeurons; n++) {
+				biasConnections[n].setWeight(bias[n]);
+				biasConnections[n].setMomentum(biasMomentum[n]);
+			}
+		}
+	}
+
+	/**
+	 * Creates a layer of the same size and activation function with a copy of the weights. The copy
+	 * is not connected to the object graph and has no momentum.
+	 * @return copy of the layer
+	 */
+	public FlatLayer copy() {
+		FlatLayer copy = new FlatLayer(noOfInputs, noOfNeurons, bias != null, activate);
+		copyWeightsTo(copy);
+		return copy;
+	}
+
+	/**
+	 * Copies the weights and bias weights (without momentum) into a layer of the same size
+	 * @param target Layer receiving the weights
+	 */
+	public void copyWeightsTo(FlatLayer target) {
+		System.arraycopy(weights, 0, target.weights, 0, weights.length);
+		if (bias != null) {
+			System.arraycopy(bias, 0, target.bias, 0, noOfNeurons);
+		}
+	}
+
+	/**
+	 * Copies the weights, bias weights and the momentum into a layer of the same size, so the
+	 * target continues the training exactly like this layer
+	 * @param target Layer receiving the state
+	 */
+	public void copyStateTo(FlatLayer target) {
+		copyWeightsTo(target);
+		System.arraycopy(momentum, 0, target.momentum, 0, momentum.length);
+		if (biasMomentum != null) {
+			System.arraycopy(biasMomentum, 0, target.biasMomentum, 0, noOfNeurons);
+		}
+		if (states != null) {
+			System.arraycopy(states, 0, target.states, 0, states.length);
+			if (biasStates != null) {
+				System.arraycopy(biasStates, 0, target.biasStates, 0, biasStates.length);
+			}
+		}
+	}
+
+	/**
+	 * Creates the state arrays of an optimizer with 0 as start values
+	 * @param noOfStates Number of state values per weight (see Optimizer.getNoOfStates)
+	 */
+	void initStates(int noOfStates) {
+		if (noOfStates == 0) {
+			states = null;
+			biasStates = null;
+		} else {
+			states = new double[noOfStates * weights.length];
+			biasStates = bias != null ? new double[noOfStates * noOfNeurons] : null;
+		}
+	}
+
+	/**
+	 * Forward propagation of this layer
+	 * @param in Activation levels of the previous layer
+	 * @param x Output buffer for the sum of all incomming signals
+	 * @param a Output buffer for the activation levels
+	 */
+	public void forward(double[] in, double[] x, double[] a) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			double sum = Kernels.dot(weights, n * noOfInputs, in, 0, noOfInputs);
+			if (bias != null) {
+				sum += bias[n];
+			}
+			x[n] = sum;
+		}
+		activate.f(x, a, noOfNeurons);
+	}
+
+	/**
+	 * Forward propagation of a range of neurons of this layer (see IntraLayerExecutor). Several
+	 * threads can calculate different ranges at the same time. Functions of the whole layer
+	 * (Activateable.normalize) must be applied after all ranges are done.
+	 * @param in Activation levels of the previous layer
+	 * @param x Output buffer for the sum of all incomming signals
+	 * @param a Output buffer for the activation levels
+	 * @param from First neuron
+	 * @param to Neuron after the last one
+	 */
+	public void forwardSlice(double[] in, double[] x, double[] a, int from, int to) {
+		for (int n = from; n < to; n++) {
+			double sum = Kernels.dot(weights, n * noOfInputs, in, 0, noOfInputs);
+			if (bias != null) {
+				sum += bias[n];
+			}
+			x[n] = sum;
+			a[n] = activate.f(sum);
+		}
+	}
+
+	/**
+	 * Forward propagation of this layer with sparse inputs: only the weights of the inputs, which
+	 * are not 0, are read. The result is the same as of forward.
+	 * @param in Activation levels of the previous layer
+	 * @param nonZero Positions of the activation levels, which are not 0 (see Kernels.nonZeroPositions)
+	 * @param noOfNonZero Number of positions
+	 * @param x Output buffer for the sum of all incomming signals
+	 * @param a Output buffer for the activation levels
+	 */
+	public void forwardSparse(double[] in, int[] nonZero, int noOfNonZero, double[] x, double[] a) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			double sum = Kernels.sparseDot(weights, n * noOfInputs, in, nonZero, noOfNonZero);
+			if (bias != null) {
+				sum += bias[n];
+			}
+			x[n] = sum;
+		}
+		activate.f(x, a, noOfNeurons);
+	}
+
+	/**
+	 * Forward propagation of many samples at once as a matrix-matrix product. The samples
+	 * are processed in blocks and the weights of a block of neurons are used for all samples
+	 * of the block before the next neurons follow, so the weights are not reloaded from memory
+	 * for every sample. Within a block four samples share every loaded weight and two neurons
+	 * share every loaded input value.
+	 * @param in Activation levels of the previous layer, row-wise: noOfInputs values per sample
+	 * @param noOfSamples Number of samples
+	 * @param a Output buffer for the activation levels, row-wise: noOfNeurons values per sample
+	 */
+	public void forwardBatch(double[] in, int noOfSamples, double[] a) {
+		for (int s0 = 0; s0 < noOfSamples; s0 += SAMPLE_BLOCK) {
+			int s1 = Math.min(s0 + SAMPLE_BLOCK, noOfSamples);
+			for (int n0 = 0; n0 < noOfNeurons; n0 += NEURON_BLOCK) {
+				int n1 = Math.min(n0 + NEURON_BLOCK, noOfNeurons);
+				int s = s0;
+				// four samples at once
+				for (; s + 4 <= s1; s += 4) {
+					int in0 = s * noOfInputs;
+					int in1 = in0 + noOfInputs;
+					int in2 = in1 + noOfInputs;
+					int in3 = in2 + noOfInputs;
+					int n = n0;
+					// two neurons at once, so eight independent sums
+					for (; n + 2 <= n1; n += 2) {
+						int row0 = n * noOfInputs;
+						int row1 = row0 + noOfInputs;
+						double sum00 = 0;
+						double sum01 = 0;
+						double sum02 = 0;
+						double sum03 = 0;
+						double sum10 = 0;
+						double sum11 = 0;
+						double sum12 = 0;
+						double sum13 = 0;
+						for (int i = 0; i < noOfInputs; i++) {
+							double w0 = weights[row0 + i];
+							double w1 = weights[row1 + i];
+							double v0 = in[in0 + i];
+							double v1 = in[in1 + i];
+							double v2 = in[in2 + i];
+							double v3 = in[in3 + i];
+							sum00 += w0 * v0;
+							sum01 += w0 * v1;
+							sum02 += w0 * v2;
+							sum03 += w0 * v3;
+							sum10 += w1 * v0;
+							sum11 += w1 * v1;
+							sum12 += w1 * v2;
+							sum13 += w1 * v3;
+						}
+						double b0 = bias != null ? bias[n] : 0;
+						double b1 = bias != null ? bias[n + 1] : 0;
+						a[s * noOfNeurons + n] = activate.f(sum00 + b0);
+						a[(s + 1) * noOfNeurons + n] = activate.f(sum01 + b0);
+						a[(s + 2) * noOfNeurons + n] = activate.f(sum02 + b0);
+						a[(s + 3) * noOfNeurons + n] = activate.f(sum03 + b0);
+						a[s * noOfNeurons + n + 1] = activate.f(sum10 + b1);
+						a[(s + 1) * noOfNeurons + n + 1] = activate.f(sum11 + b1);
+						a[(s + 2) * noOfNeurons + n + 1] = activate.f(sum12 + b1);
+						a[(s + 3) * noOfNeurons + n + 1] = activate.f(sum13 + b1);
+					}
+					// a remaining single neuron
+					for (; n < n1; n++) {
+						int row = n * noOfInputs;
+						double sum0 = 0;
+						double sum1 = 0;
+						double sum2 = 0;
+						double sum3 = 0;
+						for (int i = 0; i < noOfInputs; i++) {
+							double w = weights[row + i];
+							sum0 += w * in[in0 + i];
+							sum1 += w * in[in1 + i];
+							sum2 += w * in[in2 + i];
+							sum3 += w * in[in3 + i];
+						}
+						double b = bias != null ? bias[n] : 0;
+						a[s * noOfNeurons + n] = activate.f(sum0 + b);
+						a[(s + 1) * noOfNeurons + n] = activate.f(sum1 + b);
+						a[(s + 2) * noOfNeurons + n] = activate.f(sum2 + b);
+						a[(s + 3) * noOfNeurons + n] = activate.f(sum3 + b);
+					}
+				}
+				// the remaining samples of the block
+				for (; s < s1; s++) {
+					int in0 = s * noOfInputs;
+					for (int n = n0; n < n1; n++) {
+						int row = n * noOfInputs;
+						double sum = 0;
+						for (int i = 0; i < noOfInputs; i++) {
+							sum += weights[row + i] * in[in0 + i];
+						}
+						if (bias != null) {
+							sum += bias[n];
+						}
+						a[s * noOfNeurons + n] = activate.f(sum);
+					}
+				}
+			}
+		}
+		// functions of the whole layer (softmax) after all neurons of a sample
+		for (int s = 0; s < noOfSamples; s++) {
+			activate.normalize(a, s * noOfNeurons, noOfNeurons);
+		}
+	}
+
+	/**
+	 * Back propagation of the error of this layer to the previous layer.
+	 * Like in WorkerNeuron.backPropagate the error is weighted, but not multiplied
+	 * by the derivative.
+	 * @param delta Error of the neurons of this layer
+	 * @param deltaPrev Output buffer for the error of the previous layer
+	 */
+	public void backPropagate(double[] delta, double[] deltaPrev) {
+		for (int i = 0; i < noOfInputs; i++) {
+			deltaPrev[i] = 0;
+		}
+		for (int n = 0; n < noOfNeurons; n++) {
+			Kernels.axpy(delta[n], weights, n * noOfInputs, deltaPrev, 0, noOfInputs);
+		}
+	}
+
+	/**
+	 * Back propagation of the error into a range of neurons of the previous layer (see backPropagate).
+	 * Several threads can calculate different ranges at the same time.
+	 * @param delta Error of the neurons of this layer
+	 * @param deltaPrev Output buffer for the error of the previous layer
+	 * @param from First neuron of the previous layer
+	 * @param to Neuron after the last one
+	 */
+	public void backPropagateSlice(double[] delta, double[] deltaPrev, int from, int to) {
+		for (int i = from; i < to; i++) {
+			deltaPrev[i] = 0;
+		}
+		for (int n = 0; n < noOfNeurons; n++) {
+			Kernels.axpy(delta[n], weights, n * noOfInputs + from, deltaPrev, from, to - from);
+		}
+	}
+
+	/**
+	 * Adaption of all weights of the layer (delta learn rule with momentum, the same as
+	 * in Connection.moveWeight)
+	 * @param in Activation levels of the previous layer
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param beta Learn step size
+	 */
+	public void deltaLearn(double[] in, double[] x, double[] a, double[] delta, double beta) {
+		deltaLearnSlice(in, x, a, delta, beta, 0, noOfNeurons);
+	}
+
+	/**
+	 * Adaption of the weights of a range of neurons (see deltaLearn). Several threads can adapt
+	 * different ranges at the same time.
+	 * @param in Activation levels of the previous layer
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param beta Learn step size
+	 * @param from First neuron
+	 * @param to Neuron after the last one
+	 */
+	public void deltaLearnSlice(double[] in, double[] x, double[] a, double[] delta, double beta, int from, int to) {
+		for (int n = from; n < to; n++) {
+			double factor = beta * delta[n] * activate.ddx(x[n], a[n]);
+			Kernels.moveWeights(weights, momentum, n * noOfInputs, in, 0, factor, DAMPING, noOfInputs);
+			if (bias != null) {
+				double m = (biasMomentum[n] + factor) * DAMPING;
+				biasMomentum[n] = m;
+				bias[n] += factor + m;
+			}
+		}
+	}
+
+	/**
+	 * Lock-free adaption of the weights for asynchronous learning of several threads (Hogwild).
+	 * Every weight is read and written with opaque access, updates of other threads may get lost,
+	 * but no weight will be torn. Weights of source neurons with activation level 0 are not touched,
+	 * so sparse inputs lead to sparse updates. There is no momentum, because a shared momentum
+	 * would need a second read-modify-write per weight.
+	 * @param in Activation levels of the previous layer
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param beta Learn step size
+	 */
+	public void deltaLearnHogwild(double[] in, double[] x, double[] a, double[] delta, double beta) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			double factor = beta * delta[n] * activate.ddx(x[n], a[n]);
+			if (factor == 0) {
+				continue;
+			}
+			int row = n * noOfInputs;
+			for (int i = 0; i < noOfInputs; i++) {
+				double ai = in[i];
+				if (ai != 0) {
+					double w = (double) WEIGHT.getOpaque(weights, row + i);
+					WEIGHT.setOpaque(weights, row + i, w + factor * ai);
+				}
+			}
+			if (bias != null) {
+				double b = (double) WEIGHT.getOpaque(bias, n);
+				WEIGHT.setOpaque(bias, n, b + factor);
+			}
+		}
+	}
+
+	/**
+	 * Adds the weight adaptions of one sample to the gradient buffers without changing
+	 * the weights (used for mini-batch learning)
+	 * @param in Activation levels of the previous layer
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param gWeights Gradient buffer of the weights
+	 * @param gBias Gradient buffer of the bias weights (ignored, if the layer has no bias)
+	 */
+	public void accumulate(double[] in, double[] x, double[] a, double[] delta, double[] gWeights, double[] gBias) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			double factor = delta[n] * activate.ddx(x[n], a[n]);
+			Kernels.axpy(factor, in, 0, gWeights, n * noOfInputs, noOfInputs);
+			if (bias != null) {
+				gBias[n] += factor;
+			}
+		}
+	}
+
+	/**
+	 * Adds the weight adaptions of one sample with sparse inputs to the gradient buffers (see
+	 * accumulate). The adaptions of inputs with the value 0 are 0, so only the positions of the
+	 * other inputs are touched.
+	 * @param in Activation levels of the previous layer
+	 * @param nonZero Positions of the activation levels, which are not 0 (see Kernels.nonZeroPositions)
+	 * @param noOfNonZero Number of positions
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param gWeights Gradient buffer of the weights
+	 * @param gBias Gradient buffer of the bias weights (ignored, if the layer has no bias)
+	 */
+	public void accumulateSparse(double[] in, int[] nonZero, int noOfNonZero, double[] x, double[] a, double[] delta,
+			double[] gWeights, double[] gBias) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			double factor = delta[n] * activate.ddx(x[n], a[n]);
+			Kernels.sparseAxpy(factor, in, nonZero, noOfNonZero, gWeights, n * noOfInputs);
+			if (bias != null) {
+				gBias[n] += factor;
+			}
+		}
+	}
+
+	/**
+	 * Applies accumulated adaptions with an optimizer, which uses the state arrays of this layer
+	 * (see initStates)
+	 * @param gWeights Gradient buffer of the weights
+	 * @param gBias Gradient buffer of the bias weights (ignored, if the layer has no bias)
+	 * @param learnRate Learn step width
+	 * @param noOfSamples Number of accumulated samples
+	 * @param optimizer Adaption rule
+	 * @param step Number of this adaption, starting with 1
+	 */
+	public void applyGradient(double[] gWeights, double[] gBias, double learnRate, int noOfSamples, Optimizer optimizer,
+			long step) {
+		optimizer.update(weights, momentum, states, gWeights, weights.length, learnRate, noOfSamples, step, false);
+		if (bias != null) {
+			optimizer.update(bias, biasMomentum, biasStates, gBias, noOfNeurons, learnRate, noOfSamples, step, true);
+		}
+	}
+
+	/**
+	 * Getter of the number of neurons feeding this layer
+	 * @return number of inputs (without bias)
+	 */
+	public int getNoOfInputs() {
+		return noOfInputs;
+	}
+
+	/**
+	 * Getter of the number of neurons of this layer
+	 * @return number of neurons
+	 */
+	public int getNoOfNeurons() {
+		return noOfNeurons;
+	}
+
+	/**
+	 * Getter of the weight matrix (row-wise, one row per neuron)
+	 * @return weights
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Getter of the bias weights
+	 * @return bias weights or null, if the layer has no bias
+	 */
+	public double[] getBias() {
+		return bias;
+	}
+
+	/**
+	 * Getter of the momentum of the weights
+	 * @return momentum
+	 */
+	public double[] getMomentum() {
+		return momentum;
+	}
+
+	/**
+	 * Getter of the state values of the optimizer
+	 * @return states or null, if the optimizer has no state
+	 */
+	public double[] getStates() {
+		return states;
+	}
+
+	/**
+	 * Getter of the state values of the optimizer for the bias weights
+	 * @return states or null, if the optimizer has no state or the layer has no bias
+	 */
+	public double[] getBiasStates() {
+		return biasStates;
+	}
+
+	/**
+	 * Getter of the momentum of the bias weights
+	 * @return bias momentum or null, if the layer has no bias
+	 */
+	public double[] getBiasMomentum() {
+		return biasMomentum;
+	}
+
+	/**
+	 * Getter of the activation function
+	 * @return activation function
+	 */
+	public Activateable getActivation() {
+		return activate;
+	}
+}
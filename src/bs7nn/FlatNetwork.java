@@ -0,0 +1,607 @@
+package bs7nn;
+
+import bs7n.activation.Softmax;
+import bs7n.optimizer.Nesterov;
+import bs7n.optimizer.Optimizer;
+
+/**
+ * Compiled execution mode of a dense NeuronalNetwork. Instead of neuron and connection
+ * objects every layer holds its weights, bias weights and momentum in contiguous arrays
+ * (see FlatLayer), and all activation levels are held in one buffer per layer (see Workspace).
+ * The weights can be synchronized in both directions with the object graph the network
+ * was compiled from.
+ */
+public class FlatNetwork {
+	/** all worker layers, the last one is the output layer */
+	private FlatLayer[] layers;
+
+	/** buffers of the single threaded methods (setInputValues, deltaLearn, trainBatch) */
+	private Workspace workspace;
+
+	/** number of samples per weight adaption in trainBatch */
+	private int batchSize = 32;
+
+	/** buffer for the accumulated weight adaptions of trainBatch (created on first use) */
+	private Gradient gradient;
+
+	/** the momentum of Connection (which is Nesterov momentum), it has no state, so all networks share it */
+	private static final Optimizer MOMENTUM = new Nesterov(FlatLayer.DAMPING);
+
+	/** rule of applyGradient, by default the momentum of Connection */
+	private Optimizer optimizer = MOMENTUM;
+
+	/** number of adaptions of applyGradient with the optimizer */
+	private long noOfSteps;
+
+	/** true, if the first layer only processes the inputs, which are not 0 (see setSparseInputs) */
+	private boolean sparseInputs;
+
+	/** buffers of the method predict, one per thread */
+	private ThreadLocal<InferenceContext> contexts = ThreadLocal.withInitial(() -> new InferenceContext(this));
+
+	/**
+	 * Constructor expecting the layers in the order from input to output
+	 * @param layers all worker layers, the last one is the output layer
+	 * @throws InconsistentValueException If the sizes of subsequent layers do not match or a hidden
+	 * layer uses softmax (only allowed in the output layer)
+	 */
+	public FlatNetwork(FlatLayer[] layers) throws InconsistentValueException {
+		if (layers.length == 0) {
+			throw new InconsistentValueException("0", "> 0", "no of layers", "FlatNetwork");
+		}
+		for (int l = 1; l < layers.length; l++) {
+			if (layers[l].getNoOfInputs() != layers[l - 1].getNoOfNeurons()) {
+				throw new InconsistentValueException(String.valueOf(layers[l].getNoOfInputs()),
+						String.valueOf(layers[l - 1].getNoOfNeurons()), "no of inputs of layer " + l, "FlatNetwork");
+			}
+		}
+		for (int l = 0; l < layers.length - 1; l++) {
+			if (layers[l].getActivation() instanceof Softmax) {
+				throw new InconsistentValueException("SOFTMAX in hidden layer " + l, "activation of a hidden layer",
+						"activation", "FlatNetwork");
+			}
+		}
+		this.layers = layers;
+		workspace = new Workspace(this);
+	}
+
+	/**
+	 * Forward propagation method. It will set all input values and calculates the
+	 * activation levels of all layers
+	 * @param inputValues Vector of all input values
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public void setInputValues(double[] inputValues) throws InconsistentValueException {
+		checkInputs(inputValues);
+		forward(inputValues, workspace);
+	}
+
+	/**
+	 * Thread safe forward propagation. The activation levels are calculated in the context
+	 * of the calling thread, so the network can serve many threads at the same time. The network
+	 * must not be trained at the same time.
+	 * @param inputValues Vector of all input values
+	 * @return activation levels of the output layer. The array belongs to the context of the
+	 * calling thread and will be overwritten by its next call of predict
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public double[] predict(double[] inputValues) throws InconsistentValueException {
+		return predict(inputValues, contexts.get());
+	}
+
+	/**
+	 * Forward propagation into a given context. Any number of threads can call this method at
+	 * the same time with different contexts. The network must not be trained at the same time.
+	 * @param inputValues Vector of all input values
+	 * @param ctx Context receiving the activation levels
+	 * @return activation levels of the output layer (buffer of the context)
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public double[] predict(double[] inputValues, InferenceContext ctx) throws InconsistentValueException {
+		checkInputs(inputValues);
+		forward(inputValues, ctx);
+		return ctx.getOutputValues();
+	}
+
+	/**
+	 * Forward propagation of many samples at once (see FlatLayer.forwardBatch). Like predict
+	 * it does not change the network, so several threads can call it at the same time.
+	 * @param inputs Input values of all samples
+	 * @return output values of all samples, row-wise: getNoOfOutputs values per sample
+	 * @throws InconsistentValueException In case of the number of input values of a sample do not
+	 * match the number of inputs
+	 */
+	public double[] predictBatch(double[][] inputs) throws InconsistentValueException {
+		int noOfInputs = getNoOfInputs();
+		double[] flatInputs = new double[inputs.length * noOfInputs];
+		for (int s = 0; s < inputs.length; s++) {
+			checkInputs(inputs[s]);
+			System.arraycopy(inputs[s], 0, flatInputs, s * noOfInputs, noOfInputs);
+		}
+		double[] outputs = new double[inputs.length * getNoOfOutputs()];
+		predictBatch(flatInputs, inputs.length, outputs);
+		return outputs;
+	}
+
+	/**
+	 * Classification of many samples at once: the positions of the k highest output values per sample
+	 * (see predictBatch and Kernels.topK). It does not change the network, so several threads can
+	 * call it at the same time.
+	 * @param inputs Input values of all samples
+	 * @param k Number of positions per sample
+	 * @return positions per sample, the position of the highest output value first
+	 * @throws InconsistentValueException In case of k is not between 1 and the number of outputs or the
+	 * number of input values of a sample do not match the number of inputs
+	 */
+	public int[][] predictTopK(double[][] inputs, int k) throws InconsistentValueException {
+		int noOfOutputs = getNoOfOutputs();
+		if (k < 1 || k > noOfOutputs) {
+			throw new InconsistentValueException(String.valueOf(k), "1.." + noOfOutputs, "k", "FlatNetwork.predictTopK");
+		}
+		double[] outputs = predictBatch(inputs);
+		int[][] positions = new int[inputs.length][k];
+		for (int s = 0; s < inputs.length; s++) {
+			Kernels.topK(outputs, s * noOfOutputs, noOfOutputs, positions[s]);
+		}
+		return positions;
+	}
+
+	/**
+	 * Forward propagation of many samples at once (see FlatLayer.forwardBatch) on flat buffers
+	 * @param inputs Input values of all samples, row-wise: getNoOfInputs values per sample
+	 * @param noOfSamples Number of samples
+	 * @param outputs Output buffer, row-wise: getNoOfOutputs values per sample
+	 * @throws InconsistentValueException In case of a buffer is too small for the number of samples
+	 */
+	public void predictBatch(double[] inputs, int noOfSamples, double[] outputs) throws InconsistentValueException {
+		if (inputs.length < noOfSamples * getNoOfInputs()) {
+			throw new InconsistentValueException(String.valueOf(inputs.length), ">= " + noOfSamples * getNoOfInputs(),
+					"size of inputs", "FlatNetwork.predictBatch");
+		}
+		if (outputs.length < noOfSamples * getNoOfOutputs()) {
+			throw new InconsistentValueException(String.valueOf(outputs.length), ">= " + noOfSamples * getNoOfOutputs(),
+					"size of outputs", "FlatNetwork.predictBatch");
+		}
+		double[] in = inputs;
+		for (int l = 0; l < layers.length; l++) {
+			// the last layer writes directly into the output buffer
+			double[] out = l == layers.length - 1 ? outputs : new double[noOfSamples * layers[l].getNoOfNeurons()];
+			layers[l].forwardBatch(in, noOfSamples, out);
+			in = out;
+		}
+	}
+
+	/**
+	 * Getter of the context of the calling thread, which is used by predict
+	 * @return context of the calling thread
+	 */
+	public InferenceContext getContext() {
+		return contexts.get();
+	}
+
+	/**
+	 * Delta learn rule - with back propagation. Calculates exactly the same adaption as
+	 * NeuronalNetwork.deltaLearn, but on the flat arrays. It uses the activation levels
+	 * of the last call of setInputValues.
+	 * @param references Reference values of the output layer
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case that the number of reference values do not
+	 * match the number of outputs
+	 */
+	public void deltaLearn(double[] references, double beta) throws InconsistentValueException {
+		checkReferences(references);
+		calcDeltas(references, workspace);
+
+		// adapt the weights of all layers
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].deltaLearn(workspace.a[l], workspace.x[l], workspace.a[l + 1], workspace.delta[l], beta);
+		}
+	}
+
+	/**
+	 * Mini-batch learning. All samples will be processed in portions of batchSize samples. For
+	 * every portion the weight adaptions are accumulated and applied as one (averaged) adaption.
+	 * With a batch size of 1 this is identical to setInputValues and deltaLearn per sample.
+	 * @param inputs Input values of all samples
+	 * @param references Reference values of all samples
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case of the number of inputs and references differ or
+	 * a sample does not match the network
+	 */
+	public void trainBatch(double[][] inputs, double[][] references, double beta) throws InconsistentValueException {
+		checkSamples(inputs, references);
+		if (gradient == null) {
+			gradient = new Gradient(this);
+		}
+		for (int start = 0; start < inputs.length; start += batchSize) {
+			int end = Math.min(start + batchSize, inputs.length);
+			gradient.clear();
+			for (int i = start; i < end; i++) {
+				forward(inputs[i], workspace);
+				accumulate(references[i], workspace, gradient);
+			}
+			applyGradient(gradient, beta);
+		}
+	}
+
+	/**
+	 * Adds the weight adaptions of the last forward propagation to a gradient buffer
+	 * without changing the weights
+	 * @param references Reference values of the output layer
+	 * @param gradient Buffer the adaptions are added to
+	 * @throws InconsistentValueException In case that the number of reference values do not
+	 * match the number of outputs
+	 */
+	public void accumulate(double[] references, Gradient gradient) throws InconsistentValueException {
+		checkReferences(references);
+		accumulate(references, workspace, gradient);
+	}
+
+	/**
+	 * Forward propagation into the buffers of a context without checking the input size.
+	 * The weights are only read, so several threads can call it with different contexts.
+	 * @param inputValues Vector of all input values
+	 * @param ws Context receiving the activation levels
+	 */
+	void forward(double[] inputValues, InferenceContext ws) {
+		System.arraycopy(inputValues, 0, ws.a[0], 0, inputValues.length);
+		int first = 0;
+		if (sparseInputs) {
+			// the positions are collected once per sample and used again by accumulate
+			ws.noOfNonZero = Kernels.nonZeroPositions(ws.a[0], inputValues.length, ws.nonZero);
+			layers[0].forwardSparse(ws.a[0], ws.nonZero, ws.noOfNonZero, ws.x[0], ws.a[1]);
+			first = 1;
+		}
+		for (int l = first; l < layers.length; l++) {
+			layers[l].forward(ws.a[l], ws.x[l], ws.a[l + 1]);
+		}
+	}
+
+	/**
+	 * Adds the weight adaptions of the last forward propagation with a workspace to a
+	 * gradient buffer without checking the reference size
+	 * @param references Reference values of the output layer
+	 * @param ws Workspace of the last forward propagation
+	 * @param gradient Buffer the adaptions are added to
+	 */
+	void accumulate(double[] references, Workspace ws, Gradient gradient) {
+		calcDeltas(references, ws);
+		int first = 0;
+		if (sparseInputs) {
+			layers[0].accumulateSparse(ws.a[0], ws.nonZero, ws.noOfNonZero, ws.x[0], ws.a[1], ws.delta[0],
+					gradient.getWeights(0), gradient.getBias(0));
+			first = 1;
+		}
+		for (int l = first; l < layers.length; l++) {
+			layers[l].accumulate(ws.a[l], ws.x[l], ws.a[l + 1], ws.delta[l], gradient.getWeights(l), gradient.getBias(l));
+		}
+		gradient.countSample();
+	}
+
+	/**
+	 * Applies accumulated weight adaptions as one averaged adaption to all layers
+	 * @param gradient Accumulated adaptions
+	 * @param beta Learn step width
+	 */
+	public void applyGradient(Gradient gradient, double beta) {
+		if (gradient.getCount() == 0) {
+			return;
+		}
+		noOfSteps++;
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].applyGradient(gradient.getWeights(l), gradient.getBias(l), beta, gradient.getCount(), optimizer,
+					noOfSteps);
+		}
+	}
+
+	/**
+	 * Sets the rule of applyGradient (and so of trainBatch and ParallelTrainer). The state arrays of
+	 * the optimizer are created with 0 and the step counter is set to 0. The learn step width (beta)
+	 * must suit the optimizer, e.g. about 0.001 for Adam.
+	 * @param optimizer Adaption rule, e.g. new Adam()
+	 */
+	public void setOptimizer(Optimizer optimizer) {
+		this.optimizer = optimizer;
+		noOfSteps = 0;
+		for (FlatLayer l : layers) {
+			l.initStates(optimizer.getNoOfStates());
+		}
+	}
+
+	/**
+	 * Switches the sparse input mode. In this mode the positions of the input values, which are not 0,
+	 * are collected once per sample, and the first layer only reads and adapts the weights of these
+	 * inputs in the forward propagation and in the accumulation of the mini-batch adaptions. This
+	 * is faster for inputs with many zeros, e.g. images with a black background. The results are the
+	 * same apart from the order of the additions. deltaLearn always adapts all weights, because the
+	 * momentum of weights with an input of 0 still changes the weight.
+	 * @param sparseInputs true for sparse inputs
+	 */
+	public void setSparseInputs(boolean sparseInputs) {
+		this.sparseInputs = sparseInputs;
+	}
+
+	/**
+	 * Getter of the sparse input mode
+	 * @return true, if the first layer only processes the inputs, which are not 0
+	 */
+	public boolean isSparseInputs() {
+		return sparseInputs;
+	}
+
+	/**
+	 * Checks, if applyGradient uses the momentum of Connection, i.e. no optimizer was set
+	 * @return true, if no optimizer was set
+	 */
+	public boolean hasDefaultOptimizer() {
+		return optimizer == MOMENTUM;
+	}
+
+	/**
+	 * Getter of the rule of applyGradient
+	 * @return optimizer
+	 */
+	public Optimizer getOptimizer() {
+		return optimizer;
+	}
+
+	/**
+	 * Getter of the number of adaptions with the optimizer
+	 * @return number of steps
+	 */
+	public long getNoOfSteps() {
+		return noOfSteps;
+	}
+
+	/**
+	 * Creates empty state arrays for reading a checkpoint, without an optimizer
+	 * @param noOfStates Number of state values per weight
+	 */
+	void initStates(int noOfStates) {
+		for (FlatLayer l : layers) {
+			l.initStates(noOfStates);
+		}
+	}
+
+	/**
+	 * Lock-free delta learn rule for asynchronous learning (see FlatLayer.deltaLearnHogwild)
+	 * without checking the reference size
+	 * @param references Reference values of the output layer
+	 * @param ws Workspace of the last forward propagation
+	 * @param beta Learn step width
+	 */
+	void deltaLearnHogwild(double[] references, Workspace ws, double beta) {
+		calcDeltas(references, ws);
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].deltaLearnHogwild(ws.a[l], ws.x[l], ws.a[l + 1], ws.delta[l], beta);
+		}
+	}
+
+	/**
+	 * Calculates the error of the output layer and backpropagates it to all other layers,
+	 * before any weight is changed
+	 * @param references Reference values of the output layer
+	 * @param ws Workspace of the last forward propagation
+	 */
+	private void calcDeltas(double[] references, Workspace ws) {
+		int last = layers.length - 1;
+		double[] out = ws.a[last + 1];
+		double[][] delta = ws.delta;
+
+		// error of the output layer based on the reference values
+		for (int n = 0; n < out.length; n++) {
+			delta[last][n] = references[n] - out[n];
+		}
+
+		// backpropagate the error from right to left
+		for (int l = last; l > 0; l--) {
+			layers[l].backPropagate(delta[l], delta[l - 1]);
+		}
+	}
+
+	/**
+	 * Checks the size of an input vector
+	 * @param inputValues Vector of all input values
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	void checkInputs(double[] inputValues) throws InconsistentValueException {
+		if (inputValues.length != getNoOfInputs()) {
+			throw new InconsistentValueException(String.valueOf(inputValues.length), "= " + getNoOfInputs(),
+					"inputValues", "FlatNetwork.setInputValues");
+		}
+	}
+
+	/**
+	 * Checks the size of a reference vector
+	 * @param references Reference values of the output layer
+	 * @throws InconsistentValueException In case that the number of reference values do not
+	 * match the number of outputs
+	 */
+	void checkReferences(double[] references) throws InconsistentValueException {
+		if (references.length != getNoOfOutputs()) {
+			throw new InconsistentValueException(String.valueOf(references.length), "!= " + getNoOfOutputs(),
+					"references", "FlatNetwork.deltaLearn");
+		}
+	}
+
+	/**
+	 * Checks the sizes of all samples of a batch
+	 * @param inputs Input values of all samples
+	 * @param references Reference values of all samples
+	 * @throws InconsistentValueException In case of the number of inputs and references differ or
+	 * a sample does not match the network
+	 */
+	void checkSamples(double[][] inputs, double[][] references) throws InconsistentValueException {
+		if (inputs.length != references.length) {
+			throw new InconsistentValueException(String.valueOf(references.length), "= " + inputs.length,
+					"no of references", "FlatNetwork.trainBatch");
+		}
+		for (int i = 0; i < inputs.length; i++) {
+			checkInputs(inputs[i]);
+			checkReferences(references[i]);
+		}
+	}
+
+	/**
+	 * Setter of the number of samples per weight adaption in trainBatch
+	 * @param batchSize Number of samples, must be at least 1
+	 * @throws InconsistentValueException If the batch size is smaller than 1
+	 */
+	public void setBatchSize(int batchSize) throws InconsistentValueException {
+		if (batchSize < 1) {
+			throw new InconsistentValueException(String.valueOf(batchSize), ">= 1", "batchSize",
+					"FlatNetwork.setBatchSize");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Getter of the number of samples per weight adaption in trainBatch
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Getter of the output values of the last forward propagation. The array is the
+	 * internal buffer and will be overwritten by the next call of setInputValues.
+	 * @return activation levels of the output layer
+	 */
+	public double[] getOutputValues() {
+		return workspace.getOutputValues();
+	}
+
+	/**
+	 * Takes over weights and momentum from the object graph the network was compiled from
+	 */
+	public void readWeights() {
+		for (FlatLayer l : layers) {
+			l.readWeights();
+		}
+	}
+
+	/**
+	 * Writes weights and momentum back to the object graph the network was compiled from
+	 */
+	public void writeWeights() {
+		for (FlatLayer l : layers) {
+			l.writeWeights();
+		}
+	}
+
+	/**
+	 * Creates a network of the same structure with a copy of the weights, e.g. as snapshot for a
+	 * test while this network is trained. The copy is not connected to the object graph.
+	 * @return copy of the network
+	 * @throws InconsistentValueException Not expected, the structure is taken from this network
+	 */
+	public FlatNetwork copy() throws InconsistentValueException {
+		FlatLayer[] copies = new FlatLayer[layers.length];
+		for (int l = 0; l < layers.length; l++) {
+			copies[l] = layers[l].copy();
+		}
+		FlatNetwork copy = new FlatNetwork(copies);
+		copy.batchSize = batchSize;
+		copy.sparseInputs = sparseInputs;
+		return copy;
+	}
+
+	/**
+	 * Copies the weights and bias weights (without momentum) into a network of the same structure
+	 * (see copy). This is a plain array copy, so it is cheap enough to be called between two batches.
+	 * @param target Network receiving the weights
+	 * @throws InconsistentValueException If the structure of the target differs
+	 */
+	public void copyWeightsTo(FlatNetwork target) throws InconsistentValueException {
+		checkStructure(target, "FlatNetwork.copyWeightsTo");
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].copyWeightsTo(target.layers[l]);
+		}
+	}
+
+	/**
+	 * Copies the weights, bias weights, the momentum and the state of the optimizer into a network of
+	 * the same structure, so the target continues the training exactly like this network (see Checkpoint)
+	 * @param target Network receiving the state
+	 * @throws InconsistentValueException If the target has another structure or another number of
+	 * optimizer states
+	 */
+	public void copyStateTo(FlatNetwork target) throws InconsistentValueException {
+		checkStructure(target, "FlatNetwork.copyStateTo");
+		int noOfStates = getNoOfStates();
+		if (target.getNoOfStates() != noOfStates) {
+			throw new InconsistentValueException(String.valueOf(target.getNoOfStates()), String.valueOf(noOfStates),
+					"no of optimizer states", "FlatNetwork.copyStateTo");
+		}
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].copyStateTo(target.layers[l]);
+		}
+		target.noOfSteps = noOfSteps;
+	}
+
+	/**
+	 * Number of state values per weight of the optimizer
+	 * @return number of states (0, if there are no state arrays)
+	 */
+	int getNoOfStates() {
+		double[] states = layers[0].getStates();
+		return states == null ? 0 : states.length / layers[0].getWeights().length;
+	}
+
+	/**
+	 * Sets the number of adaptions with the optimizer (for reading a checkpoint)
+	 * @param noOfSteps Number of steps
+	 */
+	void setNoOfSteps(long noOfSteps) {
+		this.noOfSteps = noOfSteps;
+	}
+
+	/**
+	 * Checks, if another network has the same number of layers and weights
+	 * @param target Other network
+	 * @param method Calling method for the error message
+	 * @throws InconsistentValueException If the target has another structure
+	 */
+	private void checkStructure(FlatNetwork target, String method) throws InconsistentValueException {
+		if (target.layers.length != layers.length) {
+			throw new InconsistentValueException(String.valueOf(target.layers.length), String.valueOf(layers.length),
+					"no of layers", method);
+		}
+		for (int l = 0; l < layers.length; l++) {
+			if (target.layers[l].getWeights().length != layers[l].getWeights().length
+					|| (target.layers[l].getBias() == null) != (layers[l].getBias() == null)) {
+				throw new InconsistentValueException(String.valueOf(target.layers[l].getWeights().length),
+						String.valueOf(layers[l].getWeights().length), "no of weights of layer " + l, method);
+			}
+		}
+	}
+
+	/**
+	 * Getter of the layers
+	 * @return all worker layers, the last one is the output layer
+	 */
+	public FlatLayer[] getLayers() {
+		return layers;
+	}
+
+	/**
+	 * Gets the number of input values
+	 * @return number of inputs
+	 */
+	public int getNoOfInputs() {
+		return layers[0].getNoOfInputs();
+	}
+
+	/**
+	 * Gets the number of output values
+	 * @return number of outputs
+	 */
+	public int getNoOfOutputs() {
+		return layers[layers.length - 1].getNoOfNeurons();
+	}
+}
@@ -0,0 +1,218 @@
+package bs7nn;
+
+import bs7n.activation.Activateable;
+
+/**
+ * Single precision version of a FlatLayer. Weights, bias weights and momentum are held as
+ * float values, which halves the memory and the memory bandwidth of the layer. The activation
+ * functions are calculated in double precision and rounded afterwards.
+ */
+public class FloatLayer {
+	/** momentum damping - must be the same value as in the Connection class */
+	private static final float DAMPING = (float) FlatLayer.DAMPING;
+
+	/** number of neurons feeding this layer (without the bias neuron) */
+	private int noOfInputs;
+
+	/** number of neurons of this layer */
+	private int noOfNeurons;
+
+	/** weight matrix with noOfNeurons rows and noOfInputs columns */
+	private float[] weights;
+
+	/** bias weight of each neuron or null, if the layer has no bias */
+	private float[] bias;
+
+	/** momentum of each weight */
+	private float[] momentum;
+
+	/** momentum of each bias weight or null, if the layer has no bias */
+	private float[] biasMomentum;
+
+	/** Activation function shared by all neurons of the layer */
+	private Activateable activate;
+
+	/**
+	 * Constructor converting a double precision layer. The values are rounded to the
+	 * nearest float value.
+	 * @param layer Layer to convert
+	 */
+	public FloatLayer(FlatLayer layer) {
+		noOfInputs = layer.getNoOfInputs();
+		noOfNeurons = layer.getNoOfNeurons();
+		activate = layer.getActivation();
+		weights = new float[layer.getWeights().length];
+		momentum = new float[weights.length];
+		if (layer.getBias() != null) {
+			bias = new float[noOfNeurons];
+			biasMomentum = new float[noOfNeurons];
+		}
+		readFrom(layer);
+	}
+
+	/**
+	 * Takes over weights and momentum from a double precision layer of the same size. The values
+	 * are rounded to the nearest float value.
+	 * @param layer Layer delivering the values
+	 */
+	public void readFrom(FlatLayer layer) {
+		copy(layer.getWeights(), weights);
+		copy(layer.getMomentum(), momentum);
+		if (bias != null) {
+			copy(layer.getBias(), bias);
+			copy(layer.getBiasMomentum(), biasMomentum);
+		}
+	}
+
+	/**
+	 * Writes weights and momentum into a double precision layer of the same size. This
+	 * conversion is lossless.
+	 * @param layer Layer receiving the values
+	 */
+	public void writeTo(FlatLayer layer) {
+		copy(weights, layer.getWeights());
+		copy(momentum, layer.getMomentum());
+		if (bias != null) {
+			copy(bias, layer.getBias());
+			copy(biasMomentum, layer.getBiasMomentum());
+		}
+	}
+
+	/**
+	 * Forward propagation of this layer
+	 * @param in Activation levels of the previous layer
+	 * @param x Output buffer for the sum of all incomming signals
+	 * @param a Output buffer for the activation levels
+	 */
+	public void forward(float[] in, float[] x, float[] a) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			float sum = Kernels.dot(weights, n * noOfInputs, in, 0, noOfInputs);
+			if (bias != null) {
+				sum += bias[n];
+			}
+			x[n] = sum;
+			a[n] = (float) activate.f(sum);
+		}
+		activate.normalize(a, 0, noOfNeurons);
+	}
+
+	/**
+	 * Back propagation of the error of this layer to the previous layer (see FlatLayer.backPropagate)
+	 * @param delta Error of the neurons of this layer
+	 * @param deltaPrev Output buffer for the error of the previous layer
+	 */
+	public void backPropagate(float[] delta, float[] deltaPrev) {
+		for (int i = 0; i < noOfInputs; i++) {
+			deltaPrev[i] = 0;
+		}
+		for (int n = 0; n < noOfNeurons; n++) {
+			Kernels.axpy(delta[n], weights, n * noOfInputs, deltaPrev, 0, noOfInputs);
+		}
+	}
+
+	/**
+	 * Adaption of all weights of the layer (see FlatLayer.deltaLearn)
+	 * @param in Activation levels of the previous layer
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param beta Learn step size
+	 */
+	public void deltaLearn(float[] in, float[] x, float[] a, float[] delta, double beta) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			float factor = (float) (beta * delta[n] * activate.ddx(x[n], a[n]));
+			Kernels.moveWeights(weights, momentum, n * noOfInputs, in, 0, factor, DAMPING, noOfInputs);
+			if (bias != null) {
+				float m = (biasMomentum[n] + factor) * DAMPING;
+				biasMomentum[n] = m;
+				bias[n] += factor + m;
+			}
+		}
+	}
+
+	/**
+	 * Adds the weight adaptions of one sample to the gradient buffers (see FlatLayer.accumulate)
+	 * @param in Activation levels of the previous layer
+	 * @param x Sum of all incomming signals of this layer
+	 * @param a Activation levels of this layer
+	 * @param delta Error of the neurons of this layer
+	 * @param gWeights Gradient buffer of the weights
+	 * @param gBias Gradient buffer of the bias weights (ignored, if the layer has no bias)
+	 */
+	public void accumulate(float[] in, float[] x, float[] a, float[] delta, float[] gWeights, float[] gBias) {
+		for (int n = 0; n < noOfNeurons; n++) {
+			float factor = (float) (delta[n] * activate.ddx(x[n], a[n]));
+			Kernels.axpy(factor, in, 0, gWeights, n * noOfInputs, noOfInputs);
+			if (bias != null) {
+				gBias[n] += factor;
+			}
+		}
+	}
+
+	/**
+	 * Adaption of all weights based on accumulated gradients (see FlatLayer.applyGradient)
+	 * @param gWeights Gradient buffer of the weights
+	 * @param gBias Gradient buffer of the bias weights (ignored, if the layer has no bias)
+	 * @param scale Factor for all gradient values
+	 */
+	public void applyGradient(float[] gWeights, float[] gBias, float scale) {
+		Kernels.moveWeights(weights, momentum, 0, gWeights, 0, scale, DAMPING, weights.length);
+		if (bias != null) {
+			Kernels.moveWeights(bias, biasMomentum, 0, gBias, 0, scale, DAMPING, noOfNeurons);
+		}
+	}
+
+	/**
+	 * Rounds double values into a float array
+	 * @param values double values
+	 * @param out float buffer of the same size
+	 */
+	private static void copy(double[] values, float[] out) {
+		for (int i = 0; i < values.length; i++) {
+			out[i] = (float) values[i];
+		}
+	}
+
+	/**
+	 * Copies float values into a double array
+	 * @param values float values
+	 * @param out double buffer of the same size
+	 */
+	private static void copy(float[] values, double[] out) {
+		for (int i = 0; i < values.length; i++) {
+			out[i] = values[i];
+		}
+	}
+
+	/**
+	 * Getter of the number of neurons feeding this layer
+	 * @return number of inputs (without bias)
+	 */
+	public int getNoOfInputs() {
+		return noOfInputs;
+	}
+
+	/**
+	 * Getter of the number of neurons of this layer
+	 * @return number of neurons
+	 */
+	public int getNoOfNeurons() {
+		return noOfNeurons;
+	}
+
+	/**
+	 * Getter of the weight matrix (row-wise, one row per neuron)
+	 * @return weights
+	 */
+	public float[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Getter of the bias weights
+	 * @return bias weights or null, if the layer has no bias
+	 */
+	public float[] getBias() {
+		return bias;
+	}
+}
@@ -0,0 +1,255 @@
+package bs7nn;
+
+import java.util.Arrays;
+
+/**
+ * Single precision version of a FlatNetwork. Weights, activation levels, errors, gradients and
+ * input buffers are float values, so every forward and backward pass moves half the amount of
+ * memory. It is created from a (double precision) FlatNetwork and can write its weights back
+ * into it. Float values can be converted to double without loss, the way back rounds to the
+ * nearest float value.
+ *
+ * The weights are always adapted with the momentum of Connection, the optimizers only work on
+ * double values. So trainBatch is rejected, if an optimizer was set for the source network.
+ */
+public class FloatNetwork {
+	/** double precision network this network was created from */
+	private FlatNetwork source;
+
+	/** all worker layers, the last one is the output layer */
+	private FloatLayer[] layers;
+
+	/** activation levels: a[0] holds the input values, a[l + 1] the output of layer l */
+	private float[][] a;
+
+	/** sum of all incomming signals of every layer */
+	private float[][] x;
+
+	/** error of every layer */
+	private float[][] delta;
+
+	/** accumulated weight adaptions of trainBatch, one array per layer */
+	private float[][] gWeights;
+
+	/** accumulated bias adaptions of trainBatch, one array per layer (null if the layer has no bias) */
+	private float[][] gBias;
+
+	/** number of samples per weight adaption in trainBatch */
+	private int batchSize = 32;
+
+	/**
+	 * Constructor converting a double precision network
+	 * @param source Network to convert, it will receive the weights in writeWeights
+	 */
+	public FloatNetwork(FlatNetwork source) {
+		this.source = source;
+		FlatLayer[] flatLayers = source.getLayers();
+		layers = new FloatLayer[flatLayers.length];
+		a = new float[layers.length + 1][];
+		x = new float[layers.length][];
+		delta = new float[layers.length][];
+		gWeights = new float[layers.length][];
+		gBias = new float[layers.length][];
+		a[0] = new float[flatLayers[0].getNoOfInputs()];
+		for (int l = 0; l < layers.length; l++) {
+			layers[l] = new FloatLayer(flatLayers[l]);
+			int noOfNeurons = layers[l].getNoOfNeurons();
+			a[l + 1] = new float[noOfNeurons];
+			x[l] = new float[noOfNeurons];
+			delta[l] = new float[noOfNeurons];
+			gWeights[l] = new float[layers[l].getWeights().length];
+			if (layers[l].getBias() != null) {
+				gBias[l] = new float[noOfNeurons];
+			}
+		}
+	}
+
+	/**
+	 * Forward propagation method with single precision input values
+	 * @param inputValues Vector of all input values
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public void setInputValues(float[] inputValues) throws InconsistentValueException {
+		checkInputs(inputValues.length);
+		System.arraycopy(inputValues, 0, a[0], 0, inputValues.length);
+		forward();
+	}
+
+	/**
+	 * Forward propagation method with double precision input values, which will be rounded
+	 * @param inputValues Vector of all input values
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public void setInputValues(double[] inputValues) throws InconsistentValueException {
+		checkInputs(inputValues.length);
+		for (int i = 0; i < inputValues.length; i++) {
+			a[0][i] = (float) inputValues[i];
+		}
+		forward();
+	}
+
+	/**
+	 * Delta learn rule - with back propagation (see FlatNetwork.deltaLearn)
+	 * @param references Reference values of the output layer
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case that the number of reference values do not
+	 * match the number of outputs
+	 */
+	public void deltaLearn(double[] references, double beta) throws InconsistentValueException {
+		calcDeltas(references);
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].deltaLearn(a[l], x[l], a[l + 1], delta[l], beta);
+		}
+	}
+
+	/**
+	 * Mini-batch learning like FlatNetwork.trainBatch, but always with the momentum of Connection
+	 * @param inputs Input values of all samples
+	 * @param references Reference values of all samples
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case of the number of inputs and references differ, a
+	 * sample does not match the network or an optimizer was set for the source network
+	 */
+	public void trainBatch(float[][] inputs, double[][] references, double beta) throws InconsistentValueException {
+		if (!source.hasDefaultOptimizer()) {
+			throw new InconsistentValueException(source.getOptimizer().getClass().getSimpleName(),
+					"no optimizer (momentum of Connection)", "optimizer", "FloatNetwork.trainBatch");
+		}
+		if (inputs.length != references.length) {
+			throw new InconsistentValueException(String.valueOf(references.length), "= " + inputs.length,
+					"no of references", "FloatNetwork.trainBatch");
+		}
+		for (int start = 0; start < inputs.length; start += batchSize) {
+			int end = Math.min(start + batchSize, inputs.length);
+			for (int l = 0; l < layers.length; l++) {
+				Arrays.fill(gWeights[l], 0);
+				if (gBias[l] != null) {
+					Arrays.fill(gBias[l], 0);
+				}
+			}
+			for (int i = start; i < end; i++) {
+				setInputValues(inputs[i]);
+				calcDeltas(references[i]);
+				for (int l = 0; l < layers.length; l++) {
+					layers[l].accumulate(a[l], x[l], a[l + 1], delta[l], gWeights[l], gBias[l]);
+				}
+			}
+			float scale = (float) (beta / (end - start));
+			for (int l = 0; l < layers.length; l++) {
+				layers[l].applyGradient(gWeights[l], gBias[l], scale);
+			}
+		}
+	}
+
+	/**
+	 * Getter of the output values of the last forward propagation. The array is the
+	 * internal buffer and will be overwritten by the next call of setInputValues.
+	 * @return activation levels of the output layer
+	 */
+	public float[] getOutputValues() {
+		return a[layers.length];
+	}
+
+	/**
+	 * Takes over the weights of the double precision network this network was created from
+	 */
+	public void readWeights() {
+		FlatLayer[] flatLayers = source.getLayers();
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].readFrom(flatLayers[l]);
+		}
+	}
+
+	/**
+	 * Writes the weights into the double precision network this network was created from and
+	 * (if that one was compiled from a NeuronalNetwork) into the connections of the object graph
+	 */
+	public void writeWeights() {
+		FlatLayer[] flatLayers = source.getLayers();
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].writeTo(flatLayers[l]);
+		}
+		source.writeWeights();
+	}
+
+	/**
+	 * Forward propagation of all layers based on the input buffer
+	 */
+	private void forward() {
+		for (int l = 0; l < layers.length; l++) {
+			layers[l].forward(a[l], x[l], a[l + 1]);
+		}
+	}
+
+	/**
+	 * Calculates the error of the output layer and backpropagates it to all other layers
+	 * @param references Reference values of the output layer
+	 * @throws InconsistentValueException In case that the number of reference values do not
+	 * match the number of outputs
+	 */
+	private void calcDeltas(double[] references) throws InconsistentValueException {
+		int last = layers.length - 1;
+		float[] out = a[last + 1];
+		if (references.length != out.length) {
+			throw new InconsistentValueException(String.valueOf(references.length), "!= " + out.length,
+					"references", "FloatNetwork.deltaLearn");
+		}
+		for (int n = 0; n < out.length; n++) {
+			delta[last][n] = (float) references[n] - out[n];
+		}
+		for (int l = last; l > 0; l--) {
+			layers[l].backPropagate(delta[l], delta[l - 1]);
+		}
+	}
+
+	/**
+	 * Checks the number of input values
+	 * @param length Number of input values
+	 * @throws InconsistentValueException In case of the number does not match the number of inputs
+	 */
+	private void checkInputs(int length) throws InconsistentValueException {
+		if (length != a[0].length) {
+			throw new InconsistentValueException(String.valueOf(length), "= " + a[0].length,
+					"inputValues", "FloatNetwork.setInputValues");
+		}
+	}
+
+	/**
+	 * Setter of the number of samples per weight adaption in trainBatch
+	 * @param batchSize Number of samples, must be at least 1
+	 * @throws InconsistentValueException If the batch size is smaller than 1
+	 */
+	public void setBatchSize(int batchSize) throws InconsistentValueException {
+		if (batchSize < 1) {
+			throw new InconsistentValueException(String.valueOf(batchSize), ">= 1", "batchSize",
+					"FloatNetwork.setBatchSize");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Getter of the layers
+	 * @return all worker layers, the last one is the output layer
+	 */
+	public FloatLayer[] getLayers() {
+		return layers;
+	}
+
+	/**
+	 * Gets the number of input values
+	 * @return number of inputs
+	 */
+	public int getNoOfInputs() {
+		return a[0].length;
+	}
+
+	/**
+	 * Gets the number of output values
+	 * @return number of outputs
+	 */
+	public int getNoOfOutputs() {
+		return a[layers.length].length;
+	}
+}
@@ -0,0 +1,103 @@
+package bs7nn;
+
+import java.util.Arrays;
+
+/**
+ * Accumulated weight adaptions of a FlatNetwork over several samples (mini-batch).
+ * The values are the unscaled adaptions of the delta learn rule, meaning
+ * error * derivative * source activation, summed over all samples.
+ */
+public class Gradient {
+	/** accumulated adaptions of the weights, one array per layer (same order as FlatLayer.getWeights) */
+	private double[][] weights;
+
+	/** accumulated adaptions of the bias weights, one array per layer (null if the layer has no bias) */
+	private double[][] bias;
+
+	/** number of accumulated samples */
+	private int count = 0;
+
+	/**
+	 * Constructor creating empty buffers matching the layers of the network
+	 * @param network Network the gradient belongs to
+	 */
+	public Gradient(FlatNetwork network) {
+		FlatLayer[] layers = network.getLayers();
+		weights = new double[layers.length][];
+		bias = new double[layers.length][];
+		for (int l = 0; l < layers.length; l++) {
+			weights[l] = new double[layers[l].getWeights().length];
+			if (layers[l].getBias() != null) {
+				bias[l] = new double[layers[l].getNoOfNeurons()];
+			}
+		}
+	}
+
+	/**
+	 * Sets all accumulated values to 0
+	 */
+	public void clear() {
+		for (int l = 0; l < weights.length; l++) {
+			Arrays.fill(weights[l], 0);
+			if (bias[l] != null) {
+				Arrays.fill(bias[l], 0);
+			}
+		}
+		count = 0;
+	}
+
+	/**
+	 * Adds the values of another gradient of the same network to this one
+	 * @param other Gradient to add
+	 */
+	public void add(Gradient other) {
+		for (int l = 0; l < weights.length; l++) {
+			double[] w = weights[l];
+			double[] ow = other.weights[l];
+			for (int i = 0; i < w.length; i++) {
+				w[i] += ow[i];
+			}
+			if (bias[l] != null) {
+				double[] b = bias[l];
+				double[] ob = other.bias[l];
+				for (int i = 0; i < b.length; i++) {
+					b[i] += ob[i];
+				}
+			}
+		}
+		count += other.count;
+	}
+
+	/**
+	 * Increments the number of accumulated samples
+	 */
+	void countSample() {
+		count++;
+	}
+
+	/**
+	 * Getter of the accumulated weight adaptions of a layer
+	 * @param layer Position of the layer
+	 * @return weight adaptions
+	 */
+	public double[] getWeights(int layer) {
+		return weights[layer];
+	}
+
+	/**
+	 * Getter of the accumulated bias adaptions of a layer
+	 * @param layer Position of the layer
+	 * @return bias adaptions or null, if the layer has no bias
+	 */
+	public double[] getBias(int layer) {
+		return bias[layer];
+	}
+
+	/**
+	 * Getter of the number of accumulated samples
+	 * @return number of samples
+	 */
+	public int getCount() {
+		return count;
+	}
+}
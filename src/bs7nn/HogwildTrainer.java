@@ -0,0 +1,141 @@
+package bs7nn;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous learning without any synchronization between the threads ("Hogwild").
+ * All threads pull the next sample from a shared counter, calculate it with their own
+ * workspace and adapt the shared weights of the FlatNetwork directly with lock-free
+ * writes (see FlatLayer.deltaLearnHogwild). Because the updates are sparse for sparse inputs,
+ * collisions are rare and the lost updates do not harm the convergence.
+ * The result is not reproducible, because it depends on the timing of the threads.
+ */
+public class HogwildTrainer {
+	/** deadline of a training without time limit (see train) */
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	/** network to be trained */
+	private FlatNetwork network;
+
+	/** number of threads learning at the same time */
+	private int noOfThreads;
+
+	/** thread pool of the learning threads */
+	private ExecutorService executor;
+
+	/**
+	 * Constructor with the network and the number of threads
+	 * @param network Network to be trained
+	 * @param noOfThreads Number of learning threads
+	 * @throws InconsistentValueException If the number of threads is smaller than 1
+	 */
+	public HogwildTrainer(FlatNetwork network, int noOfThreads) throws InconsistentValueException {
+		if (noOfThreads < 1) {
+			throw new InconsistentValueException(String.valueOf(noOfThreads), ">= 1", "noOfThreads",
+					"HogwildTrainer");
+		}
+		this.network = network;
+		this.noOfThreads = noOfThreads;
+		executor = Executors.newFixedThreadPool(noOfThreads);
+	}
+
+	/**
+	 * Processes all samples of the source noOfEpochs times
+	 * @param source Samples to learn
+	 * @param noOfEpochs Number of passes through all samples
+	 * @param beta Learn step width (no momentum, so it should be higher than for deltaLearn)
+	 * @return number of processed samples
+	 * @throws InconsistentValueException If a learning thread failed
+	 */
+	public long trainEpochs(SampleSource source, int noOfEpochs, double beta) throws InconsistentValueException {
+		return train(source, (long) noOfEpochs * source.getNoOfSamples(), NO_DEADLINE, beta);
+	}
+
+	/**
+	 * Processes the samples of the source (starting again with the first sample after the last one)
+	 * until the given time has passed
+	 * @param source Samples to learn
+	 * @param millis Learning time in milliseconds
+	 * @param beta Learn step width (no momentum, so it should be higher than for deltaLearn)
+	 * @return number of processed samples
+	 * @throws InconsistentValueException If a learning thread failed
+	 */
+	public long trainFor(SampleSource source, long millis, double beta) throws InconsistentValueException {
+		return train(source, Long.MAX_VALUE, System.nanoTime() + millis * 1000000L, beta);
+	}
+
+	/**
+	 * Starts all learning threads and waits until they are finished
+	 * @param source Samples to learn
+	 * @param noOfSteps Number of samples to process
+	 * @param deadline Value of System.nanoTime, when the learning must stop, or NO_DEADLINE
+	 * @param beta Learn step width
+	 * @return number of processed samples
+	 * @throws InconsistentValueException If a learning thread failed
+	 */
+	private long train(SampleSource source, long noOfSteps, long deadline, double beta)
+			throws InconsistentValueException {
+		int noOfSamples = source.getNoOfSamples();
+		if (noOfSamples == 0) {
+			return 0;
+		}
+		// shared position of the next sample
+		AtomicLong nextStep = new AtomicLong();
+		AtomicLong doneSteps = new AtomicLong();
+
+		ArrayList<Callable<Object>> tasks = new ArrayList<>();
+		for (int t = 0; t < noOfThreads; t++) {
+			tasks.add(() -> {
+				Workspace ws = new Workspace(network);
+				double[] inputValues = new double[network.getNoOfInputs()];
+				double[] references = new double[network.getNoOfOutputs()];
+				long done = 0;
+				long step;
+				while ((step = nextStep.getAndIncrement()) < noOfSteps) {
+					// the clock is only checked every 64 samples. nanoTime can be negative, so without a
+					// deadline the difference to Long.MAX_VALUE could overflow into a positive value
+					if (deadline != NO_DEADLINE && (done & 63) == 0 && System.nanoTime() - deadline > 0) {
+						break;
+					}
+					source.getSample((int) (step % noOfSamples), inputValues, references);
+					network.forward(inputValues, ws);
+					network.deltaLearnHogwild(references, ws, beta);
+					done++;
+				}
+				doneSteps.addAndGet(done);
+				return null;
+			});
+		}
+
+		try {
+			for (Future<Object> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new InconsistentValueException(e.toString(), "finished thread", "learning thread",
+					"HogwildTrainer.train");
+		}
+		return doneSteps.get();
+	}
+
+	/**
+	 * Stops the learning threads. The trainer can not be used afterwards.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Getter of the number of threads
+	 * @return number of threads
+	 */
+	public int getNoOfThreads() {
+		return noOfThreads;
+	}
+}
@@ -0,0 +1,45 @@
+package bs7nn;
+
+/**
+ * Buffers of a FlatNetwork for one forward propagation: activation levels and sums of all
+ * incomming signals of all layers. The network itself only holds the weights, which are not
+ * changed by a forward propagation, so any number of threads can use the same network at the
+ * same time as long as every thread uses its own context (see FlatNetwork.predict).
+ */
+public class InferenceContext {
+	/** activation levels: a[0] holds the input values, a[l + 1] the output of layer l */
+	double[][] a;
+
+	/** sum of all incomming signals of every layer */
+	double[][] x;
+
+	/** positions of the input values, which are not 0 (only used with sparse inputs, see FlatNetwork.setSparseInputs) */
+	int[] nonZero;
+
+	/** number of positions in nonZero */
+	int noOfNonZero;
+
+	/**
+	 * Constructor creating the buffers matching the layers of the network
+	 * @param network Network the context will be used with
+	 */
+	public InferenceContext(FlatNetwork network) {
+		FlatLayer[] layers = network.getLayers();
+		a = new double[layers.length + 1][];
+		x = new double[layers.length][];
+		a[0] = new double[layers[0].getNoOfInputs()];
+		nonZero = new int[a[0].length];
+		for (int l = 0; l < layers.length; l++) {
+			a[l + 1] = new double[layers[l].getNoOfNeurons()];
+			x[l] = new double[layers[l].getNoOfNeurons()];
+		}
+	}
+
+	/**
+	 * Getter of the output values of the last forward propagation with this context
+	 * @return activation levels of the output layer
+	 */
+	public double[] getOutputValues() {
+		return a[a.length - 1];
+	}
+}
@@ -0,0 +1,277 @@
+package bs7nn;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Model-parallel processing of single samples for networks with wide layers. Every layer is
+ * split into ranges of neurons, which are calculated by the threads of a shared pool at the same
+ * time. The next layer starts, when all ranges are done (one barrier per layer). So the time of
+ * one sample is reduced, which is not possible with data-parallel learning (see ParallelTrainer),
+ * where every thread processes its own samples.
+ *
+ * The ranges start at multiples of 8 values (64 bytes), so the threads write different cache lines
+ * of the output buffers (apart from the line at the border of two ranges, if the array does not
+ * start at a cache line). Layers with too little work for several threads are calculated by one
+ * thread. The results are the same as of FlatNetwork.setInputValues and FlatNetwork.deltaLearn.
+ *
+ * The executor holds its own buffers, so it must not be called by several threads at the same time.
+ */
+public class IntraLayerExecutor {
+	/** number of values per cache line */
+	private static final int ALIGNMENT = 8;
+
+	/** minimum number of multiply-adds per range, smaller ranges cost more for the barrier than they save */
+	private static final long MIN_WORK = 32768;
+
+	/** forward propagation of a range of neurons */
+	private static final int FORWARD = 0;
+
+	/** back propagation into a range of neurons of the previous layer */
+	private static final int BACKWARD = 1;
+
+	/** weight adaption of a range of neurons of every layer */
+	private static final int UPDATE = 2;
+
+	/** network to be calculated */
+	private FlatNetwork network;
+
+	/** number of threads */
+	private int noOfThreads;
+
+	/** worker pool */
+	private ForkJoinPool pool;
+
+	/** buffers of the calculated sample */
+	private Workspace ws;
+
+	/** borders of the neuron ranges of every layer (forward propagation and adaption) */
+	private int[][] neuronRanges;
+
+	/** borders of the ranges of the previous layer of every layer (back propagation) */
+	private int[][] inputRanges;
+
+	/** largest number of neuron ranges of a layer */
+	private int maxNoOfRanges;
+
+	/**
+	 * Constructor with the network and the number of threads
+	 * @param network Network to be calculated. Its weights are read and adapted directly
+	 * @param noOfThreads Number of threads
+	 * @throws InconsistentValueException If the number of threads is smaller than 1
+	 */
+	public IntraLayerExecutor(FlatNetwork network, int noOfThreads) throws InconsistentValueException {
+		if (noOfThreads < 1) {
+			throw new InconsistentValueException(String.valueOf(noOfThreads), ">= 1", "noOfThreads",
+					"IntraLayerExecutor");
+		}
+		this.network = network;
+		this.noOfThreads = noOfThreads;
+		pool = new ForkJoinPool(noOfThreads);
+		ws = new Workspace(network);
+		FlatLayer[] layers = network.getLayers();
+		neuronRanges = new int[layers.length][];
+		inputRanges = new int[layers.length][];
+		for (int l = 0; l < layers.length; l++) {
+			neuronRanges[l] = split(layers[l].getNoOfNeurons(), layers[l].getNoOfInputs());
+			inputRanges[l] = split(layers[l].getNoOfInputs(), layers[l].getNoOfNeurons());
+			maxNoOfRanges = Math.max(maxNoOfRanges, neuronRanges[l].length - 1);
+		}
+	}
+
+	/**
+	 * Forward propagation of one sample on all threads
+	 * @param inputValues Vector of all input values
+	 * @return activation levels of the output layer (valid until the next call)
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public double[] predict(double[] inputValues) throws InconsistentValueException {
+		network.checkInputs(inputValues);
+		forward(inputValues);
+		return ws.getOutputValues();
+	}
+
+	/**
+	 * Forward propagation, back propagation and delta learn rule of one sample on all threads
+	 * (the same adaption as FlatNetwork.setInputValues and FlatNetwork.deltaLearn)
+	 * @param inputValues Vector of all input values
+	 * @param references Reference values of the output layer
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case of the input or reference values do not match the network
+	 */
+	public void deltaLearn(double[] inputValues, double[] references, double beta) throws InconsistentValueException {
+		network.checkInputs(inputValues);
+		network.checkReferences(references);
+		forward(inputValues);
+
+		// error of the output layer, like in FlatNetwork.calcDeltas
+		int last = ws.delta.length - 1;
+		double[] out = ws.getOutputValues();
+		for (int n = 0; n < out.length; n++) {
+			ws.delta[last][n] = references[n] - out[n];
+		}
+		for (int l = last; l > 0; l--) {
+			run(BACKWARD, l, 0);
+		}
+
+		// all layers are adapted after the back propagation, so one barrier is enough
+		run(UPDATE, -1, beta);
+	}
+
+	/**
+	 * Forward propagation of all layers
+	 * @param inputValues Vector of all input values
+	 */
+	private void forward(double[] inputValues) {
+		System.arraycopy(inputValues, 0, ws.a[0], 0, inputValues.length);
+		FlatLayer[] layers = network.getLayers();
+		for (int l = 0; l < layers.length; l++) {
+			run(FORWARD, l, 0);
+			// functions of the whole layer (softmax) after all ranges
+			layers[l].getActivation().normalize(ws.a[l + 1], 0, layers[l].getNoOfNeurons());
+		}
+	}
+
+	/**
+	 * Calculates all ranges of a step and waits for them
+	 * @param step FORWARD, BACKWARD or UPDATE
+	 * @param layer Layer of the step (not used for UPDATE)
+	 * @param beta Learn step width (only used for UPDATE)
+	 */
+	private void run(int step, int layer, double beta) {
+		int noOfRanges = step == UPDATE ? maxNoOfRanges
+				: (step == FORWARD ? neuronRanges[layer] : inputRanges[layer]).length - 1;
+		if (noOfRanges == 1) {
+			calcRange(step, layer, 0, beta);
+		} else {
+			pool.invoke(new StepTask(step, layer, noOfRanges, beta));
+		}
+	}
+
+	/**
+	 * Calculates one range of a step
+	 * @param step FORWARD, BACKWARD or UPDATE
+	 * @param layer Layer of the step (not used for UPDATE)
+	 * @param range Number of the range
+	 * @param beta Learn step width (only used for UPDATE)
+	 */
+	private void calcRange(int step, int layer, int range, double beta) {
+		FlatLayer[] layers = network.getLayers();
+		if (step == FORWARD) {
+			int[] r = neuronRanges[layer];
+			layers[layer].forwardSlice(ws.a[layer], ws.x[layer], ws.a[layer + 1], r[range], r[range + 1]);
+		} else if (step == BACKWARD) {
+			int[] r = inputRanges[layer];
+			layers[layer].backPropagateSlice(ws.delta[layer], ws.delta[layer - 1], r[range], r[range + 1]);
+		} else {
+			for (int l = 0; l < layers.length; l++) {
+				int[] r = neuronRanges[l];
+				if (range < r.length - 1) {
+					layers[l].deltaLearnSlice(ws.a[l], ws.x[l], ws.a[l + 1], ws.delta[l], beta, r[range], r[range + 1]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits a layer into ranges for the threads
+	 * @param length Number of values of the layer
+	 * @param workPerValue Number of multiply-adds per value
+	 * @return borders of the ranges: range r is from borders[r] to borders[r + 1]
+	 */
+	private int[] split(int length, int workPerValue) {
+		long noOfRanges = Math.min(noOfThreads, (long) length * workPerValue / MIN_WORK);
+		noOfRanges = Math.min(noOfRanges, (length + ALIGNMENT - 1) / ALIGNMENT);
+		noOfRanges = Math.max(1, noOfRanges);
+		int[] borders = new int[(int) noOfRanges + 1];
+		for (int r = 1; r < noOfRanges; r++) {
+			// rounded up to a full cache line
+			long border = ((long) length * r / noOfRanges + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+			borders[r] = (int) Math.min(length, border);
+		}
+		borders[(int) noOfRanges] = length;
+		return borders;
+	}
+
+	/**
+	 * Stops the worker threads. The executor can not be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Getter of the number of threads
+	 * @return number of threads
+	 */
+	public int getNoOfThreads() {
+		return noOfThreads;
+	}
+
+	/**
+	 * Calculates all ranges of a step in parallel and returns after the last one (the barrier)
+	 */
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** FORWARD, BACKWARD or UPDATE */
+		private int step;
+
+		/** layer of the step */
+		private int layer;
+
+		/** number of ranges */
+		private int noOfRanges;
+
+		/** learn step width */
+		private double beta;
+
+		StepTask(int step, int layer, int noOfRanges, double beta) {
+			this.step = step;
+			this.layer = layer;
+			this.noOfRanges = noOfRanges;
+			this.beta = beta;
+		}
+
+		@Override
+		protected void compute() {
+			RangeTask[] ranges = new RangeTask[noOfRanges];
+			for (int r = 0; r < noOfRanges; r++) {
+				ranges[r] = new RangeTask(step, layer, r, beta);
+			}
+			invokeAll(ranges);
+		}
+	}
+
+	/**
+	 * Calculates one range of a step
+	 */
+	private class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** FORWARD, BACKWARD or UPDATE */
+		private int step;
+
+		/** layer of the step */
+		private int layer;
+
+		/** number of the range */
+		private int range;
+
+		/** learn step width */
+		private double beta;
+
+		RangeTask(int step, int layer, int range, double beta) {
+			this.step = step;
+			this.layer = layer;
+			this.range = range;
+			this.beta = beta;
+		}
+
+		@Override
+		protected void compute() {
+			calcRange(step, layer, range, beta);
+		}
+	}
+}
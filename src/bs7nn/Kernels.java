@@ -0,0 +1,305 @@
+package bs7nn;
+
+/**
+ * Array kernels of the compiled network (dot products, weight adaptions). All dense loops of
+ * FlatLayer run through these methods, so there is only one place to tune them.
+ * The loops are written in a way the JIT compiler can translate into SIMD instructions
+ * (SSE/AVX2/AVX-512, depending on the machine): simple counted loops without calls and, for the
+ * dot product, four independent sums instead of one long chain of additions.
+ */
+public class Kernels {
+
+	/**
+	 * Dot product of two vectors
+	 * @param a First vector
+	 * @param aOff Position of the first value within a
+	 * @param b Second vector
+	 * @param bOff Position of the first value within b
+	 * @param length Number of values
+	 * @return sum of a[aOff + i] * b[bOff + i]
+	 */
+	public static double dot(double[] a, int aOff, double[] b, int bOff, int length) {
+		double sum0 = 0;
+		double sum1 = 0;
+		double sum2 = 0;
+		double sum3 = 0;
+		// the loop bound and the positions are calculated in advance, this makes it easier
+		// for the JIT compiler to remove the range checks
+		int end4 = length / 4 * 4;
+		for (int i = 0; i < end4; i += 4) {
+			int ia = aOff + i;
+			int ib = bOff + i;
+			sum0 += a[ia] * b[ib];
+			sum1 += a[ia + 1] * b[ib + 1];
+			sum2 += a[ia + 2] * b[ib + 2];
+			sum3 += a[ia + 3] * b[ib + 3];
+		}
+		for (int i = end4; i < length; i++) {
+			sum0 += a[aOff + i] * b[bOff + i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Dot product with a sparse vector, of which only the values at the given positions are used
+	 * @param a Dense vector
+	 * @param aOff Position of the first value within a
+	 * @param b Sparse vector
+	 * @param positions Positions of the non-zero values of b (see nonZeroPositions)
+	 * @param count Number of positions
+	 * @return sum of a[aOff + p] * b[p] of all positions p
+	 */
+	public static double sparseDot(double[] a, int aOff, double[] b, int[] positions, int count) {
+		double sum0 = 0;
+		double sum1 = 0;
+		int end2 = count / 2 * 2;
+		for (int i = 0; i < end2; i += 2) {
+			int p0 = positions[i];
+			int p1 = positions[i + 1];
+			sum0 += a[aOff + p0] * b[p0];
+			sum1 += a[aOff + p1] * b[p1];
+		}
+		if (end2 < count) {
+			int p = positions[end2];
+			sum0 += a[aOff + p] * b[p];
+		}
+		return sum0 + sum1;
+	}
+
+	/**
+	 * Adds a scaled sparse vector to another one: y = y + alpha * x, only at the given positions
+	 * @param alpha Factor of x
+	 * @param x Sparse vector to be added
+	 * @param positions Positions of the non-zero values of x (see nonZeroPositions)
+	 * @param count Number of positions
+	 * @param y Vector to be changed
+	 * @param yOff Position of the first value within y
+	 */
+	public static void sparseAxpy(double alpha, double[] x, int[] positions, int count, double[] y, int yOff) {
+		for (int i = 0; i < count; i++) {
+			int p = positions[i];
+			y[yOff + p] += alpha * x[p];
+		}
+	}
+
+	/**
+	 * Collects the positions of all values, which are not 0
+	 * @param values Values
+	 * @param length Number of values
+	 * @param positions Output buffer for the positions in ascending order (at least length values)
+	 * @return number of positions
+	 */
+	public static int nonZeroPositions(double[] values, int length, int[] positions) {
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (values[i] != 0) {
+				positions[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a scaled vector to another one: y = y + alpha * x
+	 * @param alpha Factor of x
+	 * @param x Vector to be added
+	 * @param xOff Position of the first value within x
+	 * @param y Vector to be changed
+	 * @param yOff Position of the first value within y
+	 * @param length Number of values
+	 */
+	public static void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOff + i] += alpha * x[xOff + i];
+		}
+	}
+
+	/**
+	 * Weight adaption with momentum for a row of weights, the same as Connection.moveWeight
+	 * with delta = factor * x[xOff + i]
+	 * @param weights Weights to be changed
+	 * @param momentum Momentum of the weights
+	 * @param off Position of the first weight (and momentum)
+	 * @param x Source values of the adaption
+	 * @param xOff Position of the first source value
+	 * @param factor Factor for all source values
+	 * @param damping Momentum damping
+	 * @param length Number of weights
+	 */
+	public static void moveWeights(double[] weights, double[] momentum, int off, double[] x, int xOff,
+			double factor, double damping, int length) {
+		for (int i = 0; i < length; i++) {
+			double d = factor * x[xOff + i];
+			double m = (momentum[off + i] + d) * damping;
+			momentum[off + i] = m;
+			weights[off + i] += d + m;
+		}
+	}
+
+	/**
+	 * Dot product of two single precision vectors (see dot for double values)
+	 * @param a First vector
+	 * @param aOff Position of the first value within a
+	 * @param b Second vector
+	 * @param bOff Position of the first value within b
+	 * @param length Number of values
+	 * @return sum of a[aOff + i] * b[bOff + i]
+	 */
+	public static float dot(float[] a, int aOff, float[] b, int bOff, int length) {
+		float sum0 = 0;
+		float sum1 = 0;
+		float sum2 = 0;
+		float sum3 = 0;
+		int end4 = length / 4 * 4;
+		for (int i = 0; i < end4; i += 4) {
+			int ia = aOff + i;
+			int ib = bOff + i;
+			sum0 += a[ia] * b[ib];
+			sum1 += a[ia + 1] * b[ib + 1];
+			sum2 += a[ia + 2] * b[ib + 2];
+			sum3 += a[ia + 3] * b[ib + 3];
+		}
+		for (int i = end4; i < length; i++) {
+			sum0 += a[aOff + i] * b[bOff + i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Dot product of 8 bit weights and signed 8 bit activation levels (-127..127) with a 32 bit
+	 * integer sum. The sum can not overflow for less than 130 000 values.
+	 * @param a Weights
+	 * @param aOff Position of the first weight within a
+	 * @param b Quantized activation levels
+	 * @param bOff Position of the first value within b
+	 * @param length Number of values
+	 * @return sum of a[aOff + i] * b[bOff + i]
+	 */
+	public static int dot(byte[] a, int aOff, byte[] b, int bOff, int length) {
+		int sum0 = 0;
+		int sum1 = 0;
+		int sum2 = 0;
+		int sum3 = 0;
+		int end4 = length / 4 * 4;
+		for (int i = 0; i < end4; i += 4) {
+			int ia = aOff + i;
+			int ib = bOff + i;
+			sum0 += a[ia] * b[ib];
+			sum1 += a[ia + 1] * b[ib + 1];
+			sum2 += a[ia + 2] * b[ib + 2];
+			sum3 += a[ia + 3] * b[ib + 3];
+		}
+		for (int i = end4; i < length; i++) {
+			sum0 += a[aOff + i] * b[bOff + i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Dot product of 8 bit weights and unsigned 8 bit activation levels (0..255) with a 32 bit
+	 * integer sum. The sum can not overflow for less than 65 000 values.
+	 * @param a Weights
+	 * @param aOff Position of the first weight within a
+	 * @param b Quantized activation levels, read as unsigned bytes
+	 * @param bOff Position of the first value within b
+	 * @param length Number of values
+	 * @return sum of a[aOff + i] * unsigned b[bOff + i]
+	 */
+	public static int dotUnsigned(byte[] a, int aOff, byte[] b, int bOff, int length) {
+		int sum0 = 0;
+		int sum1 = 0;
+		int sum2 = 0;
+		int sum3 = 0;
+		int end4 = length / 4 * 4;
+		for (int i = 0; i < end4; i += 4) {
+			int ia = aOff + i;
+			int ib = bOff + i;
+			sum0 += a[ia] * (b[ib] & 0xFF);
+			sum1 += a[ia + 1] * (b[ib + 1] & 0xFF);
+			sum2 += a[ia + 2] * (b[ib + 2] & 0xFF);
+			sum3 += a[ia + 3] * (b[ib + 3] & 0xFF);
+		}
+		for (int i = end4; i < length; i++) {
+			sum0 += a[aOff + i] * (b[bOff + i] & 0xFF);
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Adds a scaled vector of 8 bit weights to a vector of 32 bit integer sums: y = y + alpha * x
+	 * @param alpha Factor of x (e.g. an unsigned 8 bit activation level)
+	 * @param x 8 bit weights
+	 * @param xOff Position of the first weight within x
+	 * @param y Sums, changed
+	 * @param length Number of values
+	 */
+	public static void axpy(int alpha, byte[] x, int xOff, int[] y, int length) {
+		for (int i = 0; i < length; i++) {
+			y[i] += alpha * x[xOff + i];
+		}
+	}
+
+	/**
+	 * Adds a scaled single precision vector to another one: y = y + alpha * x
+	 * @param alpha Factor of x
+	 * @param x Vector to be added
+	 * @param xOff Position of the first value within x
+	 * @param y Vector to be changed
+	 * @param yOff Position of the first value within y
+	 * @param length Number of values
+	 */
+	public static void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOff + i] += alpha * x[xOff + i];
+		}
+	}
+
+	/**
+	 * Weight adaption with momentum for a row of single precision weights (see moveWeights
+	 * for double values)
+	 * @param weights Weights to be changed
+	 * @param momentum Momentum of the weights
+	 * @param off Position of the first weight (and momentum)
+	 * @param x Source values of the adaption
+	 * @param xOff Position of the first source value
+	 * @param factor Factor for all source values
+	 * @param damping Momentum damping
+	 * @param length Number of weights
+	 */
+	public static void moveWeights(float[] weights, float[] momentum, int off, float[] x, int xOff,
+			float factor, float damping, int length) {
+		for (int i = 0; i < length; i++) {
+			float d = factor * x[xOff + i];
+			float m = (momentum[off + i] + d) * damping;
+			momentum[off + i] = m;
+			weights[off + i] += d + m;
+		}
+	}
+
+	/**
+	 * Positions of the k highest values in descending order of the values. The positions are
+	 * sorted in while the values are read once, so it is fast for a small k. Of equal values the
+	 * first one comes first.
+	 * @param values Values
+	 * @param off Position of the first value
+	 * @param length Number of values
+	 * @param positions Output buffer for the positions (relative to off), its length is k (at most length)
+	 */
+	public static void topK(double[] values, int off, int length, int[] positions) {
+		int k = positions.length;
+		int found = 0;
+		for (int i = 0; i < length; i++) {
+			double v = values[off + i];
+			if (found == k && v <= values[off + positions[k - 1]]) {
+				continue;
+			}
+			// move the lower values one step back and insert the new one
+			int p = found < k ? found++ : k - 1;
+			while (p > 0 && v > values[off + positions[p - 1]]) {
+				positions[p] = positions[p - 1];
+				p--;
+			}
+			positions[p] = i;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package bs7nn;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file format for dense networks (FlatNetwork). All values are little endian:
+ *
+ * [type]           [description]
+ * 32 bit integer   magic number 0x4E375342 ("BS7N")
+ * 32 bit integer   version of the format (VERSION)
+ * 32 bit integer   number of inputs
+ * 32 bit integer   number of worker layers
+ * per layer:
+ * 32 bit integer   number of neurons
+ * 32 bit integer   type of the activation function (see WorkerFactory)
+ * 32 bit integer   1 with bias, 0 without bias
+ * 0 or 4 bytes     padding, so the weights start at a multiple of 8
+ * per layer:
+ * double values    weights, row-wise: one row of inputs per neuron (see FlatLayer)
+ * double values    bias weights (only with bias)
+ * 32 bit integer   CRC32 checksum of all bytes before
+ *
+ * A file is loaded by mapping it into memory and copying the weight arrays as a whole, so there
+ * is no parsing per weight.
+ */
+public class ModelFile {
+	/** magic number: the characters "BS7N" */
+	public static final int MAGIC = 0x4E375342;
+
+	/** version of the file format */
+	public static final int VERSION = 1;
+
+	/**
+	 * Writes the topology and the weights of a network into a file
+	 * @param network Network to save
+	 * @param path Path of the file (will be overwritten)
+	 * @throws IOException If the file can not be written
+	 * @throws InconsistentValueException If an activation function is not part of the WorkerFactory
+	 */
+	public static void save(FlatNetwork network, String path) throws IOException, InconsistentValueException {
+		FlatLayer[] layers = network.getLayers();
+		int headerSize = getHeaderSize(layers.length);
+		long size = headerSize + 4;
+		for (FlatLayer l : layers) {
+			size += 8L * getNoOfValues(l);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(network.getNoOfInputs());
+			out.putInt(layers.length);
+			for (FlatLayer l : layers) {
+				out.putInt(l.getNoOfNeurons());
+				out.putInt(WorkerFactory.getType(l.getActivation()));
+				out.putInt(l.getBias() != null ? 1 : 0);
+			}
+			out.position(headerSize);
+
+			// the arrays are copied as a whole into the mapped file
+			for (FlatLayer l : layers) {
+				DoubleBuffer values = out.asDoubleBuffer();
+				values.put(l.getWeights());
+				if (l.getBias() != null) {
+					values.put(l.getBias());
+				}
+				out.position(out.position() + 8 * getNoOfValues(l));
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(out.duplicate().position(0).limit(out.position()));
+			out.putInt((int) crc.getValue());
+			out.force();
+		}
+	}
+
+	/**
+	 * Loads a network and checks the checksum
+	 * @param path Path of the file
+	 * @return network ready for use (not connected to an object graph)
+	 * @throws IOException If the file can not be read, has a wrong format or a wrong checksum
+	 * @throws InconsistentValueException If the file contains an unknown activation type or softmax in a hidden layer
+	 */
+	public static FlatNetwork load(String path) throws IOException, InconsistentValueException {
+		return load(path, true);
+	}
+
+	/**
+	 * Loads a network
+	 * @param path Path of the file
+	 * @param verifyChecksum true, if the checksum should be checked
+	 * @return network ready for use (not connected to an object graph)
+	 * @throws IOException If the file can not be read, has a wrong format or a wrong checksum
+	 * @throws InconsistentValueException If the file contains an unknown activation type or softmax in a hidden layer
+	 */
+	public static FlatNetwork load(String path, boolean verifyChecksum) throws IOException, InconsistentValueException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			if (channel.size() < 20 || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + ": no model file (size " + channel.size() + ")");
+			}
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			in.order(ByteOrder.LITTLE_ENDIAN);
+			if (in.getInt(0) != MAGIC) {
+				throw new IOException(path + ": no model file (magic number " + Integer.toHexString(in.getInt(0)) + ")");
+			}
+			if (in.getInt(4) != VERSION) {
+				throw new IOException(path + ": version " + in.getInt(4) + ", expected " + VERSION);
+			}
+			int crcPos = in.limit() - 4;
+			if (verifyChecksum) {
+				CRC32 crc = new CRC32();
+				crc.update(in.duplicate().position(0).limit(crcPos));
+				if ((int) crc.getValue() != in.getInt(crcPos)) {
+					throw new IOException(path + ": wrong checksum");
+				}
+			}
+
+			int noOfInputs = in.getInt(8);
+			int noOfLayers = in.getInt(12);
+			if (noOfLayers < 1 || getHeaderSize(noOfLayers) > crcPos) {
+				throw new IOException(path + ": number of layers is " + noOfLayers);
+			}
+			if (noOfInputs < 1) {
+				throw new IOException(path + ": number of inputs is " + noOfInputs);
+			}
+			FlatLayer[] layers = new FlatLayer[noOfLayers];
+			long size = getHeaderSize(noOfLayers);
+			for (int l = 0; l < noOfLayers; l++) {
+				int noOfNeurons = in.getInt(16 + 12 * l);
+				int type = in.getInt(20 + 12 * l);
+				boolean withBias = in.getInt(24 + 12 * l) != 0;
+				int noOfLayerInputs = l == 0 ? noOfInputs : layers[l - 1].getNoOfNeurons();
+				size += 8 * ((long) noOfLayerInputs * noOfNeurons + (withBias ? noOfNeurons : 0));
+				if (noOfNeurons < 1 || size > crcPos) {
+					throw new IOException(path + ": file is too short for layer " + l);
+				}
+				layers[l] = new FlatLayer(noOfLayerInputs, noOfNeurons, withBias, WorkerFactory.getKnownActivation(type));
+			}
+
+			// the arrays are copied as a whole out of the mapped file
+			in.position(getHeaderSize(noOfLayers));
+			for (FlatLayer l : layers) {
+				DoubleBuffer values = in.asDoubleBuffer();
+				values.get(l.getWeights());
+				if (l.getBias() != null) {
+					values.get(l.getBias());
+				}
+				in.position(in.position() + 8 * getNoOfValues(l));
+			}
+			return new FlatNetwork(layers);
+		}
+	}
+
+	/**
+	 * Size of the header including the padding
+	 * @param noOfLayers Number of worker layers
+	 * @return number of bytes (multiple of 8)
+	 */
+	private static int getHeaderSize(int noOfLayers) {
+		return (16 + 12 * noOfLayers + 7) / 8 * 8;
+	}
+
+	/**
+	 * Number of weights and bias weights of a layer
+	 * @param layer Layer
+	 * @return number of values
+	 */
+	private static int getNoOfValues(FlatLayer layer) {
+		return layer.getWeights().length + (layer.getBias() != null ? layer.getNoOfNeurons() : 0);
+	}
+}
@@ -18,8 +18,13 @@ public class NeuronLayer {
 	 * the method needs to know which activation function should be realized.
 	 * @param type Type of activation function
 	 * @return The newly created worker neuron
+	 * @throws InconsistentValueException If the type is SOFTMAX, which is only allowed in the output layer
 	 */
-	public WorkerNeuron createNeuron(int type) {
+	public WorkerNeuron createNeuron(int type) throws InconsistentValueException {
+		if (type == WorkerFactory.SOFTMAX) {
+			throw new InconsistentValueException("SOFTMAX", "activation of a hidden layer", "type",
+					"NeuronLayer.createNeuron");
+		}
 		WorkerNeuron n = WorkerFactory.getNeuron(type);
 		layerNeurons.add(n);
 		return n;
@@ -1,13 +1,21 @@
 package bs7nn;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Random;
 
+import bs7n.activation.Softmax;
+import bs7n.optimizer.Optimizer;
+
 /**
  * Holds all necessary methods for creating a dense mesh neuronal network including
  * the delta learn rule and the backpropagation algorithm
  */
 public class NeuronalNetwork {
+	/** number of updateInputValues calls, after which all sums are calculated again, so rounding errors do not add up */
+	private static final int RESYNC_INTERVAL = 1000;
+
 	/** All input neurons */
 	private ArrayList<InputNeuron> inputs = new ArrayList<>();
 	
@@ -17,6 +25,30 @@ public class NeuronalNetwork {
 	/** all hidden layer (wich then will contain the worker neurons) */
 	private ArrayList<NeuronLayer> hiddenLayers = new ArrayList<>();
 
+	/** compiled version of the network for mini-batch learning and batch prediction (created on first use) */
+	private FlatNetwork flat;
+
+	/** number of samples per weight adaption in trainBatch */
+	private int batchSize = 32;
+
+	/** rule of trainBatch or null for the momentum of Connection */
+	private Optimizer optimizer;
+
+	/** buffer for functions of the whole output layer (see Activateable.normalize) */
+	private double[] outputValues = new double[0];
+
+	/** input values of the last forward propagation or null, if all sums must be calculated again (see updateInputValues) */
+	private double[] lastInputs;
+
+	/** connections of every input neuron into the first worker layer (created by the first updateInputValues) */
+	private Connection[][] inputConnections;
+
+	/** target neurons of inputConnections */
+	private WorkerNeuron[][] inputTargets;
+
+	/** number of incremental forward propagations since the last complete one */
+	private int noOfUpdates;
+
 	/**
 	 * Constructor that expects the infor of how many hidden layers should be
 	 * created
@@ -98,9 +130,27 @@ public class NeuronalNetwork {
 	 * @throws InconsistentValueException In case of the number of weights is wrong
 	 */
 	public void doDenseMesh(double[] weights, boolean withBias, double weightFactor) throws InconsistentValueException {
+		doDenseMesh(weights, withBias, weightFactor, new Random());
+	}
+
+	/**
+	 * Builds a dense network based on all existing neurons (see doDenseMesh). The random
+	 * initial weights are taken from the given random generator, so a seeded generator
+	 * leads to a reproducible network.
+	 * @param weights predefined weights or null for random weights
+	 * @param withBias True, if all worker neurons should get a bias input
+	 * @param weightFactor Factor for the random initial weights
+	 * @param myRnd Random generator for the initial weights
+	 * @throws InconsistentValueException In case of the number of weights is wrong
+	 */
+	public void doDenseMesh(double[] weights, boolean withBias, double weightFactor, Random myRnd)
+			throws InconsistentValueException {
+		// a former compiled version does not match the new connections
+		flat = null;
+		inputConnections = null;
+		clearInputCache();
 		int noOfExpectedWeights = getNoOfDenseConnects(withBias);
 		if (weights == null) {
-			Random myRnd = new Random();
 			weights = new double[noOfExpectedWeights];
 			for (int i = 0; i < noOfExpectedWeights; i++) {
 				weights[i] = myRnd.nextDouble() * weightFactor;
@@ -181,12 +231,178 @@ public class NeuronalNetwork {
 		for (WorkerNeuron wn : outputs) {
 			wn.calcA();
 		}
+		normalizeOutputs();
+
+		// the values are the base of the next updateInputValues
+		if (lastInputs == null) {
+			lastInputs = new double[inputValues.length];
+		}
+		System.arraycopy(inputValues, 0, lastInputs, 0, inputValues.length);
+		noOfUpdates = 0;
+	}
+
+	/**
+	 * Incremental forward propagation. Only the inputs, which differ from the last forward propagation,
+	 * are processed: the sums of the first worker layer are changed by weight * (new value - old value)
+	 * per changed input, instead of summing up all connections again. The deeper layers are only
+	 * calculated, if an activation level of the first worker layer changed. The result is the same as
+	 * of setInputValues (apart from rounding), but much faster, if only a few inputs of a wide input
+	 * layer change, e.g. some pixels of an image.
+	 * If more than half of the inputs changed, or the weights were changed by this class since the
+	 * last forward propagation (e.g. deltaLearn), all neurons are calculated with setInputValues. After a change of the weights
+	 * from outside (e.g. FlatNetwork.writeWeights), clearInputCache must be called.
+	 * @param inputValues Vector of all input values
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of input neurons
+	 */
+	public void updateInputValues(double[] inputValues) throws InconsistentValueException {
+		if (lastInputs == null || noOfUpdates >= RESYNC_INTERVAL) {
+			setInputValues(inputValues);
+			return;
+		}
+		if (inputValues.length != inputs.size()) {
+			throw new InconsistentValueException(String.valueOf(inputValues.length), "< " + inputs.size(),
+					"inputValues", "NeuronalNetwork.updateInputValues");
+		}
+		int noOfChanges = 0;
+		for (int i = 0; i < inputValues.length; i++) {
+			if (inputValues[i] != lastInputs[i]) {
+				noOfChanges++;
+			}
+		}
+		if (noOfChanges == 0) {
+			return;
+		}
+		if (noOfChanges > inputValues.length / 2) {
+			setInputValues(inputValues);
+			return;
+		}
+		if (inputConnections == null) {
+			findInputConnections();
+		}
+
+		// change the sums of the first worker layer by the changed inputs only
+		for (int i = 0; i < inputValues.length; i++) {
+			double d = inputValues[i] - lastInputs[i];
+			if (d != 0) {
+				inputs.get(i).setA(inputValues[i]);
+				lastInputs[i] = inputValues[i];
+				Connection[] connections = inputConnections[i];
+				WorkerNeuron[] targets = inputTargets[i];
+				for (int c = 0; c < connections.length; c++) {
+					targets[c].addX(connections[c].getWeight() * d);
+				}
+			}
+		}
+		noOfUpdates++;
+
+		// the deeper layers are only calculated, if the first worker layer changed
+		boolean changed = false;
+		for (WorkerNeuron wn : hiddenLayers.isEmpty() ? outputs : hiddenLayers.get(0).getNeuronList()) {
+			changed |= wn.updateA();
+		}
+		if (!changed) {
+			return;
+		}
+		if (!hiddenLayers.isEmpty()) {
+			for (int i = 1; i < hiddenLayers.size(); i++) {
+				for (WorkerNeuron wn : hiddenLayers.get(i).getNeuronList()) {
+					wn.calcA();
+				}
+			}
+			for (WorkerNeuron wn : outputs) {
+				wn.calcA();
+			}
+		}
+		normalizeOutputs();
+	}
+
+	/**
+	 * Forgets the input values of the last forward propagation, so the next updateInputValues
+	 * calculates all neurons. Must be called after the weights were changed from outside of this
+	 * class (e.g. by FlatNetwork.writeWeights).
+	 */
+	public void clearInputCache() {
+		lastInputs = null;
+	}
+
+	/**
+	 * Collects the connections of every input neuron into the first worker layer for updateInputValues
+	 */
+	private void findInputConnections() {
+		IdentityHashMap<Neuron, Integer> positions = new IdentityHashMap<>();
+		for (int i = 0; i < inputs.size(); i++) {
+			positions.put(inputs.get(i), i);
+		}
+		ArrayList<ArrayList<Connection>> connections = new ArrayList<>();
+		ArrayList<ArrayList<WorkerNeuron>> targets = new ArrayList<>();
+		for (int i = 0; i < inputs.size(); i++) {
+			connections.add(new ArrayList<>());
+			targets.add(new ArrayList<>());
+		}
+		for (WorkerNeuron wn : hiddenLayers.isEmpty() ? outputs : hiddenLayers.get(0).getNeuronList()) {
+			for (Connection c : wn.getConnections()) {
+				Integer pos = positions.get(c.getSource());
+				if (pos != null) {
+					connections.get(pos).add(c);
+					targets.get(pos).add(wn);
+				}
+			}
+		}
+		inputConnections = new Connection[inputs.size()][];
+		inputTargets = new WorkerNeuron[inputs.size()][];
+		for (int i = 0; i < inputs.size(); i++) {
+			inputConnections[i] = connections.get(i).toArray(new Connection[0]);
+			inputTargets[i] = targets.get(i).toArray(new WorkerNeuron[0]);
+		}
+	}
+
+	/**
+	 * Applies the function of the whole output layer (see Activateable.normalize)
+	 */
+	private void normalizeOutputs() {
+		// functions of the whole output layer (softmax) need the values of all output neurons
+		if (outputs.isEmpty()) {
+			return;
+		}
+		if (outputValues.length != outputs.size()) {
+			outputValues = new double[outputs.size()];
+		}
+		for (int i = 0; i < outputValues.length; i++) {
+			outputValues[i] = outputs.get(i).getA();
+		}
+		outputs.get(0).getActivation().normalize(outputValues, 0, outputValues.length);
+		for (int i = 0; i < outputValues.length; i++) {
+			outputs.get(i).setA(outputValues[i]);
+		}
+	}
+
+	/**
+	 * Cross entropy error of the last forward propagation (see Softmax.crossEntropy). Only
+	 * meaningful for softmax output neurons.
+	 * @param references Reference values of the output layer
+	 * @return error of the sample
+	 * @throws InconsistentValueException In case that the number of reference values do not
+	 * match the number of output neurons
+	 */
+	public double getCrossEntropy(double[] references) throws InconsistentValueException {
+		if (references.length != outputs.size()) {
+			throw new InconsistentValueException(String.valueOf(references.length), "!= " + outputs.size(),
+					"references", "NeuronalNetwork.getCrossEntropy");
+		}
+		double[] x = new double[outputs.size()];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = outputs.get(i).getX();
+		}
+		return Softmax.crossEntropy(x, references, x.length);
 	}
 
 	/**
 	 * Delta learn rule - with back propagation. It adapts the weights of all connections, based
 	 * on the reference values in case of output neurons and all hidden neuron connections
-	 * based of the back propagated error value
+	 * based of the back propagated error value.
+	 * With softmax output neurons the error "reference - activation level" is the derivative
+	 * of the cross entropy error, so softmax and cross entropy are learned in one step.
 	 * @param references Reference values of the output layer
 	 * @param beta Learn step width
 	 * @throws InconsistentValueException In case that the number of reference values do not
@@ -200,6 +416,7 @@ public class NeuronalNetwork {
 		
 		// set all internal error values ("delta") to 0.
 		resetMe();
+		clearInputCache();
 		int refPos = 0;
 		
 		// calculate the error of the output neurons based on the reference value...
@@ -227,6 +444,264 @@ public class NeuronalNetwork {
 		}
 	}
 
+	/**
+	 * Compiles the dense network into a FlatNetwork, where all weights of a layer are
+	 * held in contiguous arrays. The compiled network starts with the current weights and
+	 * momentum of all connections. Changes of the weights can be synchronized with
+	 * FlatNetwork.readWeights and FlatNetwork.writeWeights.
+	 * @return compiled network
+	 * @throws InconsistentValueException If the network is not a dense mesh (see doDenseMesh),
+	 * the neurons of a layer use different activation functions or a hidden neuron uses softmax
+	 */
+	public FlatNetwork compile() throws InconsistentValueException {
+		checkHiddenActivations("NeuronalNetwork.compile");
+		FlatLayer[] layers = new FlatLayer[hiddenLayers.size() + 1];
+		ArrayList<? extends Neuron> sources = inputs;
+		for (int i = 0; i < hiddenLayers.size(); i++) {
+			layers[i] = FlatLayer.compile(sources, hiddenLayers.get(i).getNeuronList());
+			sources = hiddenLayers.get(i).getNeuronList();
+		}
+		layers[hiddenLayers.size()] = FlatLayer.compile(sources, outputs);
+		return new FlatNetwork(layers);
+	}
+
+	/**
+	 * Translates the topology of the network into the bytecode of a new class (see BytecodeCompiler).
+	 * The weights are not part of the code, they are passed to CompiledNetwork.evaluate in the order
+	 * of getWeights, so the compiled network can be used for all weight sets of this topology. The
+	 * results are the same as of setInputValues, but for small networks many times faster. Every call
+	 * loads a new class, so it should be called once per topology.
+	 * @return compiled network
+	 * @throws InconsistentValueException If the network is too large for one method (some thousand connections)
+	 * or a hidden neuron uses softmax
+	 */
+	public CompiledNetwork compileBytecode() throws InconsistentValueException {
+		checkHiddenActivations("NeuronalNetwork.compileBytecode");
+		return BytecodeCompiler.compile(inputs, hiddenLayers, outputs);
+	}
+
+	/**
+	 * Checks, that no hidden neuron uses softmax. Softmax is a function of the whole layer, which is
+	 * only calculated for the output layer, and its derivative is only valid with the cross entropy error.
+	 * @param causingMethod Method for the exception
+	 * @throws InconsistentValueException If a hidden neuron uses softmax
+	 */
+	private void checkHiddenActivations(String causingMethod) throws InconsistentValueException {
+		for (int i = 0; i < hiddenLayers.size(); i++) {
+			for (WorkerNeuron wn : hiddenLayers.get(i).getNeuronList()) {
+				if (wn.getActivation() instanceof Softmax) {
+					throw new InconsistentValueException("SOFTMAX in hidden layer " + i, "activation of a hidden layer",
+							"activation", causingMethod);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles the dense network into a single precision FloatNetwork (see compile). It halves the
+	 * memory of the weights and buffers, the weights are rounded to the nearest float value.
+	 * The float network can not use an optimizer (see setOptimizer): its trainBatch is rejected,
+	 * if an optimizer was set before.
+	 * @return compiled single precision network
+	 * @throws InconsistentValueException If the network is not a dense mesh
+	 */
+	public FloatNetwork compileFloat() throws InconsistentValueException {
+		FlatNetwork source = compile();
+		if (optimizer != null) {
+			source.setOptimizer(optimizer);
+		}
+		return new FloatNetwork(source);
+	}
+
+	/**
+	 * Converts the trained dense network into an inference-only network with 8 bit weights
+	 * (see QuantizedNetwork). It needs an eighth of the memory of the double weights.
+	 * @param inputScale Value of one step of the unsigned byte inputs (e.g. 1/255.0 for normed pixels)
+	 * @param calibrationInputs Sample inputs for finding the range of the hidden activation levels
+	 * @return quantized network
+	 * @throws InconsistentValueException If the network is not a dense mesh or a calibration input
+	 * does not match the network
+	 */
+	public QuantizedNetwork quantize(double inputScale, double[][] calibrationInputs) throws InconsistentValueException {
+		return new QuantizedNetwork(compile(), inputScale, calibrationInputs);
+	}
+
+	/**
+	 * Writes the topology and the weights into a binary model file (see ModelFile)
+	 * @param path Path of the file
+	 * @throws IOException If the file can not be written
+	 * @throws InconsistentValueException If the network is not a dense mesh or uses an activation
+	 * function, which is not part of the WorkerFactory
+	 */
+	public void saveModel(String path) throws IOException, InconsistentValueException {
+		ModelFile.save(compile(), path);
+	}
+
+	/**
+	 * Creates a dense network from a binary model file (see ModelFile). For inference only,
+	 * ModelFile.load is faster, because it does not build the neurons and connections.
+	 * @param path Path of the file
+	 * @return network with the topology and the weights of the file
+	 * @throws IOException If the file can not be read or has a wrong format
+	 * @throws InconsistentValueException If only some of the layers have bias weights
+	 */
+	public static NeuronalNetwork loadModel(String path) throws IOException, InconsistentValueException {
+		FlatNetwork loaded = ModelFile.load(path);
+		FlatLayer[] layers = loaded.getLayers();
+		boolean withBias = layers[0].getBias() != null;
+		NeuronalNetwork nn = new NeuronalNetwork(layers.length - 1);
+		for (int i = 0; i < loaded.getNoOfInputs(); i++) {
+			nn.createInputNeuron();
+		}
+		for (int l = 0; l < layers.length; l++) {
+			if ((layers[l].getBias() != null) != withBias) {
+				throw new InconsistentValueException("bias of layer " + l, "bias in all layers or in none",
+						"bias", "NeuronalNetwork.loadModel");
+			}
+			int type = WorkerFactory.getType(layers[l].getActivation());
+			for (int n = 0; n < layers[l].getNoOfNeurons(); n++) {
+				if (l < layers.length - 1) {
+					nn.hiddenLayers.get(l).createNeuron(type);
+				} else {
+					nn.createOutputNeuron(type);
+				}
+			}
+		}
+
+		// the connections are built with zero weights, the loaded weights are written over the compiled layers
+		nn.doDenseMesh(new double[nn.getNoOfDenseConnects(withBias)], withBias, 1.0);
+		nn.flat = nn.compile();
+		loaded.copyWeightsTo(nn.flat);
+		nn.flat.writeWeights();
+		return nn;
+	}
+
+	/**
+	 * Creates a writer for checkpoints of a training of this network in the background (see checkpoint)
+	 * @param path Path of the checkpoint file
+	 * @return writer
+	 * @throws InconsistentValueException If the network is not a dense mesh
+	 */
+	public CheckpointWriter createCheckpointWriter(String path) throws InconsistentValueException {
+		return new CheckpointWriter(getFlatNetwork(), false, path);
+	}
+
+	/**
+	 * Takes a checkpoint of the weights and the momentum of all connections and writes it in the
+	 * background. Call it between two learn steps.
+	 * @param writer Writer of createCheckpointWriter
+	 * @param epoch Number of finished epochs
+	 * @param step Number of finished steps (e.g. samples)
+	 * @param random Random generator of the training (e.g. for the order of the samples) or null
+	 * @return true, if the checkpoint was taken (false, if the former checkpoints are still written)
+	 * @throws IOException If the writing of a former checkpoint failed
+	 * @throws InconsistentValueException If the network is not a dense mesh
+	 */
+	public boolean checkpoint(CheckpointWriter writer, int epoch, long step, Random random)
+			throws IOException, InconsistentValueException {
+		return writer.write(getFlatNetwork(), epoch, step, random, null);
+	}
+
+	/**
+	 * Continues a training from a checkpoint: the weights and the momentum of all connections are
+	 * set to the values of the checkpoint, so the next learn steps are the same as in the interrupted
+	 * training. The counters and the random generator are taken from the returned checkpoint.
+	 * @param path Path of the checkpoint file
+	 * @return checkpoint with epoch, step and random generator
+	 * @throws IOException If the file can not be read or has a wrong format
+	 * @throws InconsistentValueException If the checkpoint has another structure
+	 */
+	public Checkpoint resume(String path) throws IOException, InconsistentValueException {
+		Checkpoint cp = Checkpoint.read(path);
+		FlatNetwork compiled = getFlatNetwork();
+		cp.restore(compiled);
+		compiled.writeWeights();
+		clearInputCache();
+		return cp;
+	}
+
+	/**
+	 * Mini-batch learning. The weight adaptions of batchSize samples are accumulated and applied as one
+	 * averaged adaption (see FlatNetwork.trainBatch). The learning runs on a compiled version of the network,
+	 * the weights are taken over before and written back after processing all samples.
+	 * @param inputs Input values of all samples
+	 * @param references Reference values of all samples
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case of the number of inputs and references differ or a sample
+	 * does not match the network
+	 */
+	public void trainBatch(double[][] inputs, double[][] references, double beta) throws InconsistentValueException {
+		FlatNetwork compiled = getFlatNetwork();
+		compiled.setBatchSize(batchSize);
+		compiled.trainBatch(inputs, references, beta);
+		compiled.writeWeights();
+		clearInputCache();
+	}
+
+	/**
+	 * Forward propagation of many samples at once. Instead of one pass through all neurons per sample,
+	 * the samples are calculated layer by layer as a matrix-matrix product on a compiled version of
+	 * the network (see FlatNetwork.predictBatch). The activation levels of the neurons are not changed.
+	 * @param inputs Input values of all samples
+	 * @return output values of all samples, row-wise: one value per output neuron and sample
+	 * @throws InconsistentValueException In case of the number of input values of a sample do not match
+	 * the number of input neurons
+	 */
+	public double[] predictBatch(double[][] inputs) throws InconsistentValueException {
+		return getFlatNetwork().predictBatch(inputs);
+	}
+
+	/**
+	 * Returns the compiled version of the network with the current weights of all connections. It will
+	 * be compiled on first use and only updated later on.
+	 * @return compiled network
+	 * @throws InconsistentValueException If the network is not a dense mesh
+	 */
+	private FlatNetwork getFlatNetwork() throws InconsistentValueException {
+		if (flat == null) {
+			flat = compile();
+			if (optimizer != null) {
+				flat.setOptimizer(optimizer);
+			}
+		} else {
+			flat.readWeights();
+		}
+		return flat;
+	}
+
+	/**
+	 * Sets the rule of the weight adaptions in trainBatch (see FlatNetwork.setOptimizer). The state of
+	 * the optimizer is kept between the calls of trainBatch, but not in the connections. deltaLearn
+	 * and the FloatNetwork of compileFloat always use the momentum of Connection.
+	 * @param optimizer Adaption rule, e.g. new Adam()
+	 * @throws InconsistentValueException If the network is not a dense mesh
+	 */
+	public void setOptimizer(Optimizer optimizer) throws InconsistentValueException {
+		this.optimizer = optimizer;
+		getFlatNetwork().setOptimizer(optimizer);
+	}
+
+	/**
+	 * Setter of the number of samples per weight adaption in trainBatch
+	 * @param batchSize Number of samples, must be at least 1
+	 * @throws InconsistentValueException If the batch size is smaller than 1
+	 */
+	public void setBatchSize(int batchSize) throws InconsistentValueException {
+		if (batchSize < 1) {
+			throw new InconsistentValueException(String.valueOf(batchSize), ">= 1", "batchSize",
+					"NeuronalNetwork.setBatchSize");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Getter of the number of samples per weight adaption in trainBatch
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
 	/**
 	 * Getter of the hidden layer
 	 * @return All hidden layer
@@ -259,6 +734,7 @@ public class NeuronalNetwork {
 			throw new InconsistentValueException(String.valueOf(weights.length), String.valueOf(noOfExpectedWeights), "no of weights", "setWeights");
 		}
 		// take over all values
+		clearInputCache();
 		int pos = 0;
 		for (NeuronLayer l : hiddenLayers) {
 			for (WorkerNeuron wn : l.getNeuronList()) {
@@ -275,4 +751,36 @@ public class NeuronalNetwork {
 		}
 	}
 
+	/**
+	 * Gets all weights in the same order as expected by setWeights
+	 * @return weights of all connections
+	 */
+	public double[] getWeights() {
+		int noOfWeights = 0;
+		for (NeuronLayer l : hiddenLayers) {
+			for (WorkerNeuron wn : l.getNeuronList()) {
+				noOfWeights += wn.getConnections().size();
+			}
+		}
+		for (WorkerNeuron wn : outputs) {
+			noOfWeights += wn.getConnections().size();
+		}
+
+		double[] weights = new double[noOfWeights];
+		int pos = 0;
+		for (NeuronLayer l : hiddenLayers) {
+			for (WorkerNeuron wn : l.getNeuronList()) {
+				for (Connection c : wn.getConnections()) {
+					weights[pos++] = c.getWeight();
+				}
+			}
+		}
+		for (WorkerNeuron wn : outputs) {
+			for (Connection c : wn.getConnections()) {
+				weights[pos++] = c.getWeight();
+			}
+		}
+		return weights;
+	}
+
 }
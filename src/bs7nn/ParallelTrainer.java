@@ -0,0 +1,185 @@
+package bs7nn;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Data-parallel mini-batch learning for a FlatNetwork. Every batch is split into one
+ * portion per thread. Each thread calculates the weight adaptions of its portion into its
+ * own gradient buffer, then the buffers are added up pairwise (tree reduction) and applied
+ * as one synchronous adaption.
+ * The split of the batch and the order of the reduction only depend on the batch size and
+ * the number of threads, so the result is reproducible for a fixed number of threads.
+ */
+public class ParallelTrainer {
+	/** network to be trained */
+	private FlatNetwork network;
+
+	/** number of threads working on one batch */
+	private int noOfThreads;
+
+	/** worker pool with one thread per portion */
+	private ForkJoinPool pool;
+
+	/** buffers for the activation levels, one per thread */
+	private Workspace[] workspaces;
+
+	/** buffers for the weight adaptions, one per thread */
+	private Gradient[] gradients;
+
+	/**
+	 * Constructor with the network and the number of threads
+	 * @param network Network to be trained. The batch size is taken from the network
+	 * @param noOfThreads Number of threads working on one batch
+	 * @throws InconsistentValueException If the number of threads is smaller than 1
+	 */
+	public ParallelTrainer(FlatNetwork network, int noOfThreads) throws InconsistentValueException {
+		if (noOfThreads < 1) {
+			throw new InconsistentValueException(String.valueOf(noOfThreads), ">= 1", "noOfThreads",
+					"ParallelTrainer");
+		}
+		this.network = network;
+		this.noOfThreads = noOfThreads;
+		pool = new ForkJoinPool(noOfThreads);
+		workspaces = new Workspace[noOfThreads];
+		gradients = new Gradient[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			workspaces[i] = new Workspace(network);
+			gradients[i] = new Gradient(network);
+		}
+	}
+
+	/**
+	 * Mini-batch learning on all threads. The samples are processed in portions of the batch
+	 * size of the network, with one averaged weight adaption per portion (see FlatNetwork.trainBatch).
+	 * @param inputs Input values of all samples
+	 * @param references Reference values of all samples
+	 * @param beta Learn step width
+	 * @throws InconsistentValueException In case of the number of inputs and references differ or
+	 * a sample does not match the network
+	 */
+	public void trainBatch(double[][] inputs, double[][] references, double beta) throws InconsistentValueException {
+		network.checkSamples(inputs, references);
+		int batchSize = network.getBatchSize();
+		for (int start = 0; start < inputs.length; start += batchSize) {
+			int end = Math.min(start + batchSize, inputs.length);
+			pool.invoke(new BatchTask(inputs, references, start, end));
+			network.applyGradient(gradients[0], beta);
+		}
+	}
+
+	/**
+	 * Stops the worker threads. The trainer can not be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Getter of the number of threads
+	 * @return number of threads
+	 */
+	public int getNoOfThreads() {
+		return noOfThreads;
+	}
+
+	/**
+	 * Processes one batch: calculates the gradients of all portions in parallel and adds them
+	 * up into the first gradient buffer
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** all samples */
+		private double[][] inputs;
+		private double[][] references;
+
+		/** range of the batch within the samples */
+		private int start;
+		private int end;
+
+		BatchTask(double[][] inputs, double[][] references, int start, int end) {
+			this.inputs = inputs;
+			this.references = references;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			// not more portions than samples
+			int noOfParts = Math.min(noOfThreads, end - start);
+			PortionTask[] portions = new PortionTask[noOfParts];
+			for (int p = 0; p < noOfParts; p++) {
+				portions[p] = new PortionTask(inputs, references, p, start + (end - start) * p / noOfParts,
+						start + (end - start) * (p + 1) / noOfParts);
+			}
+			invokeAll(portions);
+			new ReduceTask(0, noOfParts).invoke();
+		}
+	}
+
+	/**
+	 * Calculates the gradient of one portion of a batch into the buffer of the portion
+	 */
+	private class PortionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** all samples */
+		private double[][] inputs;
+		private double[][] references;
+
+		/** position of the buffers to be used */
+		private int part;
+
+		/** range of the portion within the samples */
+		private int start;
+		private int end;
+
+		PortionTask(double[][] inputs, double[][] references, int part, int start, int end) {
+			this.inputs = inputs;
+			this.references = references;
+			this.part = part;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			Workspace ws = workspaces[part];
+			Gradient g = gradients[part];
+			g.clear();
+			for (int i = start; i < end; i++) {
+				network.forward(inputs[i], ws);
+				network.accumulate(references[i], ws, g);
+			}
+		}
+	}
+
+	/**
+	 * Adds up the gradients from position "from" (inclusive) to "to" (exclusive) into the
+	 * gradient at position "from". Both halves are reduced in parallel.
+	 */
+	private class ReduceTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** range of the gradient buffers */
+		private int from;
+		private int to;
+
+		ReduceTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from < 2) {
+				return;
+			}
+			int mid = (from + to + 1) / 2;
+			invokeAll(new ReduceTask(from, mid), new ReduceTask(mid, to));
+			gradients[from].add(gradients[mid]);
+		}
+	}
+}
@@ -0,0 +1,371 @@
+package bs7nn;
+
+import java.util.Arrays;
+
+import bs7n.activation.Activateable;
+
+/**
+ * Inference-only version of a trained FlatNetwork with 8 bit integer weights (post-training
+ * quantization). Every neuron gets its own weight scale (largest absolute weight / 127), so a
+ * weight w is stored as round(w / scale). The inputs are unsigned bytes (e.g. image pixels) with
+ * one common input scale, the activation levels of the hidden layers are stored as 8 bit values
+ * with one scale per layer, which is found by calibration with sample inputs. The products of a
+ * layer are summed up as 32 bit integers (byte x byte). The weights of the first layer are stored
+ * column-wise (all weights of one input one after another), so every input, which is not 0, adds
+ * its column to the sums of all neurons and the zero inputs (most pixels of an image) are skipped.
+ *
+ * The activation function of a hidden layer is not calculated: the sum of a neuron is converted
+ * into a position of a lookup table, which holds the quantized activation level for every small
+ * range of sums (requantization). The range of the table is found by the calibration, too.
+ * Only the bias weights and the activation levels of the output layer stay in double precision.
+ */
+public class QuantizedNetwork {
+	/** number of entries of the lookup table of a hidden layer */
+	private static final int TABLE_SIZE = 1 << 14;
+
+	/** number of neurons per layer, starting with the input layer */
+	private int[] sizes;
+
+	/** quantized weights per layer, row-wise like FlatLayer, except the first layer (column-wise) */
+	private byte[][] weights;
+
+	/** weight scale per layer and neuron */
+	private double[][] weightScales;
+
+	/** bias weights per layer (null if the layer has no bias) */
+	private double[][] bias;
+
+	/** activation function per layer */
+	private Activateable[] activations;
+
+	/** scale of the quantized activation levels, one per layer including the input layer */
+	private double[] activationScales;
+
+	/** true, if the quantized activation levels of a layer are unsigned (0..255) instead of signed (-127..127) */
+	private boolean[] unsigned;
+
+	/** quantized activation levels of every hidden layer for all ranges of sums */
+	private byte[][] tables;
+
+	/** per hidden layer and neuron: factor from the integer sum to the table position */
+	private double[][] tableFactors;
+
+	/** per hidden layer and neuron: table position of the integer sum 0 (includes the bias weight) */
+	private double[][] tableOffsets;
+
+	/** buffers of the single threaded predict methods: quantized activation levels per layer */
+	private byte[][] quantized;
+	private int[] sums;
+	private double[] outputs;
+
+	/**
+	 * Quantizes a trained network
+	 * @param network Trained network
+	 * @param inputScale Value of one step of the unsigned byte inputs, e.g. 1/255.0, if the network was
+	 * trained with pixel values normed to 0.0 ... 1.0
+	 * @param calibrationInputs Sample inputs for finding the range of the hidden activation levels
+	 * @throws InconsistentValueException If a calibration input does not match the network
+	 */
+	public QuantizedNetwork(FlatNetwork network, double inputScale, double[][] calibrationInputs)
+			throws InconsistentValueException {
+		FlatLayer[] layers = network.getLayers();
+		sizes = new int[layers.length + 1];
+		weights = new byte[layers.length][];
+		weightScales = new double[layers.length][];
+		bias = new double[layers.length][];
+		activations = new Activateable[layers.length];
+		activationScales = new double[layers.length];
+		unsigned = new boolean[layers.length];
+		quantized = new byte[layers.length][];
+		int maxNeurons = 0;
+		tables = new byte[layers.length - 1][];
+		tableFactors = new double[layers.length - 1][];
+		tableOffsets = new double[layers.length - 1][];
+
+		sizes[0] = network.getNoOfInputs();
+		activationScales[0] = inputScale;
+		unsigned[0] = true;
+		for (int l = 0; l < layers.length; l++) {
+			quantizeLayer(l, layers[l]);
+			sizes[l + 1] = layers[l].getNoOfNeurons();
+			quantized[l] = new byte[sizes[l]];
+			maxNeurons = Math.max(maxNeurons, sizes[l + 1]);
+		}
+		sums = new int[maxNeurons];
+		outputs = new double[sizes[layers.length]];
+
+		calibrate(network, calibrationInputs);
+	}
+
+	/**
+	 * Converts the weights of one layer to 8 bit with one scale per neuron
+	 * @param l Position of the layer
+	 * @param layer Layer to convert
+	 */
+	private void quantizeLayer(int l, FlatLayer layer) {
+		int noOfInputs = layer.getNoOfInputs();
+		int noOfNeurons = layer.getNoOfNeurons();
+		double[] w = layer.getWeights();
+		weights[l] = new byte[w.length];
+		weightScales[l] = new double[noOfNeurons];
+		for (int n = 0; n < noOfNeurons; n++) {
+			int row = n * noOfInputs;
+			double maxAbs = 0;
+			for (int i = 0; i < noOfInputs; i++) {
+				maxAbs = Math.max(maxAbs, Math.abs(w[row + i]));
+			}
+			double scale = maxAbs > 0 ? maxAbs / 127 : 1;
+			weightScales[l][n] = scale;
+			for (int i = 0; i < noOfInputs; i++) {
+				weights[l][row + i] = (byte) Math.rint(w[row + i] / scale);
+			}
+		}
+		if (l == 0) {
+			weights[l] = transpose(weights[l], noOfNeurons, noOfInputs);
+		}
+		if (layer.getBias() != null) {
+			bias[l] = layer.getBias().clone();
+		}
+		activations[l] = layer.getActivation();
+	}
+
+	/**
+	 * Converts row-wise weights (one row per neuron) into column-wise weights (one column per input)
+	 * @param w Row-wise weights
+	 * @param noOfNeurons Number of rows
+	 * @param noOfInputs Number of columns
+	 * @return column-wise weights
+	 */
+	private static byte[] transpose(byte[] w, int noOfNeurons, int noOfInputs) {
+		byte[] t = new byte[w.length];
+		for (int n = 0; n < noOfNeurons; n++) {
+			for (int i = 0; i < noOfInputs; i++) {
+				t[i * noOfNeurons + n] = w[n * noOfInputs + i];
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Finds the range of the sums and activation levels of all hidden layers with the double
+	 * precision network and builds the lookup tables
+	 * @param network Original network
+	 * @param calibrationInputs Sample inputs
+	 * @throws InconsistentValueException If a calibration input does not match the network
+	 */
+	private void calibrate(FlatNetwork network, double[][] calibrationInputs) throws InconsistentValueException {
+		int noOfHidden = weights.length - 1;
+		double[] maxAbs = new double[noOfHidden];
+		boolean[] negative = new boolean[noOfHidden];
+		double[] minX = new double[noOfHidden];
+		double[] maxX = new double[noOfHidden];
+		InferenceContext ctx = new InferenceContext(network);
+		for (double[] in : calibrationInputs) {
+			network.predict(in, ctx);
+			for (int h = 0; h < noOfHidden; h++) {
+				for (double a : ctx.a[h + 1]) {
+					maxAbs[h] = Math.max(maxAbs[h], Math.abs(a));
+					negative[h] |= a < 0;
+				}
+				for (double x : ctx.x[h]) {
+					minX[h] = Math.min(minX[h], x);
+					maxX[h] = Math.max(maxX[h], x);
+				}
+			}
+		}
+		for (int h = 0; h < noOfHidden; h++) {
+			// non-negative activation levels (sigmoid, relu) can use the full unsigned range
+			unsigned[h + 1] = !negative[h];
+			double steps = unsigned[h + 1] ? 255 : 127;
+			activationScales[h + 1] = maxAbs[h] > 0 ? maxAbs[h] / steps : 1;
+			buildTable(h, minX[h], maxX[h]);
+		}
+	}
+
+	/**
+	 * Builds the lookup table of a hidden layer. The table covers the calibrated range of the sums
+	 * (always including 0) with a margin of half of the range on both sides, larger and smaller sums
+	 * get the first or last entry.
+	 * @param l Position of the hidden layer
+	 * @param minX Smallest calibrated sum
+	 * @param maxX Largest calibrated sum
+	 */
+	private void buildTable(int l, double minX, double maxX) {
+		double margin = Math.max((maxX - minX) / 2, 1);
+		double low = minX - margin;
+		double step = (maxX + margin - low) / TABLE_SIZE;
+		tables[l] = new byte[TABLE_SIZE];
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			// the middle of the range of the entry
+			double a = activations[l].f(low + (i + 0.5) * step);
+			tables[l][i] = (byte) quantize(a, activationScales[l + 1], unsigned[l + 1]);
+		}
+
+		// position = (acc * weightScale * activationScale + bias - low) / step
+		int noOfNeurons = weightScales[l].length;
+		tableFactors[l] = new double[noOfNeurons];
+		tableOffsets[l] = new double[noOfNeurons];
+		for (int n = 0; n < noOfNeurons; n++) {
+			tableFactors[l][n] = weightScales[l][n] * activationScales[l] / step;
+			tableOffsets[l][n] = ((bias[l] != null ? bias[l][n] : 0) - low) / step;
+		}
+	}
+
+	/**
+	 * Forward propagation with unsigned byte inputs
+	 * @param inputValues Input values as unsigned bytes (value = byte * inputScale)
+	 * @return activation levels of the output layer (internal buffer, overwritten by the next call)
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public double[] predict(byte[] inputValues) throws InconsistentValueException {
+		checkInputs(inputValues.length);
+		System.arraycopy(inputValues, 0, quantized[0], 0, inputValues.length);
+		return forward();
+	}
+
+	/**
+	 * Forward propagation with two dimensional unsigned byte inputs (e.g. LabeledImage.data), taken
+	 * in the same order as LabeledImage.getNormedData
+	 * @param inputValues Input values as unsigned bytes (value = byte * inputScale)
+	 * @return activation levels of the output layer (internal buffer, overwritten by the next call)
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public double[] predict(byte[][] inputValues) throws InconsistentValueException {
+		int length = 0;
+		for (byte[] row : inputValues) {
+			length += row.length;
+		}
+		checkInputs(length);
+		int pos = 0;
+		for (byte[] row : inputValues) {
+			System.arraycopy(row, 0, quantized[0], pos, row.length);
+			pos += row.length;
+		}
+		return forward();
+	}
+
+	/**
+	 * Forward propagation with double inputs, which are quantized with the input scale
+	 * @param inputValues Input values (must not be negative)
+	 * @return activation levels of the output layer (internal buffer, overwritten by the next call)
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs
+	 */
+	public double[] predict(double[] inputValues) throws InconsistentValueException {
+		checkInputs(inputValues.length);
+		byte[] q = quantized[0];
+		for (int i = 0; i < q.length; i++) {
+			q[i] = (byte) quantize(inputValues[i], activationScales[0], true);
+		}
+		return forward();
+	}
+
+	/**
+	 * Forward propagation of all layers based on the quantized inputs
+	 * @return activation levels of the output layer
+	 */
+	private double[] forward() {
+		int last = weights.length - 1;
+		for (int l = 0; l <= last; l++) {
+			int noOfInputs = sizes[l];
+			int noOfNeurons = sizes[l + 1];
+			byte[] in = quantized[l];
+			byte[] w = weights[l];
+			if (l == 0) {
+				// most pixels of an image are 0, only the columns of the other ones are added
+				Arrays.fill(sums, 0, noOfNeurons, 0);
+				for (int i = 0; i < noOfInputs; i++) {
+					int a = in[i] & 0xFF;
+					if (a != 0) {
+						Kernels.axpy(a, w, i * noOfNeurons, sums, noOfNeurons);
+					}
+				}
+			} else {
+				for (int n = 0; n < noOfNeurons; n++) {
+					sums[n] = unsigned[l] ? Kernels.dotUnsigned(w, n * noOfInputs, in, 0, noOfInputs)
+							: Kernels.dot(w, n * noOfInputs, in, 0, noOfInputs);
+				}
+			}
+
+			for (int n = 0; n < noOfNeurons; n++) {
+				if (l == last) {
+					double x = sums[n] * weightScales[l][n] * activationScales[l];
+					if (bias[l] != null) {
+						x += bias[l][n];
+					}
+					outputs[n] = activations[l].f(x);
+				} else {
+					// requantization by the lookup table instead of the activation function
+					int pos = (int) (sums[n] * tableFactors[l][n] + tableOffsets[l][n]);
+					quantized[l + 1][n] = tables[l][Math.max(0, Math.min(TABLE_SIZE - 1, pos))];
+				}
+			}
+		}
+		// the output layer may depend on all of its neurons (softmax)
+		activations[last].normalize(outputs, 0, outputs.length);
+		return outputs;
+	}
+
+	/**
+	 * Converts a value to an 8 bit step of the given scale
+	 * @param value Value to convert
+	 * @param scale Value of one step
+	 * @param isUnsigned true for 0..255, false for -127..127
+	 * @return quantized value
+	 */
+	private static int quantize(double value, double scale, boolean isUnsigned) {
+		int q = (int) Math.rint(value / scale);
+		if (isUnsigned) {
+			return Math.max(0, Math.min(255, q));
+		}
+		return Math.max(-127, Math.min(127, q));
+	}
+
+	/**
+	 * Checks the number of input values
+	 * @param length Number of input values
+	 * @throws InconsistentValueException In case of the number does not match the number of inputs
+	 */
+	private void checkInputs(int length) throws InconsistentValueException {
+		if (length != sizes[0]) {
+			throw new InconsistentValueException(String.valueOf(length), String.valueOf(sizes[0]), "inputValues",
+					"QuantizedNetwork.predict");
+		}
+	}
+
+	/**
+	 * Memory of the weights (quantized weights, weight scales, bias weights and lookup tables) in bytes
+	 * @return memory size in bytes
+	 */
+	public long getWeightMemory() {
+		long bytes = 0;
+		for (int l = 0; l < weights.length; l++) {
+			bytes += weights[l].length + 8L * weightScales[l].length;
+			if (bias[l] != null) {
+				bytes += 8L * bias[l].length;
+			}
+		}
+		for (int l = 0; l < tables.length; l++) {
+			bytes += tables[l].length + 8L * (tableFactors[l].length + tableOffsets[l].length);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of input values
+	 * @return number of inputs
+	 */
+	public int getNoOfInputs() {
+		return sizes[0];
+	}
+
+	/**
+	 * Gets the number of output values
+	 * @return number of outputs
+	 */
+	public int getNoOfOutputs() {
+		return sizes[sizes.length - 1];
+	}
+}
@@ -0,0 +1,22 @@
+package bs7nn;
+
+/**
+ * Interface for all data sets that deliver training or test samples by position. The
+ * samples are written into buffers given by the caller, so no arrays need to be created per sample.
+ * Implementations must allow calls from several threads at the same time.
+ */
+public interface SampleSource {
+	/**
+	 * Number of samples of the data set
+	 * @return number of samples
+	 */
+	int getNoOfSamples();
+
+	/**
+	 * Writes one sample into the given buffers
+	 * @param index Position of the sample
+	 * @param inputValues Buffer for the input values
+	 * @param references Buffer for the reference values of the output layer
+	 */
+	void getSample(int index, double[] inputValues, double[] references);
+}
@@ -0,0 +1,409 @@
+package bs7nn;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Forward propagation of a continuous stream of samples, with one thread per layer (stage). The
+ * activation levels flow from stage to stage through ring buffers with a fixed number of
+ * preallocated slots, so several samples are in the network at the same time: while layer 1
+ * calculates sample k, layer 0 already calculates sample k + 1. This raises the throughput on
+ * machines with several cores, the latency of a single sample stays about the same.
+ *
+ * Every ring buffer has exactly one writing and one reading thread, so no locks are needed. A
+ * stage waits, if its input ring is empty or its output ring is full (backpressure), so the number
+ * of samples in the pipeline is limited. The results come out in the order of the samples:
+ *
+ * for (...) {
+ *     pipeline.submit(inputValues);
+ *     while (pipeline.poll(outputValues)) {
+ *         ...
+ *     }
+ * }
+ *
+ * submit must always be called by the same thread and take / poll by the same thread (which can be
+ * the thread calling submit). A single thread must take results, before the pipeline is full, else
+ * submit waits forever. The weights must not be changed while samples are in the pipeline.
+ */
+public class StreamingPipeline {
+	/** number of busy waiting rounds, before a waiting thread gives up its core */
+	private static final int SPIN_ROUNDS = 100;
+
+	/** number of rounds with Thread.yield, before a waiting thread sleeps */
+	private static final int YIELD_ROUNDS = 100;
+
+	/** sleeping time of a waiting thread in nanoseconds (limits the additional latency) */
+	private static final long PARK_NANOS = 20000;
+
+	/** distance of counters written by different threads (two cache lines, because of the adjacent line prefetch) */
+	private static final int PADDING = 16;
+
+	/** statistic: number of calculated samples */
+	private static final int SAMPLES = 0;
+
+	/** statistic: time of the forward propagation */
+	private static final int BUSY = 1;
+
+	/** statistic: time waiting for an input (empty input ring) */
+	private static final int STARVED = 2;
+
+	/** statistic: time waiting for a free output slot (full output ring) */
+	private static final int BLOCKED = 3;
+
+	/** statistic: sum of the samples in the input ring, counted for every calculated sample */
+	private static final int OCCUPANCY = 4;
+
+	/** network to be calculated */
+	private FlatNetwork network;
+
+	/** rings: ring l is the input of stage l, the last ring holds the results */
+	private Ring[] rings;
+
+	/** statistics of all stages, every stage on its own cache lines */
+	private AtomicLongArray statistics;
+
+	/** the stage threads */
+	private ExecutorService executor;
+
+	/** true after close */
+	private volatile boolean closed;
+
+	/** number of submitted samples (only used by the submitting thread) */
+	private long noOfSubmitted;
+
+	/** number of taken results (only used by the taking thread) */
+	private volatile long noOfTaken;
+
+	/**
+	 * Ring buffer with one writing and one reading thread. The slots are preallocated and used
+	 * again and again, the writer fills a slot in place and then publishes it.
+	 */
+	private class Ring {
+		/** preallocated activation levels */
+		private double[][] slots;
+
+		/** capacity - 1 (the capacity is a power of 2) */
+		private int mask;
+
+		/** number of read slots at PADDING, number of written slots at 2 * PADDING */
+		private AtomicLongArray counters = new AtomicLongArray(3 * PADDING);
+
+		Ring(int capacity, int length) {
+			slots = new double[capacity][length];
+			mask = capacity - 1;
+		}
+
+		/**
+		 * Waits for a free slot (called by the writer)
+		 * @return slot to be filled or null, if the pipeline was closed
+		 */
+		double[] claim() {
+			long written = counters.get(2 * PADDING);
+			for (int round = 0; written - counters.get(PADDING) > mask; round++) {
+				if (!idle(round)) {
+					return null;
+				}
+			}
+			return slots[(int) written & mask];
+		}
+
+		/**
+		 * Passes the claimed slot to the reader (called by the writer)
+		 */
+		void publish() {
+			counters.lazySet(2 * PADDING, counters.get(2 * PADDING) + 1);
+		}
+
+		/**
+		 * Waits for a written slot (called by the reader)
+		 * @return oldest written slot or null, if the pipeline was closed
+		 */
+		double[] peek() {
+			long read = counters.get(PADDING);
+			for (int round = 0; counters.get(2 * PADDING) == read; round++) {
+				if (!idle(round)) {
+					return null;
+				}
+			}
+			return slots[(int) read & mask];
+		}
+
+		/**
+		 * Gives the slot of peek back to the writer (called by the reader)
+		 */
+		void release() {
+			counters.lazySet(PADDING, counters.get(PADDING) + 1);
+		}
+
+		/**
+		 * Number of written slots, which are not read yet
+		 * @return number of samples in the ring
+		 */
+		int getOccupancy() {
+			return (int) (counters.get(2 * PADDING) - counters.get(PADDING));
+		}
+	}
+
+	/**
+	 * Creates the ring buffers and starts one thread per layer
+	 * @param network Network to be calculated (sparse inputs are used, if they are switched on)
+	 * @param capacity Number of slots per ring buffer (rounded up to a power of 2)
+	 * @throws InconsistentValueException If the capacity is smaller than 1 or larger than 2^30
+	 */
+	public StreamingPipeline(FlatNetwork network, int capacity) throws InconsistentValueException {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new InconsistentValueException(String.valueOf(capacity), "1 .. 2^30", "capacity", "StreamingPipeline");
+		}
+		this.network = network;
+		int powerOf2 = Integer.highestOneBit(capacity);
+		if (powerOf2 < capacity) {
+			powerOf2 <<= 1;
+		}
+
+		FlatLayer[] layers = network.getLayers();
+		rings = new Ring[layers.length + 1];
+		rings[0] = new Ring(powerOf2, network.getNoOfInputs());
+		for (int l = 0; l < layers.length; l++) {
+			rings[l + 1] = new Ring(powerOf2, layers[l].getNoOfNeurons());
+		}
+		statistics = new AtomicLongArray((layers.length + 1) * PADDING);
+
+		executor = Executors.newFixedThreadPool(layers.length, r -> {
+			Thread t = new Thread(r, "StreamingPipeline stage");
+			t.setDaemon(true);
+			return t;
+		});
+		for (int l = 0; l < layers.length; l++) {
+			int stage = l;
+			executor.execute(() -> work(stage));
+		}
+	}
+
+	/**
+	 * Loop of one stage thread: calculates its layer for every sample until the pipeline is closed
+	 * @param stage Number of the stage (layer)
+	 */
+	private void work(int stage) {
+		FlatLayer layer = network.getLayers()[stage];
+		Ring in = rings[stage];
+		Ring out = rings[stage + 1];
+		double[] x = new double[layer.getNoOfNeurons()];
+		boolean sparse = stage == 0 && network.isSparseInputs();
+		int[] nonZero = sparse ? new int[layer.getNoOfInputs()] : null;
+		int base = (stage + 1) * PADDING;
+
+		while (true) {
+			long t0 = System.nanoTime();
+			double[] src = in.peek();
+			if (src == null) {
+				return;
+			}
+			int occupancy = in.getOccupancy();
+			long t1 = System.nanoTime();
+			double[] dst = out.claim();
+			if (dst == null) {
+				return;
+			}
+			long t2 = System.nanoTime();
+			if (sparse) {
+				int noOfNonZero = Kernels.nonZeroPositions(src, src.length, nonZero);
+				layer.forwardSparse(src, nonZero, noOfNonZero, x, dst);
+			} else {
+				layer.forward(src, x, dst);
+			}
+			out.publish();
+			in.release();
+			long t3 = System.nanoTime();
+
+			// only this thread writes the statistics of the stage
+			statistics.lazySet(base + SAMPLES, statistics.get(base + SAMPLES) + 1);
+			statistics.lazySet(base + BUSY, statistics.get(base + BUSY) + t3 - t2);
+			statistics.lazySet(base + STARVED, statistics.get(base + STARVED) + t1 - t0);
+			statistics.lazySet(base + BLOCKED, statistics.get(base + BLOCKED) + t2 - t1);
+			statistics.lazySet(base + OCCUPANCY, statistics.get(base + OCCUPANCY) + occupancy);
+		}
+	}
+
+	/**
+	 * One round of waiting: busy waiting first, then giving up the core, then sleeping
+	 * @param round Number of the round (starting with 0)
+	 * @return false, if the pipeline was closed
+	 */
+	private boolean idle(int round) {
+		if (closed) {
+			return false;
+		}
+		if (round < SPIN_ROUNDS) {
+			Thread.onSpinWait();
+		} else if (round < SPIN_ROUNDS + YIELD_ROUNDS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		return true;
+	}
+
+	/**
+	 * Puts a sample into the pipeline. It waits, if the first ring buffer is full (backpressure).
+	 * @param inputValues Vector of all input values (copied, the array can be used again)
+	 * @throws InconsistentValueException In case of the number of inputValues do not match the
+	 * number of inputs or the pipeline was closed
+	 */
+	public void submit(double[] inputValues) throws InconsistentValueException {
+		network.checkInputs(inputValues);
+		double[] slot = rings[0].claim();
+		if (slot == null) {
+			throw new InconsistentValueException("closed", "open", "pipeline", "StreamingPipeline.submit");
+		}
+		System.arraycopy(inputValues, 0, slot, 0, inputValues.length);
+		rings[0].publish();
+		noOfSubmitted++;
+	}
+
+	/**
+	 * Takes the result of the oldest sample. It waits, if the result is not calculated yet.
+	 * @param outputValues Output buffer for the activation levels of the output layer
+	 * @throws InconsistentValueException In case of the size of outputValues does not match the
+	 * number of outputs or the pipeline was closed
+	 */
+	public void take(double[] outputValues) throws InconsistentValueException {
+		checkOutputs(outputValues);
+		double[] slot = rings[rings.length - 1].peek();
+		if (slot == null) {
+			throw new InconsistentValueException("closed", "open", "pipeline", "StreamingPipeline.take");
+		}
+		copyResult(slot, outputValues);
+	}
+
+	/**
+	 * Takes the result of the oldest sample, if it is already calculated
+	 * @param outputValues Output buffer for the activation levels of the output layer
+	 * @return true, if a result was written into outputValues
+	 * @throws InconsistentValueException In case of the size of outputValues does not match the
+	 * number of outputs
+	 */
+	public boolean poll(double[] outputValues) throws InconsistentValueException {
+		checkOutputs(outputValues);
+		Ring results = rings[rings.length - 1];
+		if (results.getOccupancy() == 0) {
+			return false;
+		}
+		copyResult(results.peek(), outputValues);
+		return true;
+	}
+
+	/**
+	 * Checks the size of an output buffer
+	 * @param outputValues Output buffer
+	 * @throws InconsistentValueException In case of the size does not match the number of outputs
+	 */
+	private void checkOutputs(double[] outputValues) throws InconsistentValueException {
+		if (outputValues.length != network.getNoOfOutputs()) {
+			throw new InconsistentValueException(String.valueOf(outputValues.length), "= " + network.getNoOfOutputs(),
+					"outputValues", "StreamingPipeline.take");
+		}
+	}
+
+	/**
+	 * Copies a result and gives its slot back to the last stage
+	 * @param slot Slot of the result ring
+	 * @param outputValues Output buffer
+	 */
+	private void copyResult(double[] slot, double[] outputValues) {
+		System.arraycopy(slot, 0, outputValues, 0, outputValues.length);
+		rings[rings.length - 1].release();
+		noOfTaken++;
+	}
+
+	/**
+	 * Stops the stage threads. The pipeline can not be used afterwards, samples in the pipeline
+	 * are lost.
+	 */
+	public void close() {
+		closed = true;
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Number of stages (one per layer)
+	 * @return number of stages
+	 */
+	public int getNoOfStages() {
+		return rings.length - 1;
+	}
+
+	/**
+	 * Number of slots per ring buffer
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return rings[0].mask + 1;
+	}
+
+	/**
+	 * Number of samples, which were submitted and not taken yet (only valid in the submitting thread)
+	 * @return number of samples in the pipeline
+	 */
+	public long getNoOfInFlight() {
+		return noOfSubmitted - noOfTaken;
+	}
+
+	/**
+	 * Current number of samples in the input ring of a stage
+	 * @param stage Number of the stage or getNoOfStages for the result ring
+	 * @return number of waiting samples
+	 */
+	public int getOccupancy(int stage) {
+		return rings[stage].getOccupancy();
+	}
+
+	/**
+	 * Average number of samples in the input ring of a stage, when it took a sample. A value near
+	 * the capacity shows the bottleneck of the pipeline, a value near 1 a stage, which waits for its
+	 * predecessor.
+	 * @param stage Number of the stage
+	 * @return average occupancy
+	 */
+	public double getAverageOccupancy(int stage) {
+		long samples = getNoOfSamples(stage);
+		return samples == 0 ? 0 : (double) statistics.get((stage + 1) * PADDING + OCCUPANCY) / samples;
+	}
+
+	/**
+	 * Number of samples calculated by a stage
+	 * @param stage Number of the stage
+	 * @return number of samples
+	 */
+	public long getNoOfSamples(int stage) {
+		return statistics.get((stage + 1) * PADDING + SAMPLES);
+	}
+
+	/**
+	 * Time a stage calculated its layer
+	 * @param stage Number of the stage
+	 * @return time in nanoseconds
+	 */
+	public long getBusyNanos(int stage) {
+		return statistics.get((stage + 1) * PADDING + BUSY);
+	}
+
+	/**
+	 * Time a stage waited for samples of its predecessor (empty input ring)
+	 * @param stage Number of the stage
+	 * @return time in nanoseconds
+	 */
+	public long getStarvedNanos(int stage) {
+		return statistics.get((stage + 1) * PADDING + STARVED);
+	}
+
+	/**
+	 * Time a stage waited for its successor (full output ring, backpressure)
+	 * @param stage Number of the stage
+	 * @return time in nanoseconds
+	 */
+	public long getBlockedNanos(int stage) {
+		return statistics.get((stage + 1) * PADDING + BLOCKED);
+	}
+}
@@ -0,0 +1,15 @@
+package bs7nn;
+
+/**
+ * Receives the results of the validations of an AsyncValidator. The method is called by the
+ * validation thread, not by the training thread.
+ */
+public interface ValidationListener {
+	/**
+	 * Called after every validation
+	 * @param step Step number given to AsyncValidator.validate (e.g. the epoch)
+	 * @param result Result of the validation
+	 * @param isBest true, if this is the best result so far
+	 */
+	void validated(int step, Evaluator.Result result, boolean isBest);
+}
@@ -1,8 +1,12 @@
 package bs7nn;
 
+import bs7n.activation.Activateable;
+import bs7n.activation.FastSigmoid;
+import bs7n.activation.FastTangensHyp;
 import bs7n.activation.Identity;
 import bs7n.activation.ReLU;
 import bs7n.activation.Sigmoid;
+import bs7n.activation.Softmax;
 import bs7n.activation.TangensHyp;
 
 /**
@@ -25,20 +29,87 @@ public class WorkerFactory {
 	/** ID of neurons with a relu activation function */
 	public static final int RELU = 3;
 
+	/** ID of neurons with a fast approximation of the sigmoid activation function (max. error 3E-6) */
+	public static final int SIGM_FAST = 4;
+
+	/** ID of neurons with a fast approximation of the tangens hyperbolicus activation function (max. error 6E-6) */
+	public static final int TANH_FAST = 5;
+
+	/** ID of output neurons with a softmax activation function for the cross entropy error (see Softmax), not allowed in hidden layers */
+	public static final int SOFTMAX = 6;
+
 	/**
-	 * Returns a new activation function object of the given type
+	 * Returns a new worker neuron with an activation function of the given type
 	 * @param type Type of worker neuron
 	 * @return Worker neuron instance. Default is identity
 	 */
 	public static WorkerNeuron getNeuron(int type) {
+		return new WorkerNeuron(getActivation(type));
+	}
+
+	/**
+	 * Returns a new activation function object of the given type
+	 * @param type Type of activation function
+	 * @return Activation function instance. Default is identity
+	 */
+	public static Activateable getActivation(int type) {
 		switch (type) {
 		case SIGM:
-			return new WorkerNeuron(new Sigmoid());
+			return new Sigmoid();
 		case TANH:
-			return new WorkerNeuron(new TangensHyp());
+			return new TangensHyp();
 		case RELU:
-			return new WorkerNeuron(new ReLU());
+			return new ReLU();
+		case SIGM_FAST:
+			return new FastSigmoid();
+		case TANH_FAST:
+			return new FastTangensHyp();
+		case SOFTMAX:
+			return new Softmax();
+		}
+		return new Identity();
+	}
+
+	/**
+	 * Returns a new activation function object of the given type without a default, e.g. for types
+	 * read from a file
+	 * @param type Type of activation function
+	 * @return Activation function instance
+	 * @throws InconsistentValueException If the type is not a type of this factory
+	 */
+	public static Activateable getKnownActivation(int type) throws InconsistentValueException {
+		if (type < IDNT || type > SOFTMAX) {
+			throw new InconsistentValueException(String.valueOf(type), IDNT + " .. " + SOFTMAX, "type",
+					"WorkerFactory.getKnownActivation");
+		}
+		return getActivation(type);
+	}
+
+	/**
+	 * Returns the type of an activation function (the opposite of getActivation)
+	 * @param activate Activation function
+	 * @return Type of the activation function
+	 * @throws InconsistentValueException If the activation function has no type of this factory
+	 */
+	public static int getType(Activateable activate) throws InconsistentValueException {
+		// the exact class is compared, so subclasses with other functions are not mixed up
+		Class<?> c = activate.getClass();
+		if (c == Identity.class) {
+			return IDNT;
+		} else if (c == Sigmoid.class) {
+			return SIGM;
+		} else if (c == TangensHyp.class) {
+			return TANH;
+		} else if (c == ReLU.class) {
+			return RELU;
+		} else if (c == FastSigmoid.class) {
+			return SIGM_FAST;
+		} else if (c == FastTangensHyp.class) {
+			return TANH_FAST;
+		} else if (c == Softmax.class) {
+			return SOFTMAX;
 		}
-		return new WorkerNeuron(new Identity());
+		throw new InconsistentValueException(c.getName(), "activation of the WorkerFactory", "activate",
+				"WorkerFactory.getType");
 	}
 }
@@ -57,13 +57,32 @@ public class WorkerNeuron extends Neuron {
 		a = activate.f(x);
 	}
 
+	/**
+	 * Changes the sum of all incomming connection signals without summing up all connections
+	 * again, e.g. if only the signal of one source neuron changed
+	 * @param dx Change of the sum
+	 */
+	public void addX(double dx) {
+		x += dx;
+	}
+
+	/**
+	 * Calculation of the activation level based on the current sum x (without calcX)
+	 * @return true, if the activation level changed
+	 */
+	public boolean updateA() {
+		double oldA = a;
+		a = activate.f(x);
+		return a != oldA;
+	}
+
 	/**
 	 * Adaption of all weights of the incomming connections based on the "delta" error
 	 * at the output of the neuron
 	 * @param beta Learn step size
 	 */
 	public void deltaLearn(double beta) {
-		double factor = beta * delta * activate.ddx(x);
+		double factor = beta * delta * activate.ddx(x, a);
 		for (Connection c : connections) {
 			c.moveWeight(factor * c.getSource().getA());
 		}
@@ -106,6 +125,22 @@ public class WorkerNeuron extends Neuron {
 		}
 	}
 	
+	/**
+	 * Getter of the sum of all incomming connection signals
+	 * @return sum of the last calcA
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Getter of the activation function
+	 * @return The activation function object
+	 */
+	public Activateable getActivation() {
+		return activate;
+	}
+
 	/**
 	 * Getter of all connections
 	 * @return The connections
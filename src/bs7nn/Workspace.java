@@ -0,0 +1,25 @@
+package bs7nn;
+
+/**
+ * Buffers of a FlatNetwork that change with every learned sample: in addition to the buffers
+ * of the forward propagation (see InferenceContext) the errors of all layers. Separating them
+ * from the weights allows several threads to process samples with the same network at the
+ * same time, each one with its own workspace.
+ */
+public class Workspace extends InferenceContext {
+	/** error of every layer */
+	double[][] delta;
+
+	/**
+	 * Constructor creating the buffers matching the layers of the network
+	 * @param network Network the workspace will be used with
+	 */
+	public Workspace(FlatNetwork network) {
+		super(network);
+		FlatLayer[] layers = network.getLayers();
+		delta = new double[layers.length][];
+		for (int l = 0; l < layers.length; l++) {
+			delta[l] = new double[layers[l].getNoOfNeurons()];
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package bs7nn_bench;
+
+import java.util.Random;
+
+import bs7nn.InconsistentValueException;
+import bs7nn.NeuronalNetwork;
+
+/**
+ * Helper for the benchmarks: builds dense networks and random data sets
+ */
+public class BenchNetworks {
+
+	/**
+	 * Builds a dense network with bias neurons and seeded random weights
+	 * @param sizes Number of neurons per layer, starting with the input layer and ending with the output layer
+	 * @param type Type of activation function of all worker neurons (see WorkerFactory)
+	 * @param seed Seed of the random weights
+	 * @return the network
+	 * @throws InconsistentValueException
+	 */
+	public static NeuronalNetwork buildDense(int[] sizes, int type, long seed) throws InconsistentValueException {
+		NeuronalNetwork nn = new NeuronalNetwork(sizes.length - 2);
+		for (int i = 0; i < sizes[0]; i++) {
+			nn.createInputNeuron();
+		}
+		for (int l = 1; l < sizes.length - 1; l++) {
+			for (int i = 0; i < sizes[l]; i++) {
+				nn.getHiddenLayers().get(l - 1).createNeuron(type);
+			}
+		}
+		for (int i = 0; i < sizes[sizes.length - 1]; i++) {
+			nn.createOutputNeuron(type);
+		}
+		// small weights, so the sums of wide layers stay in the sensitive range of the activation function
+		nn.doDenseMesh(null, true, 1.0 / sizes[0], new Random(seed));
+		return nn;
+	}
+
+	/**
+	 * Creates random input vectors, where about 80% of the values are 0 (like MNIST images)
+	 * @param noOfSamples Number of vectors
+	 * @param length Number of values per vector
+	 * @param seed Seed of the random values
+	 * @return random vectors
+	 */
+	public static double[][] sparseInputs(int noOfSamples, int length, long seed) {
+		Random myRnd = new Random(seed);
+		double[][] inputs = new double[noOfSamples][length];
+		for (double[] in : inputs) {
+			for (int i = 0; i < length; i++) {
+				if (myRnd.nextDouble() < 0.2) {
+					in[i] = myRnd.nextDouble();
+				}
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Creates one-hot reference vectors
+	 * @param noOfSamples Number of vectors
+	 * @param length Number of values per vector
+	 * @param seed Seed of the random positions
+	 * @return reference vectors with one 1 and 0 everywhere else
+	 */
+	public static double[][] oneHotReferences(int noOfSamples, int length, long seed) {
+		Random myRnd = new Random(seed);
+		double[][] references = new double[noOfSamples][length];
+		for (double[] ref : references) {
+			ref[myRnd.nextInt(length)] = 1;
+		}
+		return references;
+	}
+}
@@ -0,0 +1,78 @@
+package bs7nn_bench;
+
+import bs7nn.FlatNetwork;
+import bs7nn.InconsistentValueException;
+import bs7nn.IntraLayerExecutor;
+import bs7nn.WorkerFactory;
+
+/**
+ * Measures the latency of single samples of a network with a wide hidden layer, calculated by the
+ * IntraLayerExecutor with 1 up to the number of processors threads. The results are compared with
+ * the serial FlatNetwork.
+ */
+public class IntraLayerBenchmark {
+	/** number of samples per measurement */
+	private static final int NO_OF_SAMPLES = 500;
+
+	/** number of measurements, the first ones are for warming up the JIT compiler */
+	private static final int NO_OF_RUNS = 5;
+
+	public static void main(String[] args) {
+		try {
+			run(new int[] { 28 * 28, 4096, 10 });
+		} catch (InconsistentValueException e) {
+			System.out.println(e.getExceptionCause());
+		}
+	}
+
+	/**
+	 * Measures forward propagation and learning for all numbers of threads
+	 * @param sizes Number of neurons per layer
+	 * @throws InconsistentValueException
+	 */
+	private static void run(int[] sizes) throws InconsistentValueException {
+		FlatNetwork flat = BenchNetworks.buildDense(sizes, WorkerFactory.SIGM, 1).compile();
+		double[][] inputs = BenchNetworks.sparseInputs(NO_OF_SAMPLES, sizes[0], 2);
+		double[][] references = BenchNetworks.oneHotReferences(NO_OF_SAMPLES, sizes[sizes.length - 1], 3);
+		System.out.println("Network " + sizes[0] + "x" + sizes[1] + "x" + sizes[2]);
+
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			IntraLayerExecutor executor = new IntraLayerExecutor(flat, threads);
+
+			// the executor must calculate the same values as the serial network
+			flat.setInputValues(inputs[0]);
+			double[] expected = flat.getOutputValues();
+			double[] actual = executor.predict(inputs[0]);
+			for (int n = 0; n < expected.length; n++) {
+				if (expected[n] != actual[n]) {
+					System.out.println("  output " + n + " differs: " + expected[n] + " != " + actual[n]);
+				}
+			}
+
+			for (int run = 0; run < NO_OF_RUNS; run++) {
+				long t0 = System.nanoTime();
+				for (int s = 0; s < NO_OF_SAMPLES; s++) {
+					executor.predict(inputs[s]);
+				}
+				long t1 = System.nanoTime();
+				for (int s = 0; s < NO_OF_SAMPLES; s++) {
+					executor.deltaLearn(inputs[s], references[s], 0.01);
+				}
+				long t2 = System.nanoTime();
+				System.out.println(String.format("  %2d threads: forward %7.1f us/sample | learn %7.1f us/sample",
+						threads, microsPerSample(t1 - t0), microsPerSample(t2 - t1)));
+			}
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Converts a duration for all samples into the latency of one sample
+	 * @param nanos Duration in nanoseconds
+	 * @return microseconds per sample
+	 */
+	private static double microsPerSample(long nanos) {
+		return nanos / 1e3 / NO_OF_SAMPLES;
+	}
+}
@@ -0,0 +1,106 @@
+package bs7nn_bench;
+
+import java.io.IOException;
+
+import bs7n.optimizer.Adam;
+import bs7n.optimizer.AdamW;
+import bs7n.optimizer.Momentum;
+import bs7n.optimizer.Nesterov;
+import bs7n.optimizer.Optimizer;
+import bs7n.optimizer.RMSProp;
+import bs7nn.BatchPipeline;
+import bs7nn.Evaluator;
+import bs7nn.FlatLayer;
+import bs7nn.FlatNetwork;
+import bs7nn.InconsistentValueException;
+import bs7nn.ParallelTrainer;
+import bs7nn.WorkerFactory;
+import bs7nn_image.IdxDataset;
+
+/**
+ * Measures the time to accuracy of the optimizers: the MNIST network (784 x 100 x 10, sigmoid) is
+ * trained with each optimizer from the same initial weights and with the same order of the
+ * images, until the test images reach the target accuracy. The training time without the tests
+ * and the number of epochs are printed.
+ * Optional arguments: paths of the training images, training labels, test images and test labels
+ * (default: the MNIST files of MnistNN).
+ */
+public class OptimizerBenchmark {
+	/** accuracy of the test images, which ends a training */
+	private static final double TARGET_ACCURACY = 0.97;
+
+	/** largest number of epochs of one training */
+	private static final int MAX_EPOCHS = 30;
+
+	/** number of images per weight adaption */
+	private static final int BATCH_SIZE = 64;
+
+	/** number of threads of the training and the tests */
+	private static final int NO_OF_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/** seed of the initial weights and of the order of the images */
+	private static final long SEED = 4711;
+
+	public static void main(String[] args) {
+		String[] paths = args.length == 4 ? args
+				: new String[] { "C:\\tmp\\NN\\train-images.idx3-ubyte", "C:\\tmp\\NN\\train-labels.idx1-ubyte",
+						"C:\\tmp\\NN\\t10k-images.idx3-ubyte", "C:\\tmp\\NN\\t10k-labels.idx1-ubyte" };
+		try {
+			IdxDataset train = new IdxDataset(paths[0], paths[1]);
+			IdxDataset test = new IdxDataset(paths[2], paths[3]);
+
+			// Nesterov is the rule without an explicit optimizer. Both momentum rules use the step of MnistNN,
+			// the adaptive rules a much smaller one, because they norm the adaptions
+			run("Nesterov", new Nesterov(FlatLayer.DAMPING), 0.01 * BATCH_SIZE, train, test);
+			run("Momentum", new Momentum(0.9), 0.01 * BATCH_SIZE, train, test);
+			run("RMSProp", new RMSProp(0.9, 1e-8), 0.001, train, test);
+			run("Adam", new Adam(), 0.002, train, test);
+			run("AdamW", new AdamW(0.01), 0.002, train, test);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InconsistentValueException e) {
+			System.out.println(e.getExceptionCause());
+		}
+	}
+
+	/**
+	 * Trains a new network with an optimizer until the target accuracy or MAX_EPOCHS
+	 * @param name Name of the optimizer for the output
+	 * @param optimizer Adaption rule
+	 * @param beta Learn step width
+	 * @param train Training images
+	 * @param test Test images
+	 * @throws InconsistentValueException
+	 */
+	private static void run(String name, Optimizer optimizer, double beta, IdxDataset train, IdxDataset test)
+			throws InconsistentValueException {
+		int[] sizes = { train.getImageSize(), 100, 10 };
+		FlatNetwork flat = BenchNetworks.buildDense(sizes, WorkerFactory.SIGM, SEED).compile();
+		flat.setBatchSize(BATCH_SIZE);
+		flat.setOptimizer(optimizer);
+		ParallelTrainer trainer = new ParallelTrainer(flat, NO_OF_THREADS);
+		Evaluator evaluator = new Evaluator(flat, NO_OF_THREADS);
+		BatchPipeline pipeline = new BatchPipeline(train, sizes[0], sizes[2], BATCH_SIZE, SEED, 2);
+
+		long trainNanos = 0;
+		double accuracy = 0;
+		int epoch = 0;
+		while (accuracy < TARGET_ACCURACY && epoch < MAX_EPOCHS) {
+			long start = System.nanoTime();
+			for (int b = 0; b < pipeline.getBatchesPerEpoch(); b++) {
+				BatchPipeline.Batch batch = pipeline.next();
+				trainer.trainBatch(batch.getInputs(), batch.getReferences(), beta);
+				pipeline.release(batch);
+			}
+			trainNanos += System.nanoTime() - start;
+			accuracy = evaluator.evaluate(test).getAccuracy();
+			epoch++;
+		}
+		pipeline.close();
+		trainer.shutdown();
+		evaluator.shutdown();
+
+		System.out.println(String.format("%-9s %s after %2d epochs, %6.1f s training, accuracy %.4f", name,
+				accuracy >= TARGET_ACCURACY ? "reached" : "missed ", epoch, trainNanos / 1e9, accuracy));
+	}
+}
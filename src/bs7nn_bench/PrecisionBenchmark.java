@@ -0,0 +1,86 @@
+package bs7nn_bench;
+
+import bs7nn.FlatNetwork;
+import bs7nn.FloatNetwork;
+import bs7nn.InconsistentValueException;
+import bs7nn.NeuronalNetwork;
+import bs7nn.WorkerFactory;
+
+/**
+ * Compares the double precision FlatNetwork with the single precision FloatNetwork. For a small
+ * hidden layer (MNIST: 100 neurons) the weights fit into the cache, for a wide hidden layer they
+ * must be streamed from memory for every sample, which shows the bandwidth difference.
+ */
+public class PrecisionBenchmark {
+	/** number of samples per measurement */
+	private static final int NO_OF_SAMPLES = 2000;
+
+	/** number of measurements, the first ones are for warming up the JIT compiler */
+	private static final int NO_OF_RUNS = 5;
+
+	public static void main(String[] args) {
+		try {
+			for (int hidden : new int[] { 100, 1000 }) {
+				run(new int[] { 28 * 28, hidden, 10 });
+			}
+		} catch (InconsistentValueException e) {
+			System.out.println(e.getExceptionCause());
+		}
+	}
+
+	/**
+	 * Measures forward propagation and learning for both precisions
+	 * @param sizes Number of neurons per layer
+	 * @throws InconsistentValueException
+	 */
+	private static void run(int[] sizes) throws InconsistentValueException {
+		NeuronalNetwork nn = BenchNetworks.buildDense(sizes, WorkerFactory.SIGM, 1);
+		FlatNetwork flat = nn.compile();
+		FloatNetwork floatNet = nn.compileFloat();
+		double[][] inputs = BenchNetworks.sparseInputs(NO_OF_SAMPLES, sizes[0], 2);
+		double[][] references = BenchNetworks.oneHotReferences(NO_OF_SAMPLES, sizes[sizes.length - 1], 3);
+		float[][] floatInputs = new float[NO_OF_SAMPLES][sizes[0]];
+		for (int s = 0; s < NO_OF_SAMPLES; s++) {
+			for (int i = 0; i < sizes[0]; i++) {
+				floatInputs[s][i] = (float) inputs[s][i];
+			}
+		}
+
+		long noOfWeights = nn.getNoOfDenseConnects(true);
+		System.out.println("Network " + sizes[0] + "x" + sizes[1] + "x" + sizes[2] + ": weights double "
+				+ noOfWeights * 8 / 1024 + " KB, float " + noOfWeights * 4 / 1024 + " KB");
+
+		for (int run = 0; run < NO_OF_RUNS; run++) {
+			long t0 = System.nanoTime();
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				flat.setInputValues(inputs[s]);
+			}
+			long t1 = System.nanoTime();
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				floatNet.setInputValues(floatInputs[s]);
+			}
+			long t2 = System.nanoTime();
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				flat.setInputValues(inputs[s]);
+				flat.deltaLearn(references[s], 0.01);
+			}
+			long t3 = System.nanoTime();
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				floatNet.setInputValues(floatInputs[s]);
+				floatNet.deltaLearn(references[s], 0.01);
+			}
+			long t4 = System.nanoTime();
+			System.out.println("  forward samples/s double " + perSecond(t1 - t0) + ", float " + perSecond(t2 - t1)
+					+ " | learn samples/s double " + perSecond(t3 - t2) + ", float " + perSecond(t4 - t3));
+		}
+	}
+
+	/**
+	 * Converts a duration for all samples into samples per second
+	 * @param nanos Duration in nanoseconds
+	 * @return samples per second
+	 */
+	private static long perSecond(long nanos) {
+		return Math.round(NO_OF_SAMPLES / (nanos / 1e9));
+	}
+}
@@ -0,0 +1,94 @@
+package bs7nn_bench;
+
+import bs7nn.FlatNetwork;
+import bs7nn.InconsistentValueException;
+import bs7nn.StreamingPipeline;
+import bs7nn.WorkerFactory;
+
+/**
+ * Compares the throughput of a stream of samples calculated by one thread (FlatNetwork.predict)
+ * and by the StreamingPipeline with one thread per layer. The results are compared and the
+ * statistics of every stage are printed, the stage with the highest busy time limits the throughput.
+ */
+public class StreamingBenchmark {
+	/** number of samples per measurement */
+	private static final int NO_OF_SAMPLES = 2000;
+
+	/** number of measurements, the first ones are for warming up the JIT compiler */
+	private static final int NO_OF_RUNS = 5;
+
+	/** number of slots per ring buffer */
+	private static final int CAPACITY = 8;
+
+	public static void main(String[] args) {
+		try {
+			run(new int[] { 28 * 28, 500, 500, 10 });
+		} catch (InconsistentValueException e) {
+			System.out.println(e.getExceptionCause());
+		}
+	}
+
+	/**
+	 * Measures a stream of samples with one thread and with the pipeline
+	 * @param sizes Number of neurons per layer
+	 * @throws InconsistentValueException
+	 */
+	private static void run(int[] sizes) throws InconsistentValueException {
+		FlatNetwork flat = BenchNetworks.buildDense(sizes, WorkerFactory.SIGM, 1).compile();
+		double[][] inputs = BenchNetworks.sparseInputs(NO_OF_SAMPLES, sizes[0], 2);
+		int noOfOutputs = sizes[sizes.length - 1];
+		double[][] expected = new double[NO_OF_SAMPLES][noOfOutputs];
+		double[][] actual = new double[NO_OF_SAMPLES][noOfOutputs];
+		StreamingPipeline pipeline = new StreamingPipeline(flat, CAPACITY);
+		System.out.println("Network " + sizes[0] + "x" + sizes[1] + "x" + sizes[2] + "x" + sizes[3] + ", "
+				+ pipeline.getNoOfStages() + " stages");
+
+		for (int run = 0; run < NO_OF_RUNS; run++) {
+			long t0 = System.nanoTime();
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				System.arraycopy(flat.predict(inputs[s]), 0, expected[s], 0, noOfOutputs);
+			}
+			long t1 = System.nanoTime();
+			// the results are taken by the same thread, so it must not submit into a full pipeline
+			int taken = 0;
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				if (pipeline.getNoOfInFlight() == pipeline.getCapacity()) {
+					pipeline.take(actual[taken++]);
+				}
+				pipeline.submit(inputs[s]);
+			}
+			while (taken < NO_OF_SAMPLES) {
+				pipeline.take(actual[taken++]);
+			}
+			long t2 = System.nanoTime();
+
+			int noOfDiffs = 0;
+			for (int s = 0; s < NO_OF_SAMPLES; s++) {
+				for (int n = 0; n < noOfOutputs; n++) {
+					if (expected[s][n] != actual[s][n]) {
+						noOfDiffs++;
+					}
+				}
+			}
+			System.out.println("  samples/s single thread " + perSecond(t1 - t0) + ", pipeline " + perSecond(t2 - t1)
+					+ (noOfDiffs == 0 ? "" : ", " + noOfDiffs + " different outputs"));
+		}
+
+		for (int stage = 0; stage < pipeline.getNoOfStages(); stage++) {
+			System.out.println(String.format("  stage %d: %d samples, busy %.1f ms, starved %.1f ms, blocked %.1f ms, "
+					+ "average occupancy %.2f", stage, pipeline.getNoOfSamples(stage), pipeline.getBusyNanos(stage) / 1e6,
+					pipeline.getStarvedNanos(stage) / 1e6, pipeline.getBlockedNanos(stage) / 1e6,
+					pipeline.getAverageOccupancy(stage)));
+		}
+		pipeline.close();
+	}
+
+	/**
+	 * Converts a duration for all samples into samples per second
+	 * @param nanos Duration in nanoseconds
+	 * @return samples per second
+	 */
+	private static long perSecond(long nanos) {
+		return Math.round(NO_OF_SAMPLES / (nanos / 1e9));
+	}
+}
@@ -7,11 +7,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import bs7nn.CompiledNetwork;
 import bs7nn.InconsistentValueException;
 import bs7nn.NeuronLayer;
 import bs7nn.NeuronalNetwork;
 import bs7nn.WorkerFactory;
-import bs7nn.WorkerNeuron;
 
 /**
  * Class for building the neurnal network for the car example
@@ -29,15 +29,18 @@ public class CarNN {
 	/** not more hidden neurons than input neurons */
 	private static final int NO_HD_NEURONS = NO_INPUT;
 	
-	/** needed for extracting the output values */
-	private WorkerNeuron[] outputs = new WorkerNeuron[NO_OUTPUT];
-	
 	/** here the weight values will be sent to the nn */
 	private CarParamSet param;
 	
 	/** the nn */
 	private NeuronalNetwork nn = new NeuronalNetwork(NO_HIDDEN);
 	
+	/** the nn translated into bytecode. All cars have the same topology, so they share one class */
+	private static CompiledNetwork compiled;
+	
+	/** weights of the nn in the order of the compiled network */
+	private double[] weights;
+	
 	/**
 	 * Constructor will create the nn. However, the random values of the nn will be overwritten by
 	 * the CarParamSet
@@ -53,10 +56,23 @@ public class CarNN {
 			}
 		}		
 		for (int i = 0; i < NO_OUTPUT; i++) {
-			outputs[i] = nn.createOutputNeuron(WorkerFactory.TANH);
+			nn.createOutputNeuron(WorkerFactory.TANH);
 		}
 		// the ramdom values will be overwritten later on
 		nn.doDenseMesh(null, true, 1.0);
+		weights = nn.getWeights();
+		compile(nn);
+	}
+	
+	/**
+	 * Translates the nn into bytecode, if it is not done yet
+	 * @param nn network of any car
+	 * @throws InconsistentValueException
+	 */
+	private static synchronized void compile(NeuronalNetwork nn) throws InconsistentValueException {
+		if (compiled == null) {
+			compiled = nn.compileBytecode();
+		}
 	}
 	
 	/**
@@ -66,13 +82,9 @@ public class CarNN {
 	 * @throws InconsistentValueException
 	 */
 	public double[] setInput(double[] input) throws InconsistentValueException {
-		nn.setInputValues(input);
-		
-		// extract the output values to an array
+		// the compiled network calculates the same values as the nn, without the object graph
 		double[] output = new double[NO_OUTPUT];
-		for (int i = 0; i < NO_OUTPUT; i++) {
-			output[i] = outputs[i].getA();
-		}
+		compiled.evaluate(weights, input, output);
 		return output;
 	}
 	
@@ -86,6 +98,7 @@ public class CarNN {
 		this.param = param;
 		// here the weights will be extracted
 		nn.setWeights(param.getWeights(), true);
+		weights = nn.getWeights();
 	}
 
 	/**
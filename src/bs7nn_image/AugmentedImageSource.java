@@ -0,0 +1,268 @@
+package bs7nn_image;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bs7nn.SampleSource;
+
+/**
+ * Delivers randomly distorted versions of images as samples, so the network sees new variants of
+ * the training images without storing them. Every image gets a random shift (in parts of a pixel),
+ * a small rotation and an elastic distortion (a smooth random displacement of all pixels). The new
+ * pixel values are interpolated bilinearly from the original image.
+ *
+ * The source has noOfVariants samples per image: sample i is variant i / noOfImages of image
+ * i % noOfImages. Variant 0 is the original image. The distortion only depends on the seed and the
+ * position of the sample, so it is the same for every run, independent of the thread that calculates
+ * it. Used as source of a BatchPipeline, the distortion runs in the worker threads of the pipeline and
+ * one epoch of the pipeline contains every image noOfVariants times.
+ */
+public class AugmentedImageSource implements SampleSource {
+	/** number of cells per side of the grid of the elastic displacements */
+	private static final int ELASTIC_GRID = 4;
+
+	/** memory mapped images or null */
+	private IdxDataset dataset;
+
+	/** images in the heap or null */
+	private List<LabeledImage> images;
+
+	/** number of original images */
+	private int noOfImages;
+
+	/** size of the images */
+	private int noOfRows;
+	private int noOfColumns;
+
+	/** number of samples per image (including the original image) */
+	private int noOfVariants;
+
+	/** largest shift in pixels */
+	private double maxShift;
+
+	/** largest rotation angle in radians */
+	private double maxAngle;
+
+	/** largest elastic displacement in pixels */
+	private double elasticAlpha;
+
+	/** seed of the distortions */
+	private long seed;
+
+	/** pixel buffer of each thread */
+	private ThreadLocal<int[]> pixels;
+
+	/** buffer of each thread for the raw pixels of a memory mapped image */
+	private ThreadLocal<byte[]> rawPixels;
+
+	/** buffer of each thread for the elastic displacements of the grid points (x and y) */
+	private ThreadLocal<double[]> grid;
+
+	/**
+	 * Constructor for memory mapped images
+	 * @param dataset Original images
+	 * @param noOfVariants Number of samples per image (including the original image)
+	 * @param maxShift Largest shift in pixels, e.g. 1.5
+	 * @param maxDegrees Largest rotation angle in degrees, e.g. 10
+	 * @param elasticAlpha Largest elastic displacement in pixels, e.g. 1.0
+	 * @param seed Seed of the distortions
+	 */
+	public AugmentedImageSource(IdxDataset dataset, int noOfVariants, double maxShift, double maxDegrees,
+			double elasticAlpha, long seed) {
+		this.dataset = dataset;
+		init(dataset.getNoOfImages(), dataset.getNoOfRows(), dataset.getNoOfColumns(), noOfVariants, maxShift,
+				maxDegrees, elasticAlpha, seed);
+	}
+
+	/**
+	 * Constructor for images in the heap (all images must have the same size)
+	 * @param images Original images
+	 * @param noOfVariants Number of samples per image (including the original image)
+	 * @param maxShift Largest shift in pixels, e.g. 1.5
+	 * @param maxDegrees Largest rotation angle in degrees, e.g. 10
+	 * @param elasticAlpha Largest elastic displacement in pixels, e.g. 1.0
+	 * @param seed Seed of the distortions
+	 */
+	public AugmentedImageSource(List<LabeledImage> images, int noOfVariants, double maxShift, double maxDegrees,
+			double elasticAlpha, long seed) {
+		this.images = images;
+		LabeledImage first = images.isEmpty() ? null : images.get(0);
+		init(images.size(), first == null ? 0 : first.data.length,
+				first == null || first.data.length == 0 ? 0 : first.data[0].length, noOfVariants, maxShift,
+				maxDegrees, elasticAlpha, seed);
+	}
+
+	/**
+	 * Takes over the parameters of the constructors
+	 */
+	private void init(int noOfImages, int noOfRows, int noOfColumns, int noOfVariants, double maxShift,
+			double maxDegrees, double elasticAlpha, long seed) {
+		this.noOfImages = noOfImages;
+		this.noOfRows = noOfRows;
+		this.noOfColumns = noOfColumns;
+		this.noOfVariants = Math.max(1, noOfVariants);
+		this.maxShift = maxShift;
+		this.maxAngle = Math.toRadians(maxDegrees);
+		this.elasticAlpha = elasticAlpha;
+		this.seed = seed;
+		pixels = ThreadLocal.withInitial(() -> new int[noOfRows * noOfColumns]);
+		rawPixels = ThreadLocal.withInitial(() -> new byte[noOfRows * noOfColumns]);
+		grid = ThreadLocal.withInitial(() -> new double[2 * (ELASTIC_GRID + 1) * (ELASTIC_GRID + 1)]);
+	}
+
+	@Override
+	public int getNoOfSamples() {
+		return (int) Math.min(Integer.MAX_VALUE, (long) noOfImages * noOfVariants);
+	}
+
+	/**
+	 * Writes the normed pixels of a distorted image and a reference with a 1 at the position of the label
+	 */
+	@Override
+	public void getSample(int index, double[] inputValues, double[] references) {
+		int image = index % noOfImages;
+		int variant = index / noOfImages;
+		int[] p = pixels.get();
+		int label = readImage(image, p);
+		Arrays.fill(references, 0);
+		references[label] = 1;
+
+		if (variant == 0) {
+			for (int i = 0; i < p.length; i++) {
+				inputValues[i] = p[i] / 255.0;
+			}
+		} else {
+			distort(p, new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L)), inputValues);
+		}
+	}
+
+	/**
+	 * Reads the pixels of an original image (row-wise)
+	 * @param image Position of the image
+	 * @param p Buffer for the pixel values 0..255
+	 * @return label of the image
+	 */
+	private int readImage(int image, int[] p) {
+		if (dataset != null) {
+			// one bulk copy of the mapped data into the buffer of the thread, no buffer view per image
+			byte[] raw = rawPixels.get();
+			dataset.getData(image, raw);
+			for (int i = 0; i < p.length; i++) {
+				p[i] = Byte.toUnsignedInt(raw[i]);
+			}
+			return dataset.getLabel(image);
+		}
+		LabeledImage img = images.get(image);
+		int pos = 0;
+		for (byte[] row : img.data) {
+			for (byte b : row) {
+				p[pos++] = Byte.toUnsignedInt(b);
+			}
+		}
+		return img.label;
+	}
+
+	/**
+	 * Calculates the distorted image. For every target pixel the position within the original image
+	 * is calculated (inverse rotation and shift around the center plus the elastic displacement) and
+	 * the value is interpolated from the four neighbor pixels.
+	 * @param p Pixels of the original image
+	 * @param rnd Random numbers of this sample
+	 * @param out Buffer for the normed pixels of the distorted image
+	 */
+	private void distort(int[] p, SplittableRandom rnd, double[] out) {
+		double angle = (2 * rnd.nextDouble() - 1) * maxAngle;
+		double shiftX = (2 * rnd.nextDouble() - 1) * maxShift;
+		double shiftY = (2 * rnd.nextDouble() - 1) * maxShift;
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+
+		// random displacements of the grid points, interpolated in between for a smooth distortion
+		double[] g = grid.get();
+		for (int i = 0; i < g.length; i++) {
+			g[i] = (2 * rnd.nextDouble() - 1) * elasticAlpha;
+		}
+		int gridPoints = (ELASTIC_GRID + 1) * (ELASTIC_GRID + 1);
+		double gridX = ELASTIC_GRID / (double) Math.max(1, noOfColumns - 1);
+		double gridY = ELASTIC_GRID / (double) Math.max(1, noOfRows - 1);
+
+		double centerX = (noOfColumns - 1) / 2.0;
+		double centerY = (noOfRows - 1) / 2.0;
+		int pos = 0;
+		for (int y = 0; y < noOfRows; y++) {
+			double v = y - centerY - shiftY;
+			double gy = y * gridY;
+			int cellY = Math.min((int) gy, ELASTIC_GRID - 1);
+			double fy = gy - cellY;
+			for (int x = 0; x < noOfColumns; x++) {
+				double u = x - centerX - shiftX;
+				double gx = x * gridX;
+				int cellX = Math.min((int) gx, ELASTIC_GRID - 1);
+				double fx = gx - cellX;
+				int g00 = cellY * (ELASTIC_GRID + 1) + cellX;
+				double dx = interpolate(g[g00], g[g00 + 1], g[g00 + ELASTIC_GRID + 1], g[g00 + ELASTIC_GRID + 2], fx, fy);
+				g00 += gridPoints;
+				double dy = interpolate(g[g00], g[g00 + 1], g[g00 + ELASTIC_GRID + 1], g[g00 + ELASTIC_GRID + 2], fx, fy);
+
+				double srcX = cos * u + sin * v + centerX + dx;
+				double srcY = -sin * u + cos * v + centerY + dy;
+				out[pos++] = sample(p, srcX, srcY) / 255.0;
+			}
+		}
+	}
+
+	/**
+	 * Bilinear interpolation between four values
+	 * @param v00 Value at (0, 0)
+	 * @param v10 Value at (1, 0)
+	 * @param v01 Value at (0, 1)
+	 * @param v11 Value at (1, 1)
+	 * @param fx Position in x direction (0..1)
+	 * @param fy Position in y direction (0..1)
+	 * @return interpolated value
+	 */
+	private static double interpolate(double v00, double v10, double v01, double v11, double fx, double fy) {
+		double top = v00 + (v10 - v00) * fx;
+		double bottom = v01 + (v11 - v01) * fx;
+		return top + (bottom - top) * fy;
+	}
+
+	/**
+	 * Pixel value at a position between the pixels. Pixels outside the image are 0 (background).
+	 * @param p Pixels of the image
+	 * @param x Column position
+	 * @param y Row position
+	 * @return interpolated pixel value
+	 */
+	private double sample(int[] p, double x, double y) {
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		double fx = x - x0;
+		double fy = y - y0;
+		return interpolate(pixel(p, x0, y0), pixel(p, x0 + 1, y0), pixel(p, x0, y0 + 1), pixel(p, x0 + 1, y0 + 1),
+				fx, fy);
+	}
+
+	/**
+	 * Value of one pixel
+	 * @param p Pixels of the image
+	 * @param x Column
+	 * @param y Row
+	 * @return pixel value or 0, if the position is outside the image
+	 */
+	private int pixel(int[] p, int x, int y) {
+		if (x < 0 || y < 0 || x >= noOfColumns || y >= noOfRows) {
+			return 0;
+		}
+		return p[y * noOfColumns + x];
+	}
+
+	/**
+	 * Getter of the number of samples per image
+	 * @return number of variants (including the original image)
+	 */
+	public int getNoOfVariants() {
+		return noOfVariants;
+	}
+}
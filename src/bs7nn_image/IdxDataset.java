@@ -0,0 +1,208 @@
+package bs7nn_image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import bs7nn.SampleSource;
+
+/**
+ * Image data set in the "idx" file format (see IdxHeader) which is not read into the heap,
+ * but mapped into memory. Opening the data set only reads the headers, the pixels are loaded by
+ * the operating system when they are accessed. No objects are created per image: the pixels are
+ * delivered as views on the mapped file or written into buffers given by the caller.
+ * All methods can be called from several threads at the same time.
+ */
+public class IdxDataset implements SampleSource {
+	/** pixel values as normed double values (value / 255.0) */
+	private static final double[] NORMED = new double[256];
+	static {
+		for (int i = 0; i < NORMED.length; i++) {
+			NORMED[i] = i / 255.0;
+		}
+	}
+
+	/** number of images */
+	private int noOfImages;
+
+	/** number of rows of an image */
+	private int noOfRows;
+
+	/** number of columns of an image */
+	private int noOfColumns;
+
+	/** number of pixels of an image */
+	private int imageSize;
+
+	/** number of images per mapped segment of the data file (one mapping is limited to 2 GB) */
+	private int imagesPerSegment;
+
+	/** mapped segments of the data file, starting behind the header */
+	private MappedByteBuffer[] segments;
+
+	/** mapped labels, starting behind the header */
+	private MappedByteBuffer labels;
+
+	/**
+	 * Maps the data and label file into memory and checks the headers
+	 * @param dataFilePath Path to data file
+	 * @param labelFilePath Path to label file
+	 * @throws IOException If a file can not be read or the headers do not match
+	 */
+	public IdxDataset(String dataFilePath, String labelFilePath) throws IOException {
+		try (FileChannel data = FileChannel.open(Paths.get(dataFilePath), StandardOpenOption.READ);
+				FileChannel label = FileChannel.open(Paths.get(labelFilePath), StandardOpenOption.READ)) {
+			// images: unsigned bytes with the dimensions images, rows and columns
+			IdxHeader dataHeader = new IdxHeader(data, dataFilePath);
+			dataHeader.check(IdxHeader.TYPE_UNSIGNED_BYTE, 3, dataFilePath);
+			noOfImages = dataHeader.getNoOfRecords();
+			noOfRows = dataHeader.getDimension(1);
+			noOfColumns = dataHeader.getDimension(2);
+			imageSize = dataHeader.getRecordSize();
+
+			// labels: unsigned bytes, one per image
+			IdxHeader labelHeader = new IdxHeader(label, labelFilePath);
+			labelHeader.check(IdxHeader.TYPE_UNSIGNED_BYTE, 1, labelFilePath);
+			if (labelHeader.getNoOfRecords() != noOfImages) {
+				throw new IOException(labelFilePath + ": number of labels is " + labelHeader.getNoOfRecords()
+						+ ", expected " + noOfImages);
+			}
+
+			// every segment holds complete images, so an image never crosses two mappings
+			imagesPerSegment = Math.max(1, Integer.MAX_VALUE / Math.max(1, imageSize));
+			int noOfSegments = (int) ((noOfImages + (long) imagesPerSegment - 1) / imagesPerSegment);
+			segments = new MappedByteBuffer[noOfSegments];
+			for (int s = 0; s < noOfSegments; s++) {
+				long first = (long) s * imagesPerSegment;
+				long count = Math.min(imagesPerSegment, noOfImages - first);
+				segments[s] = data.map(FileChannel.MapMode.READ_ONLY,
+						dataHeader.getHeaderSize() + first * imageSize, count * imageSize);
+			}
+			labels = label.map(FileChannel.MapMode.READ_ONLY, labelHeader.getHeaderSize(), noOfImages);
+		}
+	}
+
+	/**
+	 * Read-only view on the pixels of one image (row-wise, unsigned bytes). The data is not copied,
+	 * the view starts at position 0.
+	 * @param index Position of the image
+	 * @return view on the pixels
+	 */
+	public ByteBuffer getImage(int index) {
+		ByteBuffer view = segments[index / imagesPerSegment].duplicate();
+		int start = (index % imagesPerSegment) * imageSize;
+		view.position(start).limit(start + imageSize);
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Label of one image
+	 * @param index Position of the image
+	 * @return label (e.g. the digit)
+	 */
+	public int getLabel(int index) {
+		return Byte.toUnsignedInt(labels.get(index));
+	}
+
+	/**
+	 * Copies the raw pixels of one image (row-wise, unsigned bytes) into a given buffer
+	 * @param index Position of the image
+	 * @param outData Buffer with at least getImageSize values
+	 */
+	public void getData(int index, byte[] outData) {
+		segments[index / imagesPerSegment].get((index % imagesPerSegment) * imageSize, outData, 0, imageSize);
+	}
+
+	/**
+	 * Writes the pixels of one image as values from 0.0 to 1.0 into a given buffer, in the same
+	 * order as LabeledImage.getNormedData
+	 * @param index Position of the image
+	 * @param outData Buffer with at least getImageSize values
+	 */
+	public void getNormedData(int index, double[] outData) {
+		MappedByteBuffer segment = segments[index / imagesPerSegment];
+		int start = (index % imagesPerSegment) * imageSize;
+		for (int i = 0; i < imageSize; i++) {
+			outData[i] = NORMED[Byte.toUnsignedInt(segment.get(start + i))];
+		}
+	}
+
+	/**
+	 * Writes the pixels of one image as values from 0.0 to 1.0 into a given single precision buffer
+	 * @param index Position of the image
+	 * @param outData Buffer with at least getImageSize values
+	 */
+	public void getNormedData(int index, float[] outData) {
+		MappedByteBuffer segment = segments[index / imagesPerSegment];
+		int start = (index % imagesPerSegment) * imageSize;
+		for (int i = 0; i < imageSize; i++) {
+			outData[i] = (float) NORMED[Byte.toUnsignedInt(segment.get(start + i))];
+		}
+	}
+
+	/**
+	 * Creates a LabeledImage of one image, e.g. for displaying it. The pixels are copied.
+	 * @param index Position of the image
+	 * @return labeled image
+	 */
+	public LabeledImage getLabeledImage(int index) {
+		ByteBuffer image = getImage(index);
+		byte[][] data = new byte[noOfRows][noOfColumns];
+		for (int x = 0; x < noOfRows; x++) {
+			image.get(data[x]);
+		}
+		return new LabeledImage(getLabel(index), data);
+	}
+
+	@Override
+	public int getNoOfSamples() {
+		return noOfImages;
+	}
+
+	/**
+	 * Writes the normed pixels and a reference with a 1 at the position of the label
+	 * (see LabeledImageSource)
+	 */
+	@Override
+	public void getSample(int index, double[] inputValues, double[] references) {
+		getNormedData(index, inputValues);
+		Arrays.fill(references, 0);
+		references[getLabel(index)] = 1;
+	}
+
+	/**
+	 * Getter of the number of images
+	 * @return number of images
+	 */
+	public int getNoOfImages() {
+		return noOfImages;
+	}
+
+	/**
+	 * Getter of the number of rows of an image
+	 * @return number of rows
+	 */
+	public int getNoOfRows() {
+		return noOfRows;
+	}
+
+	/**
+	 * Getter of the number of columns of an image
+	 * @return number of columns
+	 */
+	public int getNoOfColumns() {
+		return noOfColumns;
+	}
+
+	/**
+	 * Getter of the number of pixels of an image
+	 * @return number of pixels
+	 */
+	public int getImageSize() {
+		return imageSize;
+	}
+}
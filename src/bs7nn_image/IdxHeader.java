@@ -0,0 +1,193 @@
+package bs7nn_image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Header of a file in the general "idx" format (see http://yann.lecun.com/exdb/mnist/):
+ *
+ * [offset] [type]          [description]
+ * 0000     2 bytes         always 0
+ * 0002     unsigned byte   type of the elements (see TYPE_...)
+ * 0003     unsigned byte   number of dimensions
+ * 0004     32 bit integer  size of dimension 0 (MSB first)
+ * 0008     32 bit integer  size of dimension 1
+ * ........
+ * followed by the elements, MSB first, the last dimension changing fastest.
+ *
+ * The first dimension is seen as the number of records (e.g. images), all other dimensions
+ * form one record (e.g. 28 rows of 28 pixels).
+ */
+public class IdxHeader {
+	/** element type codes of the third byte of the magic number */
+	public static final int TYPE_UNSIGNED_BYTE = 0x08;
+	public static final int TYPE_SIGNED_BYTE = 0x09;
+	public static final int TYPE_SHORT = 0x0B;
+	public static final int TYPE_INT = 0x0C;
+	public static final int TYPE_FLOAT = 0x0D;
+	public static final int TYPE_DOUBLE = 0x0E;
+
+	/** element type (see TYPE_...) */
+	private int type;
+
+	/** size of one element in bytes */
+	private int elementSize;
+
+	/** size of every dimension */
+	private int[] dimensions;
+
+	/**
+	 * Reads the header from the start of a file. The position of the channel is not changed.
+	 * @param channel File to read
+	 * @param path Path of the file for error messages
+	 * @throws IOException If the file can not be read or has no valid header
+	 */
+	public IdxHeader(FileChannel channel, String path) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(4);
+		readFully(channel, magic, 0, path);
+		if (magic.get(0) != 0 || magic.get(1) != 0) {
+			throw new IOException(path + ": no idx file (magic number " + magic.getInt(0) + ")");
+		}
+		type = Byte.toUnsignedInt(magic.get(2));
+		elementSize = getElementSize(type, path);
+
+		ByteBuffer sizes = ByteBuffer.allocate(4 * Byte.toUnsignedInt(magic.get(3)));
+		readFully(channel, sizes, 4, path);
+		dimensions = new int[sizes.capacity() / 4];
+		for (int d = 0; d < dimensions.length; d++) {
+			dimensions[d] = sizes.getInt(4 * d);
+			if (dimensions[d] < 0) {
+				throw new IOException(path + ": size of dimension " + d + " is " + dimensions[d]);
+			}
+		}
+		if (channel.size() < getHeaderSize() + (long) getNoOfRecords() * getRecordBytes()) {
+			throw new IOException(path + ": file is shorter than " + getNoOfRecords() + " records");
+		}
+	}
+
+	/**
+	 * Reads bytes from a position of the channel until the buffer is full
+	 * @param channel File to read
+	 * @param buffer Buffer to fill
+	 * @param position Position within the file
+	 * @param path Path of the file for the error message
+	 * @throws IOException If the file ends before the buffer is full
+	 */
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position, String path) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException(path + ": unexpected end of file");
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Size of an element type in bytes
+	 * @param type Element type (see TYPE_...)
+	 * @param path Path of the file for the error message
+	 * @return number of bytes
+	 * @throws IOException If the type is unknown
+	 */
+	private static int getElementSize(int type, String path) throws IOException {
+		switch (type) {
+		case TYPE_UNSIGNED_BYTE:
+		case TYPE_SIGNED_BYTE:
+			return 1;
+		case TYPE_SHORT:
+			return 2;
+		case TYPE_INT:
+		case TYPE_FLOAT:
+			return 4;
+		case TYPE_DOUBLE:
+			return 8;
+		default:
+			throw new IOException(path + ": unknown element type " + type);
+		}
+	}
+
+	/**
+	 * Checks the element type and the number of dimensions
+	 * @param expectedType Required element type (see TYPE_...)
+	 * @param expectedDimensions Required number of dimensions
+	 * @param path Path of the file for the error message
+	 * @throws IOException If type or number of dimensions differ
+	 */
+	public void check(int expectedType, int expectedDimensions, String path) throws IOException {
+		if (type != expectedType || dimensions.length != expectedDimensions) {
+			throw new IOException(path + ": type " + type + " with " + dimensions.length + " dimensions, expected type "
+					+ expectedType + " with " + expectedDimensions + " dimensions");
+		}
+	}
+
+	/**
+	 * Getter of the element type
+	 * @return element type (see TYPE_...)
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Size of one element in bytes
+	 * @return number of bytes
+	 */
+	public int getElementSize() {
+		return elementSize;
+	}
+
+	/**
+	 * Getter of the number of dimensions
+	 * @return number of dimensions
+	 */
+	public int getNoOfDimensions() {
+		return dimensions.length;
+	}
+
+	/**
+	 * Size of one dimension
+	 * @param d Position of the dimension
+	 * @return size
+	 */
+	public int getDimension(int d) {
+		return dimensions[d];
+	}
+
+	/**
+	 * Number of records (size of the first dimension)
+	 * @return number of records
+	 */
+	public int getNoOfRecords() {
+		return dimensions.length == 0 ? 0 : dimensions[0];
+	}
+
+	/**
+	 * Number of elements of one record (product of all dimensions but the first one)
+	 * @return number of elements
+	 */
+	public int getRecordSize() {
+		long size = 1;
+		for (int d = 1; d < dimensions.length; d++) {
+			size *= dimensions[d];
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Number of bytes of one record
+	 * @return number of bytes
+	 */
+	public long getRecordBytes() {
+		return (long) getRecordSize() * getElementSize();
+	}
+
+	/**
+	 * Number of bytes of the header, the first record starts at this position
+	 * @return number of bytes
+	 */
+	public int getHeaderSize() {
+		return 4 + 4 * dimensions.length;
+	}
+}
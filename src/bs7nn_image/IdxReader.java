@@ -0,0 +1,292 @@
+package bs7nn_image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sequential reader for files in the "idx" format (see IdxHeader) of any size. The records are
+ * read in chunks of a fixed number of records, so the memory needed is independent of the file
+ * size: one buffer for the current chunk and, with read-ahead, a second one which is filled by a
+ * background thread while the current chunk is processed.
+ *
+ * Usage:
+ * while (reader.nextChunk()) {
+ *     for (int r = 0; r < reader.getChunkSize(); r++) {
+ *         reader.getValues(r, values, 1 / 255.0);
+ *         ...
+ *     }
+ * }
+ */
+public class IdxReader implements Closeable {
+	/** path of the file for error messages */
+	private String path;
+
+	/** the open file */
+	private FileChannel channel;
+
+	/** header of the file */
+	private IdxHeader header;
+
+	/** number of bytes of one record */
+	private int recordBytes;
+
+	/** maximum number of records per chunk */
+	private int chunkRecords;
+
+	/** thread reading the next chunk or null, if there is no read-ahead */
+	private ExecutorService readAhead;
+
+	/** next chunk while it is read by the background thread */
+	private Future<ByteBuffer> pending;
+
+	/** chunk to be processed */
+	private ByteBuffer current;
+
+	/** free buffer for the next chunk */
+	private ByteBuffer spare;
+
+	/** position of the first record of the current chunk */
+	private long chunkStart;
+
+	/** number of records of the current chunk */
+	private int chunkSize;
+
+	/** position of the first record of the next chunk */
+	private long nextRecord;
+
+	/**
+	 * Opens the file and reads the header. The first chunk will be read by nextChunk.
+	 * @param path Path to the idx file
+	 * @param chunkRecords Number of records per chunk (limited to chunks of 2 GB)
+	 * @param withReadAhead true, if the next chunk should be read in the background
+	 * @throws IOException If the file can not be read or has no valid header
+	 */
+	public IdxReader(String path, int chunkRecords, boolean withReadAhead) throws IOException {
+		this.path = path;
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		try {
+			header = new IdxHeader(channel, path);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		recordBytes = (int) Math.min(header.getRecordBytes(), Integer.MAX_VALUE);
+		this.chunkRecords = Math.max(1, Math.min(chunkRecords, Integer.MAX_VALUE / Math.max(1, recordBytes)));
+
+		// direct buffers are filled by the file system without an additional copy
+		current = ByteBuffer.allocateDirect(this.chunkRecords * recordBytes);
+		if (withReadAhead) {
+			spare = ByteBuffer.allocateDirect(this.chunkRecords * recordBytes);
+			readAhead = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "IdxReader read-ahead");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Moves to the next chunk. With read-ahead the chunk after it is requested at the same time.
+	 * @return false, if there are no more records
+	 * @throws IOException If the file can not be read
+	 */
+	public boolean nextChunk() throws IOException {
+		chunkStart = nextRecord;
+		if (readAhead == null) {
+			read(current, chunkStart);
+		} else {
+			if (pending == null) {
+				// first chunk after opening or rewinding
+				read(spare, chunkStart);
+			} else {
+				waitForPending();
+			}
+			// the buffer of the previous chunk is not needed anymore
+			ByteBuffer done = current;
+			current = spare;
+			spare = done;
+		}
+		// records without elements (a dimension of size 0) are not counted
+		chunkSize = recordBytes == 0 ? 0 : current.limit() / recordBytes;
+		nextRecord = chunkStart + chunkSize;
+
+		pending = null;
+		if (readAhead != null && chunkSize > 0) {
+			ByteBuffer target = spare;
+			long first = nextRecord;
+			pending = readAhead.submit(() -> read(target, first));
+		}
+		return chunkSize > 0;
+	}
+
+	/**
+	 * Starts again with the first record
+	 * @throws IOException If a pending read failed
+	 */
+	public void rewind() throws IOException {
+		if (pending != null) {
+			waitForPending();
+			pending = null;
+		}
+		nextRecord = 0;
+		chunkStart = 0;
+		chunkSize = 0;
+	}
+
+	/**
+	 * Waits for the background thread and takes over its exception
+	 * @throws IOException If the background read failed
+	 */
+	private void waitForPending() throws IOException {
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(path + ": read-ahead interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException(path + ": read-ahead failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Reads the records of one chunk into a buffer
+	 * @param buffer Buffer for the chunk
+	 * @param first Position of the first record
+	 * @return the filled buffer (position 0, limit at the end of the last record)
+	 * @throws IOException If the file can not be read
+	 */
+	private ByteBuffer read(ByteBuffer buffer, long first) throws IOException {
+		long count = Math.max(0, Math.min(chunkRecords, header.getNoOfRecords() - first));
+		buffer.clear().limit((int) (count * recordBytes));
+		IdxHeader.readFully(channel, buffer, header.getHeaderSize() + first * recordBytes, path);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Copies the raw bytes of one record of the current chunk
+	 * @param r Position of the record within the chunk
+	 * @param outData Buffer with at least getRecordBytes values
+	 */
+	public void getRecord(int r, byte[] outData) {
+		current.get(r * recordBytes, outData, 0, recordBytes);
+	}
+
+	/**
+	 * Writes the elements of one record of the current chunk as double values into a buffer
+	 * @param r Position of the record within the chunk
+	 * @param outData Buffer with at least getRecordSize values
+	 * @param factor Factor for all values, e.g. 1 / 255.0 for normed pixels
+	 */
+	public void getValues(int r, double[] outData, double factor) {
+		int size = header.getRecordSize();
+		int start = r * recordBytes;
+		switch (header.getType()) {
+		case IdxHeader.TYPE_UNSIGNED_BYTE:
+			for (int i = 0; i < size; i++) {
+				outData[i] = Byte.toUnsignedInt(current.get(start + i)) * factor;
+			}
+			break;
+		case IdxHeader.TYPE_SIGNED_BYTE:
+			for (int i = 0; i < size; i++) {
+				outData[i] = current.get(start + i) * factor;
+			}
+			break;
+		case IdxHeader.TYPE_SHORT:
+			for (int i = 0; i < size; i++) {
+				outData[i] = current.getShort(start + 2 * i) * factor;
+			}
+			break;
+		case IdxHeader.TYPE_INT:
+			for (int i = 0; i < size; i++) {
+				outData[i] = current.getInt(start + 4 * i) * factor;
+			}
+			break;
+		case IdxHeader.TYPE_FLOAT:
+			for (int i = 0; i < size; i++) {
+				outData[i] = current.getFloat(start + 4 * i) * factor;
+			}
+			break;
+		default:
+			for (int i = 0; i < size; i++) {
+				outData[i] = current.getDouble(start + 8 * i) * factor;
+			}
+		}
+	}
+
+	/**
+	 * Reads one element of a record of the current chunk, e.g. the label of a label file
+	 * @param r Position of the record within the chunk
+	 * @param element Position of the element within the record
+	 * @return value of the element
+	 */
+	public double getValue(int r, int element) {
+		int pos = r * recordBytes + element * header.getElementSize();
+		switch (header.getType()) {
+		case IdxHeader.TYPE_UNSIGNED_BYTE:
+			return Byte.toUnsignedInt(current.get(pos));
+		case IdxHeader.TYPE_SIGNED_BYTE:
+			return current.get(pos);
+		case IdxHeader.TYPE_SHORT:
+			return current.getShort(pos);
+		case IdxHeader.TYPE_INT:
+			return current.getInt(pos);
+		case IdxHeader.TYPE_FLOAT:
+			return current.getFloat(pos);
+		default:
+			return current.getDouble(pos);
+		}
+	}
+
+	/**
+	 * Stops the read-ahead thread and closes the file
+	 * @throws IOException If the file can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (readAhead != null) {
+			readAhead.shutdownNow();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Getter of the header of the file
+	 * @return header
+	 */
+	public IdxHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * Getter of the number of records of the current chunk
+	 * @return number of records
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Getter of the position of the first record of the current chunk within the file
+	 * @return position of the record
+	 */
+	public long getChunkStart() {
+		return chunkStart;
+	}
+
+	/**
+	 * Getter of the number of bytes of one record
+	 * @return number of bytes
+	 */
+	public int getRecordBytes() {
+		return recordBytes;
+	}
+}
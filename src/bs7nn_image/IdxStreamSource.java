@@ -0,0 +1,125 @@
+package bs7nn_image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+import bs7nn.SampleSource;
+
+/**
+ * Streams an image data set in the "idx" format (see IdxHeader) in chunks, so data sets larger
+ * than the heap can be used for training. The samples of the current chunk are delivered as a
+ * SampleSource, e.g. for HogwildTrainer.trainEpochs:
+ *
+ * while (stream.nextChunk()) {
+ *     hogwild.trainEpochs(stream, 1, beta);
+ * }
+ *
+ * Within a chunk the samples can be read by several threads at the same time.
+ */
+public class IdxStreamSource implements SampleSource, Closeable {
+	/** reader of the images */
+	private IdxReader data;
+
+	/** reader of the labels */
+	private IdxReader labels;
+
+	/** factor for the element values, e.g. 1 / 255.0 for normed pixels */
+	private double factor;
+
+	/**
+	 * Opens the data and the label file
+	 * @param dataFilePath Path to data file (any element type, one record per sample)
+	 * @param labelFilePath Path to label file (one dimension, one label per sample)
+	 * @param chunkRecords Number of samples per chunk
+	 * @param factor Factor for the element values, e.g. 1 / 255.0 for normed pixels
+	 * @throws IOException If a file can not be read or the headers do not match
+	 */
+	public IdxStreamSource(String dataFilePath, String labelFilePath, int chunkRecords, double factor)
+			throws IOException {
+		this.factor = factor;
+		data = new IdxReader(dataFilePath, chunkRecords, true);
+		try {
+			labels = new IdxReader(labelFilePath, chunkRecords, true);
+			if (labels.getHeader().getNoOfDimensions() != 1) {
+				throw new IOException(labelFilePath + ": " + labels.getHeader().getNoOfDimensions()
+						+ " dimensions, expected 1");
+			}
+			if (labels.getHeader().getNoOfRecords() != data.getHeader().getNoOfRecords()) {
+				throw new IOException(labelFilePath + ": number of labels is " + labels.getHeader().getNoOfRecords()
+						+ ", expected " + data.getHeader().getNoOfRecords());
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves to the next chunk of samples
+	 * @return false, if there are no more samples
+	 * @throws IOException If a file can not be read
+	 */
+	public boolean nextChunk() throws IOException {
+		boolean hasData = data.nextChunk();
+		labels.nextChunk();
+		return hasData;
+	}
+
+	/**
+	 * Starts again with the first sample (e.g. for the next epoch)
+	 * @throws IOException If a pending read failed
+	 */
+	public void rewind() throws IOException {
+		data.rewind();
+		labels.rewind();
+	}
+
+	/**
+	 * Number of samples of the current chunk
+	 */
+	@Override
+	public int getNoOfSamples() {
+		return data.getChunkSize();
+	}
+
+	/**
+	 * Writes the values of a sample of the current chunk and a reference with a 1 at the position
+	 * of the label
+	 * @param index Position of the sample within the current chunk
+	 */
+	@Override
+	public void getSample(int index, double[] inputValues, double[] references) {
+		data.getValues(index, inputValues, factor);
+		Arrays.fill(references, 0);
+		references[(int) labels.getValue(index, 0)] = 1;
+	}
+
+	/**
+	 * Getter of the number of values of one sample
+	 * @return number of values
+	 */
+	public int getSampleSize() {
+		return data.getHeader().getRecordSize();
+	}
+
+	/**
+	 * Getter of the number of samples of the whole data set
+	 * @return number of samples
+	 */
+	public int getNoOfAllSamples() {
+		return data.getHeader().getNoOfRecords();
+	}
+
+	/**
+	 * Closes both files
+	 * @throws IOException If a file can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		data.close();
+		if (labels != null) {
+			labels.close();
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -177,6 +178,8 @@ public class ImageDatasetLoader {
 	/**
 	 * Create a machine readable representation of the data. It will be normalized
 	 * to double values between 0.0 and 1.0. 
+	 * All images are held in the heap, for large data sets see IdxDataset (memory mapped) or
+	 * IdxStreamSource (read in chunks).
 	 * @return ArrayList of all data or null if an error occurred
 	 * @throws IOException
 	 */
@@ -194,14 +197,18 @@ public class ImageDatasetLoader {
 		bytePosData += DATA_HEADER_SIZE;
 		bytePosLabel += LABEL_HEADER_SIZE;
 
+		// the image size is taken from the header (number of rows and columns, MSB first)
+		int noOfRows = ByteBuffer.wrap(baData).getInt(8);
+		int noOfColumns = ByteBuffer.wrap(baData).getInt(12);
+
 		// read all data sets from the source file
 		while (bytePosData < baData.length) {
 			// create array for a single data set
-			byte[][] currentDataSet = new byte[IMG_WIDTH][IMG_HEIGHT];
+			byte[][] currentDataSet = new byte[noOfRows][noOfColumns];
 
 			// extract the data from the data set
-			for (int x = 0; x < IMG_WIDTH; x++) {
-				for (int y = 0; y < IMG_HEIGHT; y++) {
+			for (int x = 0; x < noOfRows; x++) {
+				for (int y = 0; y < noOfColumns; y++) {
 					if (bytePosData < baData.length) {
 						currentDataSet[x][y] = baData[bytePosData++];
 					} else {
@@ -103,12 +103,34 @@ public class LabeledImage {
 	 */
 	public double[] getNormedData() {
 		double[] outData = new double[width * height];
+		getNormedData(outData);
+		return outData;
+	}
+
+	/**
+	 * converts the data to double values from 0.0 to 1.0 into a given buffer, so no
+	 * new array is needed
+	 * @param outData buffer with at least width * height values
+	 */
+	public void getNormedData(double[] outData) {
 		int outPos = 0;
 		for (int x = 0; x < data.length; x++) {
 			for (int y = 0; y < data[x].length; y++) {
 				outData[outPos++] = Byte.toUnsignedInt(data[x][y]) / 255.0;
 			}
 		}
-		return outData;
+	}
+
+	/**
+	 * converts the data to single precision values from 0.0 to 1.0 into a given buffer
+	 * @param outData buffer with at least width * height values
+	 */
+	public void getNormedData(float[] outData) {
+		int outPos = 0;
+		for (int x = 0; x < data.length; x++) {
+			for (int y = 0; y < data[x].length; y++) {
+				outData[outPos++] = Byte.toUnsignedInt(data[x][y]) / 255.0f;
+			}
+		}
 	}
 }
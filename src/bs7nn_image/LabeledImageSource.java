@@ -0,0 +1,36 @@
+package bs7nn_image;
+
+import java.util.Arrays;
+import java.util.List;
+
+import bs7nn.SampleSource;
+
+/**
+ * Delivers a list of labeled images as samples for the neuronal network. The input values are the
+ * normed image data, the reference values have a 1 at the position of the label and 0 everywhere else.
+ */
+public class LabeledImageSource implements SampleSource {
+	/** the images */
+	private List<LabeledImage> images;
+
+	/**
+	 * Constructor with the list of images
+	 * @param images Labeled images
+	 */
+	public LabeledImageSource(List<LabeledImage> images) {
+		this.images = images;
+	}
+
+	@Override
+	public int getNoOfSamples() {
+		return images.size();
+	}
+
+	@Override
+	public void getSample(int index, double[] inputValues, double[] references) {
+		LabeledImage img = images.get(index);
+		img.getNormedData(inputValues);
+		Arrays.fill(references, 0);
+		references[img.label] = 1;
+	}
+}
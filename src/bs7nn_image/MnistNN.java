@@ -1,12 +1,23 @@
 package bs7nn_image;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.Random;
 
+import bs7nn.AsyncValidator;
+import bs7nn.BatchPipeline;
+import bs7nn.Checkpoint;
+import bs7nn.CheckpointWriter;
+import bs7nn.Evaluator;
+import bs7nn.FlatNetwork;
+import bs7nn.HogwildTrainer;
 import bs7nn.InconsistentValueException;
 import bs7nn.InputNeuron;
+import bs7nn.ModelFile;
 import bs7nn.NeuronLayer;
 import bs7nn.NeuronalNetwork;
+import bs7nn.ParallelTrainer;
+import bs7nn.QuantizedNetwork;
+import bs7nn.SampleSource;
 import bs7nn.WorkerFactory;
 import bs7nn.WorkerNeuron;
 
@@ -19,11 +30,35 @@ import bs7nn.WorkerNeuron;
  * C:\\tmp\\NN\\t10k-labels.idx1-ubyte
  */
 public class MnistNN {
-	/** list of training data */
-	public List<LabeledImage> digits;
+	/** number of images per weight adaption */
+	public static final int BATCH_SIZE = 64;
 	
-	/** list of test data */
-	public List<LabeledImage> digitsTest;
+	/** number of threads sharing the work of one batch */
+	public static final int NO_OF_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	/** number of epochs without improvement of the test quality, until the training stops */
+	public static final int PATIENCE = 3;
+	
+	/** number of threads preparing the batches for the trainer */
+	public static final int PREPARATION_THREADS = 2;
+	
+	/** seed of the initial weights and the order of the images, so a training run can be reproduced (with the same number of threads) */
+	public static final long SEED = 4711;
+	
+	/** number of runs over the test images for the comparison of the double and the 8 bit network, the first ones warm up the JIT compiler */
+	public static final int NO_OF_TIMING_RUNS = 5;
+	
+	/** file of the trained network (see ModelFile) */
+	public static final String MODEL_FILE = "C:\\tmp\\NN\\mnist.bs7n";
+	
+	/** checkpoint of the training, which is written after every epoch (see Checkpoint) */
+	public static final String CHECKPOINT_FILE = "C:\\tmp\\NN\\mnist.checkpoint";
+	
+	/** training data (memory mapped) */
+	public IdxDataset digits;
+	
+	/** test data (memory mapped) */
+	public IdxDataset digitsTest;
 	
 	/** all input neurons in an array. This is mainly for debugging reasons, because the 
 	 * handling of the input data is maintained within the NeuronalNetwork class */
@@ -35,12 +70,54 @@ public class MnistNN {
 	/** the Neuronal Network with one hidden layer */
 	public NeuronalNetwork nn = new NeuronalNetwork(1);
 	
+	/** the compiled version of the nn, which is used for training and testing */
+	public FlatNetwork flat;
+	
+	/** trainer, which distributes the batches on all threads */
+	public ParallelTrainer trainer;
+	
+	/** tests the quality of the network on all threads */
+	public Evaluator evaluator;
+	
+	/**
+	 * Starts the training. With the argument "hogwild" the asynchronous training is used, with
+	 * the argument "compare" both the single threaded and the asynchronous training run for 60 seconds
+	 * each and print their quality over the time. With the argument "quantize" the trained network is
+	 * converted to 8 bit weights and compared with the double precision version. With the argument "augment"
+	 * the training uses 4 randomly distorted variants of every image per epoch. With the argument "load" the
+	 * network of a former training is loaded from MODEL_FILE and tested without training. With the argument
+	 * "resume" an interrupted training is continued from CHECKPOINT_FILE. With the argument "sparse" the
+	 * training and test times with and without the sparse input mode are compared.
+	 * @param args optional training mode
+	 */
 	public static void main(String[] args) {
 		MnistNN mnistNN = new MnistNN();
 		try {
-			// the training will be continued until we have at least 95% correct identifications
-			mnistNN.doTrainNN(0.95);
-		} catch (InconsistentValueException e) {
+			if (args.length > 0 && args[0].equals("hogwild")) {
+				mnistNN.doTrainNNHogwild(0.95);
+			} else if (args.length > 0 && args[0].equals("compare")) {
+				mnistNN.compareTrainingModes(60, 12);
+			} else if (args.length > 0 && args[0].equals("sparse")) {
+				mnistNN.compareSparseInputs(3);
+			} else if (args.length > 0 && args[0].equals("augment")) {
+				mnistNN.doTrainNN(0.95, new AugmentedImageSource(mnistNN.digits, 4, 1.5, 10, 1.0, SEED));
+			} else if (args.length > 0 && args[0].equals("quantize")) {
+				mnistNN.doTrainNN(0.95);
+				mnistNN.testQuantized(1000);
+			} else if (args.length > 0 && args[0].equals("resume")) {
+				mnistNN.doTrainNN(0.95, mnistNN.digits, true);
+				mnistNN.saveModel(MODEL_FILE);
+				mnistNN.printTestDetails();
+			} else if (args.length > 0 && args[0].equals("load")) {
+				mnistNN.loadModel(MODEL_FILE);
+				mnistNN.printTestDetails();
+			} else {
+				// the training will be continued until we have at least 95% correct identifications
+				mnistNN.doTrainNN(0.95);
+				mnistNN.saveModel(MODEL_FILE);
+				mnistNN.printTestDetails();
+			}
+		} catch (InconsistentValueException | IOException e) {
 			e.printStackTrace();
 		}
 	}
@@ -57,125 +134,472 @@ public class MnistNN {
 			return;
 		}
 		
-		// build the input neurons
-		for (int i = 0; i < inputs.length; i++) {
-			inputs[i] = nn.createInputNeuron();
-		}
-		
-		// build the 100 hidden neurons with a sigmoid activation function
-		NeuronLayer l = nn.getHiddenLayers().get(0);
-		for (int i = 0; i < 100; i++) {
-			l.createNeuron(WorkerFactory.SIGM);
-		}
-
-		// build the output neurons with a sigmoid activation function
-		for (int i = 0; i < outputs.length; i++) {
-			outputs[i] = nn.createOutputNeuron(WorkerFactory.SIGM);
-		}
-		
 		try {
+			// build the input neurons
+			for (int i = 0; i < inputs.length; i++) {
+				inputs[i] = nn.createInputNeuron();
+			}
+
+			// build the 100 hidden neurons with a sigmoid activation function
+			NeuronLayer l = nn.getHiddenLayers().get(0);
+			for (int i = 0; i < 100; i++) {
+				l.createNeuron(WorkerFactory.SIGM);
+			}
+
+			// build the output neurons with a softmax activation function, so the outputs are the probabilities
+			// of the digits and the network learns the cross entropy error
+			for (int i = 0; i < outputs.length; i++) {
+				outputs[i] = nn.createOutputNeuron(WorkerFactory.SOFTMAX);
+			}
+
 			// build the network with a dense mesh, with bias neurons and a weight reduction to 1/(28*28) in order
 			// to avoid too high input values for the activation functions
-			nn.doDenseMesh(null, true, 1.0/(28*28));
+			nn.doDenseMesh(null, true, 1.0/(28*28), new Random(SEED));
+			
+			// the weights will be held in flat arrays for faster processing
+			flat = nn.compile();
+			flat.setBatchSize(BATCH_SIZE);
+			
+			// most pixels are black, so the first layer only processes the other ones
+			flat.setSparseInputs(true);
+			trainer = new ParallelTrainer(flat, NO_OF_THREADS);
+			evaluator = new Evaluator(flat, NO_OF_THREADS);
 		} catch (InconsistentValueException e) {
 			e.printStackTrace();
 		}
 	}
 	
 	/**
-	 * Reads the data from the file system.
+	 * Writes the topology and the trained weights into a binary model file
+	 * @param path Path of the file
+	 * @throws IOException If the file can not be written
+	 * @throws InconsistentValueException Not expected, all activation functions are part of the WorkerFactory
+	 */
+	public void saveModel(String path) throws IOException, InconsistentValueException {
+		long start = System.nanoTime();
+		ModelFile.save(flat, path);
+		System.out.println("Model saved in " + (System.nanoTime() - start) / 1000000 + " ms: " + path);
+	}
+
+	/**
+	 * Takes over the weights of a binary model file. The file must contain a network with the
+	 * structure of this one.
+	 * @param path Path of the file
+	 * @throws IOException If the file can not be read or has a wrong format
+	 * @throws InconsistentValueException If the network of the file has another structure
+	 */
+	public void loadModel(String path) throws IOException, InconsistentValueException {
+		long start = System.nanoTime();
+		ModelFile.load(path).copyWeightsTo(flat);
+		flat.writeWeights();
+		nn.clearInputCache();
+		System.out.println("Model loaded in " + (System.nanoTime() - start) / 1000000 + " ms: " + path);
+	}
+	
+	/**
+	 * Maps the data from the file system into memory. The images are read by the operating
+	 * system when they are used, so no image objects are created.
 	 * @throws IOException
 	 */
 	public void getData() throws IOException {
-		// training data will be placed into the labeled images
-		ImageDatasetLoader myTrainingLoader = new ImageDatasetLoader("C:\\tmp\\NN\\train-images.idx3-ubyte", "C:\\tmp\\NN\\train-labels.idx1-ubyte");
-		digits = myTrainingLoader.loadDataSet();
+		// training data
+		digits = new IdxDataset("C:\\tmp\\NN\\train-images.idx3-ubyte", "C:\\tmp\\NN\\train-labels.idx1-ubyte");
 		
-		// test data will be placed into the labeled images
-		ImageDatasetLoader myTestLoader = new ImageDatasetLoader("C:\\tmp\\NN\\t10k-images.idx3-ubyte", "C:\\tmp\\NN\\t10k-labels.idx1-ubyte");
-		digitsTest = myTestLoader.loadDataSet();
+		// test data
+		digitsTest = new IdxDataset("C:\\tmp\\NN\\t10k-images.idx3-ubyte", "C:\\tmp\\NN\\t10k-labels.idx1-ubyte");
 	}
 
 	/**
-	 * Trains the network until it reaches the quality of "correctThreshold" percent
+	 * Trains the network until it reaches the quality of "correctThreshold" percent. The training
+	 * runs on the compiled network with all threads, the weights will be written back to the nn at the end.
+	 * @param correctThreshold Value between 0.0 and 1.0 that defines the required identification quality
+	 * @throws InconsistentValueException 
+	 * @throws IOException If a checkpoint can not be written
+	 */
+	public void doTrainNN(double correctThreshold) throws InconsistentValueException, IOException {
+		doTrainNN(correctThreshold, digits, false);
+	}
+	
+	/**
+	 * Trains the network with the samples of a source (e.g. the training images or distorted variants
+	 * of them, see AugmentedImageSource) until it reaches the quality of "correctThreshold" percent.
+	 * The quality is tested after every pass through all samples of the source on a snapshot of the
+	 * weights in the background (see AsyncValidator), while the training continues. The training stops,
+	 * if the quality is reached or did not improve for PATIENCE epochs, and the best weights are kept.
 	 * @param correctThreshold Value between 0.0 and 1.0 that defines the required identification quality
+	 * @param source Training samples
 	 * @throws InconsistentValueException 
+	 * @throws IOException If a checkpoint can not be written
+	 */
+	public void doTrainNN(double correctThreshold, SampleSource source) throws InconsistentValueException, IOException {
+		doTrainNN(correctThreshold, source, false);
+	}
+	
+	/**
+	 * Trains the network like doTrainNN(correctThreshold, source). After every epoch a checkpoint
+	 * with the weights, the momentum, the counters and the state of the validation is written in the
+	 * background into CHECKPOINT_FILE. With "resume" the training continues from this checkpoint with
+	 * the same weight adaptions as the interrupted training (with the same source and the same number
+	 * of threads). The order of the samples only depends on SEED and the epoch (see BatchPipeline),
+	 * so it needs no further random state.
+	 * @param correctThreshold Value between 0.0 and 1.0 that defines the required identification quality
+	 * @param source Training samples
+	 * @param resume true, if the training continues from CHECKPOINT_FILE
+	 * @throws InconsistentValueException If the checkpoint does not match the network
+	 * @throws IOException If the checkpoint can not be read or written
+	 */
+	public void doTrainNN(double correctThreshold, SampleSource source, boolean resume)
+			throws InconsistentValueException, IOException {
+		// because we use simgoid activation this will be a good starting point for the learn step speed.
+		// The adaptions of a batch are averaged, so the step is multiplied by the batch size
+		double beta = 0.01 * BATCH_SIZE;
+		
+		// the batches are collected in background threads in a random order per epoch. The target values
+		// of an image with e.g. the digit "4" will be {0, 0, 0, 0, 1, 0, 0, 0, 0, 0};
+		// A resumed training continues with the batch after the checkpoint
+		Checkpoint checkpoint = resume ? Checkpoint.read(CHECKPOINT_FILE) : null;
+		BatchPipeline pipeline = new BatchPipeline(source, flat.getNoOfInputs(), flat.getNoOfOutputs(), BATCH_SIZE,
+				SEED, PREPARATION_THREADS, checkpoint != null ? checkpoint.getStep() : 0);
+		
+		// the test images are processed in the background with a copy of the weights
+		AsyncValidator validator = new AsyncValidator(flat, digitsTest, NO_OF_THREADS, PATIENCE, 
+				(epoch, result, isBest) -> System.out.println(epoch + ": " + result.getAccuracy() + (isBest ? " best" : "")));
+		CheckpointWriter checkpoints = new CheckpointWriter(flat, true, CHECKPOINT_FILE);
+		
+		// the initial weights are epoch 0
+		int epoch = 0;
+		if (checkpoint != null) {
+			checkpoint.restore(flat);
+			validator.setState(checkpoint.getBest(), checkpoint.getValues());
+			epoch = checkpoint.getEpoch();
+		}
+		
+		// a validation, which was not finished at the time of the checkpoint, is repeated
+		if (validator.getLastStep() < epoch) {
+			validator.validate(epoch);
+		}
+		
+		// continue until the required quality is reached. The result of an epoch is known during the next epoch
+		while(validator.getBestAccuracy() < correctThreshold && !validator.isStopRequested()) {
+			// all training samples will be processed (MNIST: 60 000)
+			for (int b = 0; b < pipeline.getBatchesPerEpoch(); b++) {
+				BatchPipeline.Batch batch = pipeline.next();
+				trainer.trainBatch(batch.getInputs(), batch.getReferences(), beta);
+				pipeline.release(batch);
+			}
+			validator.validate(++epoch);
+			checkpoints.write(flat, epoch, pipeline.getNextBatch(), null, validator);
+		}
+		pipeline.close();
+		checkpoints.waitForWrites();
+		checkpoints.shutdown();
+		
+		// the best validated weights will be used
+		validator.restoreBest();
+		validator.shutdown();
+		
+		// keep the object graph up to date
+		flat.writeWeights();
+		nn.clearInputCache();
+	}
+	
+	/**
+	 * Trains the network asynchronously on all threads (see HogwildTrainer) until it reaches
+	 * the quality of "correctThreshold" percent
+	 * @param correctThreshold Value between 0.0 and 1.0 that defines the required identification quality
+	 * @throws InconsistentValueException
 	 */
-	public void doTrainNN(double correctThreshold) throws InconsistentValueException {
-		// because we use simgoid activation this will be a good starting point for the learn step speed
-		double beta = 0.01;
+	public void doTrainNNHogwild(double correctThreshold) throws InconsistentValueException {
+		// there is no momentum in the asynchronous training, so the step is higher than in deltaLearn
+		double beta = 0.1;
+		HogwildTrainer hogwild = new HogwildTrainer(flat, NO_OF_THREADS);
 		
-		// continue until the required quality is reached
+		// one epoch after the other until the required quality is reached
 		while(correctThreshold > testNN()) {
-			// all training images will be processed (MNIST: 60 000)
-			for (LabeledImage currImg : digits) {
-				// place the data into the input neurons
-				nn.setInputValues(currImg.getNormedData());
-				
-				// the target values must be placed into an array for comparison. If e.g. the image displays 
-				// the digit "4", the array must be {0, 0, 0, 0, 1, 0, 0, 0, 0, 0};
-				double[] shouldValues = new double[10];
-				shouldValues[currImg.label] = 1;
-				nn.deltaLearn(shouldValues, beta);
+			hogwild.trainEpochs(digits, 1, beta);
+		}
+		hogwild.shutdown();
+		
+		// keep the object graph up to date
+		flat.writeWeights();
+		nn.clearInputCache();
+	}
+	
+	/**
+	 * Trains the network asynchronously (see HogwildTrainer) with a data set in the idx format, which
+	 * is read in chunks of 10 000 images. The data set can be larger than the heap (e.g. EMNIST or
+	 * a generated data set), but it must have the image size and the labels of this network.
+	 * @param dataFilePath Path to data file
+	 * @param labelFilePath Path to label file
+	 * @param noOfEpochs Number of passes through all images
+	 * @throws IOException If a file can not be read
+	 * @throws InconsistentValueException
+	 */
+	public void doTrainNNStreaming(String dataFilePath, String labelFilePath, int noOfEpochs)
+			throws IOException, InconsistentValueException {
+		HogwildTrainer hogwild = new HogwildTrainer(flat, NO_OF_THREADS);
+		try (IdxStreamSource stream = new IdxStreamSource(dataFilePath, labelFilePath, 10000, 1 / 255.0)) {
+			for (int epoch = 0; epoch < noOfEpochs; epoch++) {
+				// the next chunk is read in the background while the current one is learned
+				while (stream.nextChunk()) {
+					hogwild.trainEpochs(stream, 1, 0.1);
+				}
+				stream.rewind();
+				testNN();
 			}
+		} finally {
+			hogwild.shutdown();
 		}
+		
+		// keep the object graph up to date
+		flat.writeWeights();
+		nn.clearInputCache();
 	}
 	
 	/**
-	 * Tests the qualtity of the NN based on the 10 000 test data sets
-	 * @return Percentage of how many identifications were correct
+	 * Compares the convergence per wall-clock time of the single threaded deltaLearn and the 
+	 * asynchronous training on all threads. Both start with the initial weights of the nn and
+	 * learn for the given time. After every time slice the quality will be printed.
+	 * @param seconds Learning time of each mode
+	 * @param noOfSlices Number of quality measurements
 	 * @throws InconsistentValueException
 	 */
-	public double testNN() throws InconsistentValueException {
-		int correct = 0;
-		int incorrect = 0;
+	public void compareTrainingModes(double seconds, int noOfSlices) throws InconsistentValueException {
+		long sliceMillis = (long) (seconds * 1000 / noOfSlices);
+		double[] inputValues = new double[flat.getNoOfInputs()];
+		double[] shouldValues = new double[flat.getNoOfOutputs()];
 		
-		// process every test image
-		for (LabeledImage currImg : digitsTest) {
-			
-			// if the image label is equal to the guess the NN produces, the identfication was correct
-			if (currImg.label == getGuess(currImg)) {
-				correct++;
-			} else {
-				incorrect++;
+		// single threaded deltaLearn, starting with the weights of the nn
+		flat.readWeights();
+		int pos = 0;
+		long noOfSamples = 0;
+		for (int slice = 1; slice <= noOfSlices; slice++) {
+			long deadline = System.nanoTime() + sliceMillis * 1000000L;
+			while (System.nanoTime() < deadline) {
+				digits.getSample(pos, inputValues, shouldValues);
+				pos = (pos + 1) % digits.getNoOfSamples();
+				flat.setInputValues(inputValues);
+				flat.deltaLearn(shouldValues, 0.01);
+				noOfSamples++;
+			}
+			System.out.print("deltaLearn " + (slice * sliceMillis) + " ms, " + noOfSamples + " samples: ");
+			testNN();
+		}
+		
+		// asynchronous learning, starting again with the weights of the nn
+		flat.readWeights();
+		HogwildTrainer hogwild = new HogwildTrainer(flat, NO_OF_THREADS);
+		noOfSamples = 0;
+		for (int slice = 1; slice <= noOfSlices; slice++) {
+			noOfSamples += hogwild.trainFor(digits, sliceMillis, 0.1);
+			System.out.print("hogwild " + NO_OF_THREADS + " threads " + (slice * sliceMillis) + " ms, " 
+					+ noOfSamples + " samples: ");
+			testNN();
+		}
+		hogwild.shutdown();
+		
+		// the nn keeps its initial weights
+		flat.readWeights();
+	}
+	
+	/**
+	 * Compares the time of the training and of the test with and without the sparse input mode (see
+	 * FlatNetwork.setSparseInputs). Both runs start with the weights of the nn and use the same order
+	 * of the images, so they reach the same quality.
+	 * @param noOfEpochs Number of training epochs per run
+	 * @throws InconsistentValueException
+	 */
+	public void compareSparseInputs(int noOfEpochs) throws InconsistentValueException {
+		double beta = 0.01 * BATCH_SIZE;
+		long zeros = 0;
+		double[] inputValues = new double[flat.getNoOfInputs()];
+		for (int i = 0; i < digits.getNoOfImages(); i++) {
+			digits.getNormedData(i, inputValues);
+			for (double v : inputValues) {
+				zeros += v == 0 ? 1 : 0;
+			}
+		}
+		System.out.println("inputs with value 0: " + (100.0 * zeros / digits.getNoOfImages() / inputValues.length) + "%");
+		
+		for (boolean sparse : new boolean[] { false, true }) {
+			flat.readWeights();
+			flat.setSparseInputs(sparse);
+			BatchPipeline pipeline = new BatchPipeline(digits, flat.getNoOfInputs(), flat.getNoOfOutputs(), BATCH_SIZE,
+					SEED, PREPARATION_THREADS);
+			long trainNanos = 0;
+			for (int epoch = 0; epoch < noOfEpochs; epoch++) {
+				long start = System.nanoTime();
+				for (int b = 0; b < pipeline.getBatchesPerEpoch(); b++) {
+					BatchPipeline.Batch batch = pipeline.next();
+					trainer.trainBatch(batch.getInputs(), batch.getReferences(), beta);
+					pipeline.release(batch);
+				}
+				trainNanos += System.nanoTime() - start;
 			}
+			pipeline.close();
+			long start = System.nanoTime();
+			double accuracy = evaluator.evaluate(digitsTest).getAccuracy();
+			long testNanos = System.nanoTime() - start;
+			System.out.println((sparse ? "sparse: " : "dense:  ") + (trainNanos / 1000000 / noOfEpochs) + " ms per epoch, "
+					+ (testNanos / 1000000) + " ms test, accuracy " + accuracy);
 		}
 		
-		// the output percentage ist the number of correct values divided by the number of tested images
-		double percentage = (double)correct / (double)(correct + incorrect);
+		// the nn keeps its initial weights
+		flat.readWeights();
+		flat.setSparseInputs(true);
+	}
+	
+	/**
+	 * Tests the qualtity of the NN based on the 10 000 test data sets (see Evaluator)
+	 * @return Percentage of how many identifications were correct
+	 * @throws InconsistentValueException
+	 */
+	public double testNN() throws InconsistentValueException {
+		// the test images are processed on all threads. The output percentage is the number of 
+		// correct values divided by the number of tested images
+		double percentage = evaluator.evaluate(digitsTest).getAccuracy();
 		System.out.println(percentage);
 		
 		return percentage;
 	}
 	
 	/**
-	 * Returns the position of the output neuron based on the given image
+	 * Tests the quality of the NN based on the test data and prints the percentage of correct
+	 * identifications per digit and the confusion matrix (row: digit of the image, column: guess)
+	 * @return Result of the test
+	 */
+	public Evaluator.Result printTestDetails() {
+		Evaluator.Result result = evaluator.evaluate(digitsTest);
+		System.out.println("correct: " + result.getAccuracy());
+		for (int c = 0; c < result.getConfusion().length; c++) {
+			StringBuilder line = new StringBuilder(c + " (" + String.format("%.4f", result.getAccuracy(c)) + "):");
+			for (int count : result.getConfusion()[c]) {
+				line.append(String.format(" %5d", count));
+			}
+			System.out.println(line);
+		}
+		return result;
+	}
+	
+	/**
+	 * Converts the trained network into 8 bit weights (see QuantizedNetwork) and compares it with the
+	 * double precision network: quality on the test data, memory of the weights and predictions per second.
+	 * The quantized network takes the pixels of the images directly as unsigned bytes.
+	 * @param noOfCalibrationImages Number of training images used for finding the range of the hidden layer
+	 * @return Percentage of correct identifications of the quantized network
+	 * @throws InconsistentValueException
+	 */
+	public double testQuantized(int noOfCalibrationImages) throws InconsistentValueException {
+		// the hidden activation levels are measured with some training images
+		double[][] calibrationInputs = new double[Math.min(noOfCalibrationImages, digits.getNoOfImages())][flat.getNoOfInputs()];
+		for (int i = 0; i < calibrationInputs.length; i++) {
+			digits.getNormedData(i, calibrationInputs[i]);
+		}
+		// one step of the pixel bytes is 1/255, like in getNormedData
+		QuantizedNetwork quantized = new QuantizedNetwork(flat, 1 / 255.0, calibrationInputs);
+
+		// quality and time of both networks, the fastest of several runs is taken, so the time of the
+		// JIT compiler is not measured
+		double flatPercentage = 0;
+		double quantizedPercentage = 0;
+		long flatNanos = Long.MAX_VALUE;
+		long quantizedNanos = Long.MAX_VALUE;
+		for (int run = 0; run < NO_OF_TIMING_RUNS; run++) {
+			long start = System.nanoTime();
+			flatPercentage = (double) countCorrect(null) / digitsTest.getNoOfImages();
+			flatNanos = Math.min(flatNanos, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			quantizedPercentage = (double) countCorrect(quantized) / digitsTest.getNoOfImages();
+			quantizedNanos = Math.min(quantizedNanos, System.nanoTime() - start);
+		}
+
+		long flatMemory = 0;
+		for (int l = 0; l < flat.getLayers().length; l++) {
+			flatMemory += 8L * flat.getLayers()[l].getWeights().length;
+			if (flat.getLayers()[l].getBias() != null) {
+				flatMemory += 8L * flat.getLayers()[l].getBias().length;
+			}
+		}
+
+		System.out.println("double: " + flatPercentage + ", " + flatMemory + " bytes, " 
+				+ (long) (digitsTest.getNoOfImages() * 1e9 / flatNanos) + " predictions/s");
+		System.out.println("int8:   " + quantizedPercentage + ", " + quantized.getWeightMemory() + " bytes, " 
+				+ (long) (digitsTest.getNoOfImages() * 1e9 / quantizedNanos) + " predictions/s");
+		System.out.println("delta:  " + (quantizedPercentage - flatPercentage));
+		return quantizedPercentage;
+	}
+
+	/**
+	 * Counts the correct identifications of the test images
+	 * @param quantized Quantized network, which takes the pixels as bytes, or null for the double
+	 * precision network
+	 * @return number of correct identifications
+	 * @throws InconsistentValueException
+	 */
+	private int countCorrect(QuantizedNetwork quantized) throws InconsistentValueException {
+		double[] inputValues = new double[flat.getNoOfInputs()];
+		byte[] pixels = new byte[digitsTest.getImageSize()];
+		int correct = 0;
+		for (int i = 0; i < digitsTest.getNoOfImages(); i++) {
+			double[] outputs;
+			if (quantized == null) {
+				digitsTest.getNormedData(i, inputValues);
+				outputs = flat.predict(inputValues);
+			} else {
+				digitsTest.getData(i, pixels);
+				outputs = quantized.predict(pixels);
+			}
+			if (digitsTest.getLabel(i) == Evaluator.getHighestPos(outputs)) {
+				correct++;
+			}
+		}
+		return correct;
+	}
+	
+	/**
+	 * Returns the position of the output neuron based on the given image. This method can be called
+	 * by several threads at the same time, as long as the network is not trained.
 	 * @param myImg Image which should be processed
 	 * @return Position of the output neuron with the hightest value
 	 * @throws InconsistentValueException
 	 */
 	public int getGuess(LabeledImage myImg) throws InconsistentValueException {
-		// process the data
-		nn.resetMe();
-		nn.setInputValues(myImg.getNormedData());
-		// identify the hightest position
-		return getHighestOutputPos();
+		return getGuesses(new LabeledImage[] { myImg }, 1)[0][0];
+	}
+	
+	/**
+	 * Returns the position of the output neuron for an image, which differs only slightly from the
+	 * image of the last call, e.g. while the user draws it. Only the changed pixels are processed
+	 * (see NeuronalNetwork.updateInputValues). This method uses the object graph, so it must not be
+	 * called by several threads at the same time.
+	 * @param myImg Image which should be processed
+	 * @return Position of the output neuron with the hightest value
+	 * @throws InconsistentValueException
+	 */
+	public int getLiveGuess(LabeledImage myImg) throws InconsistentValueException {
+		nn.updateInputValues(myImg.getNormedData());
+		double[] outputValues = new double[outputs.length];
+		for (int i = 0; i < outputs.length; i++) {
+			outputValues[i] = outputs[i].getA();
+		}
+		return Evaluator.getHighestPos(outputValues);
 	}
 	
 	/**
-	 * Identifies the output neuron with the hightest value and returns the position
-	 * @return Position of the output neuron with the highest value
+	 * Returns the k most probable digits of many images at once (see FlatNetwork.predictTopK). This
+	 * method can be called by several threads at the same time, as long as the network is not trained.
+	 * @param images Images which should be processed
+	 * @param k Number of digits per image
+	 * @return digits per image, the most probable first
+	 * @throws InconsistentValueException
 	 */
-	public int getHighestOutputPos() {
-		double maxVal = outputs[0].getA();
-		int pos = 0;
-		for (int i = 1; i < outputs.length; i++) {
-			if (outputs[i].getA() > maxVal) {
-				pos = i;
-				maxVal = outputs[pos].getA();
-			}
+	public int[][] getGuesses(LabeledImage[] images, int k) throws InconsistentValueException {
+		double[][] inputValues = new double[images.length][];
+		for (int i = 0; i < images.length; i++) {
+			inputValues[i] = images[i].getNormedData();
 		}
-		return pos;
+		return flat.predictTopK(inputValues, k);
 	}
 
 }
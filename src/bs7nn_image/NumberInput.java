@@ -12,6 +12,7 @@ import java.awt.GridBagLayout;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
@@ -80,6 +81,22 @@ public class NumberInput extends JFrame implements ActionListener {
 		clearImage.addActionListener(this);
 		startLearnNN.addActionListener(this);
 		checkImage.addActionListener(this);
+		
+		// after every stroke the guess is updated. Only the changed pixels are processed by the NN
+		drawField.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				LabeledImage myImg = drawField.getImage(null);
+				if (myImg != null) {
+					try {
+						guessedDigit.setText(" Guess:" + nn.getLiveGuess(myImg));
+					} catch (InconsistentValueException e1) {
+						e1.printStackTrace();
+						guessedDigit.setText("Fehler nn");
+					}
+				}
+			}
+		});
 	}
 	
 	/** 
@@ -151,7 +168,7 @@ public class NumberInput extends JFrame implements ActionListener {
 			try {
 				// learn until a quality of 97% is reached
 				nn.doTrainNN(0.97);
-			} catch (InconsistentValueException e1) {
+			} catch (InconsistentValueException | IOException e1) {
 				e1.printStackTrace();
 			}
 			// info, that the training process is done
@@ -297,7 +314,7 @@ public class NumberInput extends JFrame implements ActionListener {
 		/**
 		 * Reads the displayed image, blurs it , resizes it to IMG_SIZE and returns it.
 		 * Will be null in case of error
-		 * @param imgName Name in case of saving the file
+		 * @param imgName Name in case of saving the file or null, if the image should not be saved
 		 * @return LabeledImage Labeled image for later processing
 		 */
 		public LabeledImage getImage(String imgName) {
@@ -377,11 +394,13 @@ public class NumberInput extends JFrame implements ActionListener {
 			g.dispose();
 			
 			// now write the image, so the user can use the file for test as well
-			File outFile = new File(imgName);
-			try {
-				ImageIO.write(scaleImage(blurImage(tmpImg, 3), 28, 28), "png", outFile);
-			} catch (IOException e) {
-				e.printStackTrace();
+			if (imgName != null) {
+				File outFile = new File(imgName);
+				try {
+					ImageIO.write(scaleImage(blurImage(tmpImg, 3), 28, 28), "png", outFile);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
 			return new LabeledImage(-1, scaleImage(blurImage(tmpImg, 3), 28, 28), true);
 		}
@@ -15,9 +15,14 @@ public class OderGatterNN {
 		InputNeuron x0 = nn.createInputNeuron();
 		InputNeuron x1 = nn.createInputNeuron();
 		
-		for (NeuronLayer l : nn.getHiddenLayers()) {
-			l.createNeuron(WorkerFactory.RELU);
-			l.createNeuron(WorkerFactory.RELU);
+		try {
+			for (NeuronLayer l : nn.getHiddenLayers()) {
+				l.createNeuron(WorkerFactory.RELU);
+				l.createNeuron(WorkerFactory.RELU);
+			}
+		} catch (InconsistentValueException e) {
+			System.out.println(e.getExceptionCause());
+			System.exit(1);
 		}
 		
 		WorkerNeuron a = nn.createOutputNeuron(WorkerFactory.RELU);